@@ -0,0 +1,62 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.byrnald.smart_pantry.model.PantryAnalytics;
+import com.byrnald.smart_pantry.service.InventoryColumns;
+
+// the analytics queries straight on InventoryColumns (no spring, no database), one core against all of them.
+// 10M rows is ~400MB of columns, hence the bigger heap
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class AnalyticsBenchmark {
+
+    @Param({ "1000000", "10000000" })
+    public int size;
+
+    @Param({ "true", "false" })
+    public boolean parallel;
+
+    private InventoryColumns columns;
+    private LocalDate today;
+    private InventoryColumns.Filter thisWeek;
+
+    @Setup
+    public void setUp() {
+        columns = new InventoryColumns(size);
+        long[] id = { 0 };
+        new SyntheticPantryDataLoader(size).generate(item ->
+                columns.put(++id[0], item.getQuantity(), item.getExpirationDate(), item.getCategory()));
+        today = LocalDate.now();
+        thisWeek = new InventoryColumns.Filter(null, today, today.plusDays(7), null, null);
+    }
+
+    // total quantity per category expiring this week
+    @Benchmark
+    public PantryAnalytics categoryExpiringThisWeek() {
+        return columns.query(InventoryColumns.GroupBy.CATEGORY, thisWeek, today, parallel);
+    }
+
+    // every row matches, the worst case for the grouping
+    @Benchmark
+    public PantryAnalytics daysToExpiryHistogram() {
+        return columns.query(InventoryColumns.GroupBy.DAYS_TO_EXPIRY, InventoryColumns.Filter.NONE, today, parallel);
+    }
+}
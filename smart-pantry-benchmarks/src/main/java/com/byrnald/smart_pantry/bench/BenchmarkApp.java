@@ -0,0 +1,97 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.byrnald.smart_pantry.SmartPantryApplication;
+import com.byrnald.smart_pantry.service.PantryBulkService;
+
+// starts the real application (minus the web server) against a fresh file based H2 database,
+// same settings as application.properties except the file lives under target/bench-db,
+// then fills it with `items` synthetic rows
+final class BenchmarkApp {
+
+    private static final Path DB_DIR = Path.of("target", "bench-db");
+
+    private BenchmarkApp() { }
+
+    static ConfigurableApplicationContext start(String name, int items) {
+        return start(name, items, new String[0]);
+    }
+
+    // `properties` on top of the usual ones, like "pantry.cache.enabled=false" to compare a feature on and off
+    static ConfigurableApplicationContext start(String name, int items, String... properties) {
+        Path db = DB_DIR.resolve(name + "-" + items).toAbsolutePath();
+        Path ledger = DB_DIR.resolve(name + "-" + items + "-ledger").toAbsolutePath();
+        deleteDatabase(db, ledger);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SmartPantryApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:file:" + db,
+                        "pantry.ledger.dir=" + ledger,
+                        "spring.h2.console.enabled=false",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+        new SyntheticPantryDataLoader(items).load(context.getBean(PantryBulkService.class));
+        return context;
+    }
+
+    // the whole application, tomcat included (random port, see port()), on the database `name` as it is.
+    // no reset and no synthetic rows, StartupBenchmark times exactly what a real start does
+    static ConfigurableApplicationContext startWeb(String name, String... properties) {
+        return new SpringApplicationBuilder(SmartPantryApplication.class)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:file:" + DB_DIR.resolve(name).toAbsolutePath(),
+                        "pantry.ledger.dir=" + DB_DIR.resolve(name + "-ledger").toAbsolutePath(),
+                        "server.port=0",
+                        "spring.h2.console.enabled=false",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+
+    static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    // an empty database + ledger for startWeb
+    static void resetDatabase(String name) {
+        deleteDatabase(DB_DIR.resolve(name).toAbsolutePath(), DB_DIR.resolve(name + "-ledger").toAbsolutePath());
+    }
+
+    // every trial starts from the same data, not whatever the last run left behind
+    private static void deleteDatabase(Path db, Path ledger) {
+        try {
+            Files.createDirectories(db.getParent());
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(db.getParent(), db.getFileName() + ".*")) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            if (Files.isDirectory(ledger)) {
+                // one sub directory per pantry, deepest paths first so every directory is empty by the time it's deleted
+                try (Stream<Path> files = Files.walk(ledger)) {
+                    for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                        if (!file.equals(ledger)) {
+                            Files.delete(file);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reset benchmark database " + db, e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.byrnald.smart_pantry.config.StatementCounter;
+import com.byrnald.smart_pantry.model.DashboardView;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.service.PantryService;
+
+// the dashboard's edit flow with the second-level/query cache on and off: open the edit form (findById),
+// save it (editItem: findById + version checked UPDATE), then the redirect back to /dashboard.
+// besides the time, the JSON has the SQL statements hibernate ran ("statements") and how many cycles that was ("cycles"),
+// statements / cycles is the round trips one edit costs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EditCycleBenchmark {
+
+    @Param({ "10000" })
+    public int size;
+
+    @Param({ "true", "false" })
+    public boolean cache;
+
+    // ids are picked from a small hot set, like the handful of things someone actually edits
+    @Param({ "100" })
+    public int hotItems;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+        public long statements;
+        public long cycles;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            statements = 0;
+            cycles = 0;
+        }
+    }
+
+    private ConfigurableApplicationContext context;
+    private PantryRepository pantryRepository;
+    private PantryService pantryService;
+    private long[] ids;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApp.start("edit-cycle-" + cache, size, "pantry.cache.enabled=" + cache);
+        pantryRepository = context.getBean(PantryRepository.class);
+        pantryService = context.getBean(PantryService.class);
+        List<PantryRepository.NameEntry> entries = pantryRepository.findNameEntries();
+        ids = entries.stream().limit(hotItems).mapToLong(PantryRepository.NameEntry::getId).toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public DashboardView editSaveRedirect(RoundTrips roundTrips) {
+        long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        StatementCounter.reset();
+
+        // GET /dashboard/edit/{id}
+        PantryItem form = pantryRepository.findById(id).orElseThrow();
+
+        // POST /dashboard/edit/{id}, same fields back with the quantity bumped up or down by one
+        PantryItem changes = new PantryItem();
+        changes.setName(form.getName());
+        changes.setQuantity(form.getQuantity() % 2 == 0 ? form.getQuantity() + 1 : form.getQuantity() - 1);
+        changes.setExpirationDate(form.getExpirationDate());
+        changes.setCategory(form.getCategory());
+        changes.setVersion(form.getVersion());
+        pantryService.editItem(id, changes);
+
+        // redirect:/dashboard
+        DashboardView view = pantryService.getDashboard(null, null, null);
+
+        roundTrips.statements += StatementCounter.current();
+        roundTrips.cycles++;
+        return view;
+    }
+}
@@ -0,0 +1,24 @@
+package com.byrnald.smart_pantry.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// entry point for `mvn exec:exec`, runs the benchmarks and writes the results as JSON
+// args: [result file] [benchmark regex]
+public class PantryBenchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        String result = args.length > 0 && !args[0].isBlank() ? args[0] : "target/jmh-result.json";
+        String include = args.length > 1 && !args[1].isBlank() ? args[1] : PantryBenchmarks.class.getPackageName() + "\\..*";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .shouldFailOnError(true)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.byrnald.smart_pantry.model.DashboardView;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryPage;
+import com.byrnald.smart_pantry.model.PantryViewPage;
+import com.byrnald.smart_pantry.service.PantryService;
+
+// the read paths the dashboard and the api hit, through the real PantryService against file based H2.
+// one benchmark per searchItems branch (nothing / category / keyword / both), a page deep in the list (as entities and as views),
+// and the urgent list (expiring ids from the index merged with low stock in one query)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PantryServiceBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private ConfigurableApplicationContext context;
+    private PantryService pantryService;
+    private String middleCursor;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApp.start("service", size);
+        pantryService = context.getBean(PantryService.class);
+        // walk to the middle of the list once, deep pages are where offset paging used to hurt
+        String cursor = null;
+        for (int seen = 0; seen < size / 2; seen += PantryService.MAX_PAGE_SIZE) {
+            PantryPage page = pantryService.getAllItems(cursor, PantryService.MAX_PAGE_SIZE);
+            if (!page.hasNext()) {
+                break;
+            }
+            cursor = page.nextCursor();
+        }
+        middleCursor = cursor;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public PantryPage searchNoFilter() {
+        return pantryService.searchItems(null, null, null, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PantryPage searchByCategory() {
+        return pantryService.searchItems(null, "Household", null, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PantryPage searchByKeyword() {
+        return pantryService.searchItems("egg", null, null, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PantryPage searchByKeywordAndCategory() {
+        return pantryService.searchItems("egg", "Pantry", null, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PantryPage searchKeywordMiss() {
+        return pantryService.searchItems("zzqx", null, null, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PantryPage deepPage() {
+        return pantryService.getAllItems(middleCursor, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    // same page as deepPage, read as PantryItemViews (what /api/pantry returns) instead of managed entities
+    @Benchmark
+    public PantryViewPage deepPageViews() {
+        return pantryService.getItemViews(middleCursor, PantryService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<PantryItem> urgentItems() {
+        return pantryService.getUrgentItems();
+    }
+
+    @Benchmark
+    public List<PantryItem> expiringSoon() {
+        return pantryService.getExpiringSoon();
+    }
+
+    @Benchmark
+    public List<PantryItem> rankedSearch() {
+        return pantryService.rankedSearch("eggz", 10); // typo on purpose
+    }
+
+    // nothing writes during this benchmark, so after the first call this is the cache hit path
+    @Benchmark
+    public DashboardView dashboard() {
+        return pantryService.getDashboard(null, null, null);
+    }
+}
@@ -0,0 +1,83 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.service.PantryService;
+
+// single row round trips to the file based H2 database: a lookup by id, the +1/-1 quantity update,
+// and add + delete (insert with a pooled sequence id, then the delete), including the events they publish
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RepositoryBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private ConfigurableApplicationContext context;
+    private PantryRepository pantryRepository;
+    private PantryService pantryService;
+    private long[] ids;
+    private boolean up;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApp.start("repository", size);
+        pantryRepository = context.getBean(PantryRepository.class);
+        pantryService = context.getBean(PantryService.class);
+        List<PantryRepository.NameEntry> entries = pantryRepository.findNameEntries();
+        ids = entries.stream().mapToLong(PantryRepository.NameEntry::getId).toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<PantryItem> findById() {
+        return pantryRepository.findById(randomId());
+    }
+
+    // alternates +1 and -1 so quantities (and the low stock split) stay where they started
+    @Benchmark
+    public boolean adjustQuantity() {
+        up = !up;
+        return pantryService.adjustQuantity(randomId(), up ? 1 : -1);
+    }
+
+    @Benchmark
+    public Long addThenDelete() {
+        PantryItem item = new PantryItem("Benchmark Item", 10, null);
+        item.setCategory("Pantry");
+        Long id = pantryService.addItem(item).getId();
+        pantryService.deleteItem(id);
+        return id;
+    }
+
+    private long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
@@ -0,0 +1,86 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+
+// cost of putting the pantry in "smart" order in memory.
+// PantryService.sortItems is gone (the database hands rows back already ordered by sort_key), so this
+// compares the old comparator, kept here as a copy, with ordering by the precomputed sort key,
+// and measures building the keys themselves (what every insert/update pays instead)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SortBenchmark {
+
+    // the old PantryService.sortItems comparator: low stock first, then by date (no date last), then by name
+    static final Comparator<PantryItem> LEGACY_SMART_SORT = (item1, item2) -> {
+        boolean item1Low = item1.getQuantity() <= PantryItem.LOW_STOCK_THRESHOLD;
+        boolean item2Low = item2.getQuantity() <= PantryItem.LOW_STOCK_THRESHOLD;
+        if (item1Low && !item2Low) return -1;
+        if (!item1Low && item2Low) return 1;
+        if (item1.getExpirationDate() != null && item2.getExpirationDate() != null) {
+            return item1.getExpirationDate().compareTo(item2.getExpirationDate());
+        }
+        if (item1.getExpirationDate() == null && item2.getExpirationDate() != null) return 1;
+        if (item1.getExpirationDate() != null && item2.getExpirationDate() == null) return -1;
+        return item1.getName().compareToIgnoreCase(item2.getName());
+    };
+
+    static final Comparator<PantryItem> SORT_KEY_ORDER = Comparator.comparing(PantryItem::getSortKey).thenComparing(PantryItem::getId);
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    private List<PantryItem> items;
+
+    @Setup
+    public void setUp() {
+        items = new SyntheticPantryDataLoader(size).generate();
+        long id = 1;
+        for (PantryItem item : items) {
+            item.setId(id++);
+            item.refreshSortKey();
+        }
+    }
+
+    @Benchmark
+    public List<PantryItem> legacyComparator() {
+        List<PantryItem> copy = new ArrayList<>(items);
+        copy.sort(LEGACY_SMART_SORT);
+        return copy;
+    }
+
+    @Benchmark
+    public List<PantryItem> sortKeyOrder() {
+        List<PantryItem> copy = new ArrayList<>(items);
+        copy.sort(SORT_KEY_ORDER);
+        return copy;
+    }
+
+    @Benchmark
+    public void buildSortKeys(Blackhole blackhole) {
+        for (PantryItem item : items) {
+            blackhole.consume(PantryItem.sortKeyOf(item.getQuantity(), item.getExpirationDate(), item.getName()));
+        }
+    }
+}
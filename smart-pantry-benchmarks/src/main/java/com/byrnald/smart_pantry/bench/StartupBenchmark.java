@@ -0,0 +1,76 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+// time to first request: from SpringApplication.run until GET /api/pantry has answered, with and without the
+// fast-start profile. every fork is a new JVM that does exactly one start, so every measurement is a cold start
+// (the score is the average over the forks).
+// firstBoot=true starts on a new, empty database every time: all migrations run and the starter items get seeded.
+// firstBoot=false is a node restarting on the database it already has, the warmup fork makes it and isn't counted.
+// the JVM's own start isn't in the number, and neither is CDS/AOT (that takes the -Pfast-start jar and its java flags,
+// see the README)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, warmups = 1, jvmArgsAppend = "-Xmx1g")
+public class StartupBenchmark {
+
+    @Param({ "default", "fast-start" })
+    public String profile;
+
+    @Param({ "true", "false" })
+    public boolean firstBoot;
+
+    private ConfigurableApplicationContext context;
+
+    private String database() {
+        return "startup-" + profile + (firstBoot ? "-first" : "-restart");
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (firstBoot) {
+            BenchmarkApp.resetDatabase(database());
+        }
+    }
+
+    @Benchmark
+    public int timeToFirstRequest() throws IOException, InterruptedException {
+        context = BenchmarkApp.startWeb(database(), "spring.profiles.active=" + profile);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + BenchmarkApp.port(context) + "/api/pantry")).build();
+        HttpResponse<Void> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET /api/pantry answered " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.byrnald.smart_pantry.bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import com.byrnald.smart_pantry.config.PantryDataLoader;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.service.PantryBulkService;
+import com.byrnald.smart_pantry.service.PantryService;
+
+// generates a pantry of any size that looks roughly like the real one: mostly food with dates,
+// some household stuff that keeps for years, electronics that never expire, ~15% low on stock.
+// the same seed always gives the same items, so two benchmark runs compare like with like.
+//
+// as a PantryDataLoader it can also stand in for the normal 3 starter items (seedItems),
+// the benchmarks use load() instead so the rows go through the real bulk import path
+public class SyntheticPantryDataLoader extends PantryDataLoader {
+
+    public static final long DEFAULT_SEED = 20240611L;
+    private static final int CSV_CHUNK = 50_000; // rows per importItems call, keeps the generated csv small
+
+    private static final String[] FOODS = { "Eggs", "Milk", "Rice", "Pasta", "Beans", "Flour", "Sugar", "Oats",
+            "Coffee", "Tea", "Tomatoes", "Cheese", "Yogurt", "Bread", "Butter", "Lentils", "Honey", "Salsa",
+            "Egg Noodles", "Tuna" };
+    private static final String[] HOUSEHOLD = { "Paper Towels", "Dish Soap", "Trash Bags", "Sponges", "Batteries",
+            "Light Bulbs", "Detergent", "Foil" };
+    private static final String[] ELECTRONICS = { "Patch Cables", "HDMI Cables", "USB-C Cables", "SFP Modules",
+            "Fuses", "Zip Ties" };
+    private static final String[] BRANDS = { "Organic", "Store Brand", "Bulk", "Family Size", "Imported", "Local" };
+
+    private final int count;
+    private final long seed;
+
+    public SyntheticPantryDataLoader(int count) {
+        this(count, DEFAULT_SEED);
+    }
+
+    public SyntheticPantryDataLoader(int count, long seed) {
+        this.count = count;
+        this.seed = seed;
+    }
+
+    @Override
+    protected List<PantryItem> seedItems() {
+        return generate();
+    }
+
+    public List<PantryItem> generate() {
+        List<PantryItem> items = new ArrayList<>(count);
+        generate(items::add);
+        return items;
+    }
+
+    // the same items one at a time, for sizes that shouldn't all be PantryItems at once
+    public void generate(Consumer<PantryItem> sink) {
+        Random random = new Random(seed);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < count; i++) {
+            sink.accept(next(random, today, i));
+        }
+    }
+
+    // inserts the items through PantryBulkService, so ids, categories, stats and the in-memory indexes
+    // all end up exactly like they would after a real import
+    public long load(PantryBulkService bulkService) {
+        Random random = new Random(seed);
+        LocalDate today = LocalDate.now();
+        long imported = 0;
+        for (int start = 0; start < count; start += CSV_CHUNK) {
+            StringBuilder csv = new StringBuilder("name,quantity,expirationDate,category\n");
+            for (int i = start; i < Math.min(count, start + CSV_CHUNK); i++) {
+                PantryItem item = next(random, today, i);
+                csv.append(item.getName()).append(',')
+                        .append(item.getQuantity()).append(',')
+                        .append(item.getExpirationDate() != null ? item.getExpirationDate() : "").append(',')
+                        .append(item.getCategory()).append('\n');
+            }
+            byte[] body = csv.toString().getBytes(StandardCharsets.UTF_8);
+            imported += bulkService.importItems(new ByteArrayInputStream(body), PantryBulkService.Format.CSV).imported();
+        }
+        return imported;
+    }
+
+    private static PantryItem next(Random random, LocalDate today, int index) {
+        int roll = random.nextInt(100);
+        String category;
+        String base;
+        LocalDate expires;
+        if (roll < 55) {
+            category = "Pantry";
+            base = FOODS[random.nextInt(FOODS.length)];
+            int when = random.nextInt(100);
+            if (when < 5) {
+                expires = today.minusDays(1 + random.nextInt(30)); // already expired
+            } else if (when < 15) {
+                expires = today.plusDays(random.nextInt(PantryService.EXPIRING_SOON_DAYS + 1));
+            } else {
+                expires = today.plusDays(4 + random.nextInt(360));
+            }
+        } else if (roll < 80) {
+            category = "Household";
+            base = HOUSEHOLD[random.nextInt(HOUSEHOLD.length)];
+            expires = random.nextInt(100) < 40 ? today.plusDays(30 + random.nextInt(700)) : null;
+        } else if (roll < 95) {
+            category = "Electronics";
+            base = ELECTRONICS[random.nextInt(ELECTRONICS.length)];
+            expires = null; // cables don't expire
+        } else {
+            category = "Other";
+            base = "Misc";
+            expires = random.nextInt(100) < 20 ? today.plusDays(random.nextInt(400)) : null;
+        }
+        // ~15% at or under the low stock line, the rest spread out up to 60
+        int quantity = random.nextInt(100) < 15 ? random.nextInt(PantryItem.LOW_STOCK_THRESHOLD + 1) : PantryItem.LOW_STOCK_THRESHOLD + 1 + random.nextInt(55);
+        String name = BRANDS[random.nextInt(BRANDS.length)] + " " + base + " " + index;
+        return newItem(name, quantity, category, expires);
+    }
+}
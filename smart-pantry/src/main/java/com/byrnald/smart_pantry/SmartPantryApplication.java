@@ -2,8 +2,10 @@ package com.byrnald.smart_pantry;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // turns on @Scheduled, used for background jobs like flushing buffered quantity changes
 public class SmartPantryApplication {
 
 	public static void main(String[] args) {
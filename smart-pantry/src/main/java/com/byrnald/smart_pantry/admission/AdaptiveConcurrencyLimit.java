@@ -0,0 +1,90 @@
+package com.byrnald.smart_pantry.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// how many requests may run at once, moved around by their latency (the Vegas idea from TCP):
+// the fastest recent request is what a request costs without waiting for anything (minRtt). with `limit` requests
+// running and taking rtt each, about limit * (1 - minRtt / rtt) of them are only queueing (for a hikari connection,
+// for H2's locks). few of those -> the limit goes up a little, a lot -> down a little. a request slower than
+// maxLatency cuts it by BACKOFF right away (the multiplicative decrease of AIMD, slow = dropped packet).
+// it only goes up while it's really being used, otherwise an idle server would drift up to maxLimit.
+// minRtt is relearned every WINDOW samples from the fastest of them, so a baseline that got slower for good
+// (bigger pantry, slower disk) doesn't pin the limit to the minimum forever
+final class AdaptiveConcurrencyLimit {
+
+    private static final int WINDOW = 1000;
+    private static final double BACKOFF = 0.9;
+    // queued requests we are fine with, times log10(limit) so bigger limits tolerate a longer queue
+    private static final double ALPHA = 3;
+    private static final double BETA = 6;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxLatencyNanos;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+    // guarded by this
+    private long minRtt = Long.MAX_VALUE;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private int windowSamples;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long maxLatencyNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    // takes a slot if fewer than share * limit requests are running. returns how many were running before, -1 = full
+    int tryAcquire(double share) {
+        int cap = Math.max(1, (int) (limit * share));
+        while (true) {
+            int running = inflight.get();
+            if (running >= cap) {
+                return -1;
+            }
+            if (inflight.compareAndSet(running, running + 1)) {
+                return running;
+            }
+        }
+    }
+
+    void release() {
+        inflight.decrementAndGet();
+    }
+
+    // one finished request: how long it took and how many others were running when it got in
+    synchronized void onSample(long rttNanos, int inflightAtStart) {
+        if (rttNanos >= maxLatencyNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            return;
+        }
+        minRtt = Math.min(minRtt, rttNanos);
+        windowMinRtt = Math.min(windowMinRtt, rttNanos);
+        if (++windowSamples >= WINDOW) {
+            minRtt = windowMinRtt;
+            windowMinRtt = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        double current = limit;
+        double queued = current * (1 - (double) minRtt / Math.max(1, rttNanos));
+        double step = Math.max(1, Math.log10(current));
+        if (queued > BETA * step) {
+            limit = Math.max(minLimit, current - step);
+        } else if (queued < ALPHA * step && (inflightAtStart + 1) * 2 >= current) {
+            limit = Math.min(maxLimit, current + step);
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inflight() {
+        return inflight.get();
+    }
+
+    synchronized long minRttNanos() {
+        return minRtt == Long.MAX_VALUE ? 0 : minRtt;
+    }
+}
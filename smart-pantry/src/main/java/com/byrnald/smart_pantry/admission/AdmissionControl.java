@@ -0,0 +1,128 @@
+package com.byrnald.smart_pantry.admission;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// decides which requests get in (AdmissionFilter asks, one request at a time):
+// 1. every client (remote address) has a token bucket for reads and one for writes, a scanner stuck in a loop on
+//    /dashboard/subtract/{id} runs out of write tokens and gets 429s while everyone else carries on
+// 2. one AdaptiveConcurrencyLimit for the whole node. reads may fill all of it, single writes 3/4 and bulk work
+//    (imports, batches, purges, exports) half, so under load the bulk work is turned away first and reads last.
+//    over the limit is a 503 straight away, nothing waits in a queue that only makes every request slower
+// actuator (health checks, scrapes) never comes through here at all
+@Component
+public class AdmissionControl {
+
+    public enum Priority {
+        READ(1.0), WRITE(0.75), BULK(0.5);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    private record Buckets(TokenBucket reads, TokenBucket writes) { }
+
+    private final boolean enabled;
+    private final double readsPerSecond;
+    private final double readBurst;
+    private final double writesPerSecond;
+    private final double writeBurst;
+    private final AdaptiveConcurrencyLimit concurrency;
+    private final Map<String, Buckets> clients = new ConcurrentHashMap<>();
+    private final Map<Priority, LongAdder> rateLimited = new EnumMap<>(Priority.class);
+    private final Map<Priority, LongAdder> shed = new EnumMap<>(Priority.class);
+
+    public AdmissionControl(@Value("${pantry.admission.enabled:true}") boolean enabled,
+            @Value("${pantry.admission.reads-per-second:50}") double readsPerSecond,
+            @Value("${pantry.admission.read-burst:100}") double readBurst,
+            @Value("${pantry.admission.writes-per-second:10}") double writesPerSecond,
+            @Value("${pantry.admission.write-burst:30}") double writeBurst,
+            @Value("${pantry.admission.initial-limit:20}") int initialLimit,
+            @Value("${pantry.admission.min-limit:4}") int minLimit,
+            @Value("${pantry.admission.max-limit:200}") int maxLimit,
+            @Value("${pantry.admission.max-latency:2s}") Duration maxLatency) {
+        this.enabled = enabled;
+        this.readsPerSecond = readsPerSecond;
+        this.readBurst = readBurst;
+        this.writesPerSecond = writesPerSecond;
+        this.writeBurst = writeBurst;
+        this.concurrency = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, maxLatency.toNanos());
+        for (Priority priority : Priority.values()) {
+            rateLimited.put(priority, new LongAdder());
+            shed.put(priority, new LongAdder());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 0 if the client still has a token for this, otherwise the nanos until it has one again
+    public long takeToken(String client, Priority priority, long now) {
+        Buckets buckets = clients.computeIfAbsent(client, key -> new Buckets(
+                new TokenBucket(readsPerSecond, readBurst, now), new TokenBucket(writesPerSecond, writeBurst, now)));
+        long wait = (priority == Priority.READ ? buckets.reads() : buckets.writes()).tryTake(now);
+        if (wait > 0) {
+            rateLimited.get(priority).increment();
+        }
+        return wait;
+    }
+
+    // a slot under the concurrency limit: how many requests were running before this one, -1 = shed it
+    public int tryAcquire(Priority priority) {
+        int running = concurrency.tryAcquire(priority.share);
+        if (running < 0) {
+            shed.get(priority).increment();
+        }
+        return running;
+    }
+
+    // gives the slot back. sample = false for bulk work and requests that went async (exports), their time says nothing
+    public void release(long rttNanos, int inflightAtStart, boolean sample) {
+        concurrency.release();
+        if (sample) {
+            concurrency.onSample(rttNanos, inflightAtStart);
+        }
+    }
+
+    // forgets clients whose buckets filled up again, i.e. that haven't sent anything in a while
+    @Scheduled(fixedDelayString = "${pantry.admission.sweep-interval-ms:10000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        clients.values().removeIf(buckets -> buckets.reads().isFull(now) && buckets.writes().isFull(now));
+    }
+
+    public int limit() {
+        return concurrency.limit();
+    }
+
+    public int inflight() {
+        return concurrency.inflight();
+    }
+
+    public double minRttSeconds() {
+        return concurrency.minRttNanos() / 1e9;
+    }
+
+    public int clients() {
+        return clients.size();
+    }
+
+    public long rateLimited(Priority priority) {
+        return rateLimited.get(priority).sum();
+    }
+
+    public long shed(Priority priority) {
+        return shed.get(priority).sum();
+    }
+}
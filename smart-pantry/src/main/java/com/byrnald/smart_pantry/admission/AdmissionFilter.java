@@ -0,0 +1,130 @@
+package com.byrnald.smart_pantry.admission;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// lets /api/** and /dashboard/** requests in through AdmissionControl, or turns them away before they get anywhere
+// near the database: 429 when the client is over its rate, 503 when the node is over its concurrency limit,
+// both with a Retry-After. runs before the TenantFilter, a rejected request costs next to nothing.
+// the client is the remote address, behind a proxy set server.forward-headers-strategy so that's the real one
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final String STREAM = "/api/pantry/changes/stream";
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !admissionControl.isEnabled() || !(path.startsWith("/api/") || path.startsWith("/dashboard"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        AdmissionControl.Priority priority = priority(request.getMethod(), path);
+        long startedAt = System.nanoTime();
+        long wait = admissionControl.takeToken(request.getRemoteAddr(), priority, startedAt);
+        if (wait > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999)),
+                    "Too many requests from this client, slow down");
+            return;
+        }
+        // the change stream stays open for as long as the browser tab does, it isn't work the limit could count
+        if (path.equals(STREAM)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        int inflightAtStart = admissionControl.tryAcquire(priority);
+        if (inflightAtStart < 0) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "Server is busy, try again in a moment");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // the export's StreamingResponseBody is still writing, the slot is given back when it's done
+                request.getAsyncContext().addListener(new ReleaseWhenDone(startedAt, inflightAtStart));
+            } else {
+                // a 50,000 row batch is slow because it's big, not because it queued. its time would only push the limit down
+                admissionControl.release(System.nanoTime() - startedAt, inflightAtStart, priority != AdmissionControl.Priority.BULK);
+            }
+        }
+    }
+
+    // an async request ends with onComplete, after onError/onTimeout too. whichever comes first releases, only once
+    private class ReleaseWhenDone implements AsyncListener {
+
+        private final long startedAt;
+        private final int inflightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseWhenDone(long startedAt, int inflightAtStart) {
+            this.startedAt = startedAt;
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this); // started again, listeners have to be added again
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                admissionControl.release(System.nanoTime() - startedAt, inflightAtStart, false);
+            }
+        }
+    }
+
+    // reads first, then single item writes, bulk work last
+    static AdmissionControl.Priority priority(String method, String path) {
+        if (path.equals("/api/pantry/bulk") || path.equals("/api/pantry/batch") || path.equals("/api/pantry/expired")
+                || path.equals("/api/pantry/export")) {
+            return AdmissionControl.Priority.BULK;
+        }
+        return method.equals("GET") || method.equals("HEAD") ? AdmissionControl.Priority.READ : AdmissionControl.Priority.WRITE;
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String message) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.sendError(status.value(), message);
+    }
+}
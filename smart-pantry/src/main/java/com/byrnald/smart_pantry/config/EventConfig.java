@@ -0,0 +1,57 @@
+package com.byrnald.smart_pantry.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ApplicationEventMulticaster;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.context.support.AbstractApplicationContext;
+
+import com.byrnald.smart_pantry.event.ItemsExpiredEvent;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+
+// PantryChangeEvents (and ItemsExpiredEvents) are published on the request thread once the write is committed,
+// every index, cache, the stats and the ledger listen to them one after the other.
+// a listener that throws must not turn a write that's already in the database into an error response (the client
+// would retry it, with the same Idempotency-Key too since failed requests are forgotten), and it must not keep the
+// listeners after it from hearing about the change. so for these two events every listener runs on its own:
+// an exception is logged and the next listener still gets the event. every other event (startup, ...) fails as before
+@Configuration
+public class EventConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(EventConfig.class);
+
+    // the bean name is what the application context looks for instead of making its own multicaster
+    @Bean(AbstractApplicationContext.APPLICATION_EVENT_MULTICASTER_BEAN_NAME)
+    static ApplicationEventMulticaster applicationEventMulticaster(BeanFactory beanFactory) {
+        return new IsolatingEventMulticaster(beanFactory);
+    }
+
+    static class IsolatingEventMulticaster extends SimpleApplicationEventMulticaster {
+
+        IsolatingEventMulticaster(BeanFactory beanFactory) {
+            super(beanFactory);
+        }
+
+        @Override
+        protected void invokeListener(ApplicationListener<?> listener, ApplicationEvent event) {
+            Object payload = event instanceof PayloadApplicationEvent<?> payloadEvent ? payloadEvent.getPayload() : null;
+            if (!(payload instanceof PantryChangeEvent || payload instanceof ItemsExpiredEvent)) {
+                super.invokeListener(listener, event);
+                return;
+            }
+            try {
+                super.invokeListener(listener, event);
+            } catch (RuntimeException e) {
+                // the event itself can hold a whole import chunk, the type is enough to go on
+                log.error("Listener {} failed on a {}, it may be out of step with the database until it's rebuilt",
+                        listener, payload.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
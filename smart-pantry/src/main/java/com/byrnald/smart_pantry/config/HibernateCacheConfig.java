@@ -0,0 +1,87 @@
+package com.byrnald.smart_pantry.config;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.byrnald.smart_pantry.model.Category;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+// hibernate's second-level cache (entities by id) and query cache (results of the finders marked cacheable),
+// kept in local caffeine caches behind JCache. every cache has a max size and a time to live from pantry.cache.*,
+// so a write that somehow skipped hibernate (plain JdbcTemplate SQL) is only stale until the entry expires.
+//
+// hibernate keeps them right on its own for everything that goes through it: saves update the cached entity (READ_WRITE),
+// and any write to a table marks the query results for that table as stale (the update timestamps region).
+// pantry.cache.enabled=false turns both off, the benchmarks use that to compare
+@Configuration
+public class HibernateCacheConfig {
+
+    private final boolean enabled;
+
+    public HibernateCacheConfig(@Value("${pantry.cache.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // the caches are created up front (hibernate is told to fail on a region we forgot) so each one gets its own limits
+    @Bean(destroyMethod = "close")
+    CacheManager hibernateCacheManager(
+            @Value("${pantry.cache.entity.max-size:100000}") long entityMaxSize,
+            @Value("${pantry.cache.entity.ttl:10m}") Duration entityTtl,
+            @Value("${pantry.cache.query.max-size:1000}") long queryMaxSize,
+            @Value("${pantry.cache.query.ttl:1m}") Duration queryTtl) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager();
+        create(cacheManager, PantryItem.class.getName(), bounded(entityMaxSize, entityTtl));
+        create(cacheManager, Category.class.getName(), bounded(entityMaxSize, entityTtl));
+        create(cacheManager, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, bounded(queryMaxSize, queryTtl));
+        // when each table was last written. this one must never lose entries early, otherwise a cached query
+        // result could outlive the write that made it stale
+        create(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, unbounded());
+        return cacheManager;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, enabled);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, enabled);
+            if (enabled) {
+                properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                properties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager);
+                properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+            }
+        };
+    }
+
+    private static void create(CacheManager cacheManager, String name, CaffeineConfiguration<Object, Object> configuration) {
+        // the caching provider hands out one shared manager, a second context in the same JVM (tests) would find the old caches
+        if (cacheManager.getCache(name) != null) {
+            cacheManager.destroyCache(name);
+        }
+        cacheManager.createCache(name, configuration);
+    }
+
+    private static CaffeineConfiguration<Object, Object> bounded(long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = unbounded();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        return configuration;
+    }
+
+    private static CaffeineConfiguration<Object, Object> unbounded() {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
@@ -0,0 +1,135 @@
+package com.byrnald.smart_pantry.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.byrnald.smart_pantry.admission.AdmissionControl;
+import com.byrnald.smart_pantry.ledger.InventoryLedger;
+import com.byrnald.smart_pantry.service.ChangeFeed;
+import com.byrnald.smart_pantry.service.ConsumptionForecast;
+import com.byrnald.smart_pantry.service.DashboardCache;
+import com.byrnald.smart_pantry.service.ExpiryIndex;
+import com.byrnald.smart_pantry.service.InventoryAnalytics;
+import com.byrnald.smart_pantry.service.NameSearchIndex;
+import com.byrnald.smart_pantry.service.QuantityCounterBuffer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// our own meters on top of what actuator gives us for free (http.server.requests per endpoint, hikaricp.* pool
+// gauges, hibernate.* statistics). everything shows up on /actuator/prometheus.
+// - pantry.repository / pantry.repository.rows: latency and row count of every repository method
+// - pantry.http.statements: SQL statements per request, to catch N+1s
+// - pantry.dashboard.cache.*, pantry.write_behind.pending, pantry.*.index.size, pantry.analytics.rows: the in-memory stuff
+// - pantry.changes.*: change feed subscribers and how many got dropped for being too slow
+// - pantry.ledger.*: inventory ledger records, group commits (fsyncs) and records still waiting for the writer
+// - pantry.admission.*: the adaptive concurrency limit, requests running under it, its latency baseline,
+//   clients with a rate bucket and rejected requests per reason (rate_limit = 429, overload = 503) and priority
+// all of them add up every pantry
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private final ObjectProvider<MeterRegistry> registryProvider;
+    private final int statementWarnThreshold;
+
+    public MetricsConfig(ObjectProvider<MeterRegistry> registryProvider,
+            @Value("${pantry.metrics.statement-warn-threshold:20}") int statementWarnThreshold) {
+        this.registryProvider = registryProvider;
+        this.statementWarnThreshold = statementWarnThreshold;
+    }
+
+    // static so it can post process the repository factory beans without pulling this whole config in early
+    @Bean
+    static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registryProvider) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxy, information) -> proxy.addAdvice(new RepositoryMetricsInterceptor(registryProvider, information.getRepositoryInterface()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        MeterRegistry meterRegistry = registryProvider.getIfAvailable();
+        if (meterRegistry != null) {
+            registry.addInterceptor(new StatementCountInterceptor(meterRegistry, statementWarnThreshold));
+        }
+    }
+
+    // @Lazy: the registry binds this as soon as it exists, which with lazy initialization (the fast-start profile)
+    // would still build every one of these at startup. the proxies only get the real beans on the first scrape
+    @Bean
+    MeterBinder pantryMeters(@Lazy DashboardCache dashboardCache, @Lazy QuantityCounterBuffer quantityBuffer, @Lazy NameSearchIndex nameSearchIndex,
+            @Lazy ExpiryIndex expiryIndex, @Lazy ChangeFeed changeFeed, @Lazy InventoryLedger inventoryLedger,
+            @Lazy ConsumptionForecast consumptionForecast, @Lazy InventoryAnalytics inventoryAnalytics,
+            @Lazy AdmissionControl admissionControl) {
+        return registry -> {
+            Gauge.builder("pantry.dashboard.cache.size", dashboardCache, cache -> cache.stats().size())
+                    .description("cached dashboard pages (plus the urgent list)")
+                    .register(registry);
+            FunctionCounter.builder("pantry.dashboard.cache.requests", dashboardCache, cache -> cache.stats().hits())
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("pantry.dashboard.cache.requests", dashboardCache, cache -> cache.stats().misses())
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("pantry.dashboard.cache.evictions", dashboardCache, cache -> cache.stats().evictions())
+                    .register(registry);
+            Gauge.builder("pantry.write_behind.pending", quantityBuffer, QuantityCounterBuffer::pendingItems)
+                    .description("items with buffered quantity changes not yet written")
+                    .register(registry);
+            Gauge.builder("pantry.name.index.size", nameSearchIndex, NameSearchIndex::size).register(registry);
+            Gauge.builder("pantry.expiry.index.size", expiryIndex, ExpiryIndex::size).register(registry);
+            Gauge.builder("pantry.analytics.rows", inventoryAnalytics, InventoryAnalytics::size)
+                    .description("items in the in-memory analytics columns")
+                    .register(registry);
+            Gauge.builder("pantry.changes.subscribers", changeFeed, ChangeFeed::subscriberCount).register(registry);
+            FunctionCounter.builder("pantry.changes.total", changeFeed, ChangeFeed::totalChanges).register(registry);
+            FunctionCounter.builder("pantry.changes.evictions", changeFeed, ChangeFeed::evictions)
+                    .description("change stream subscribers dropped because they fell behind")
+                    .register(registry);
+            FunctionCounter.builder("pantry.ledger.records", inventoryLedger, InventoryLedger::records).register(registry);
+            Gauge.builder("pantry.ledger.queued", inventoryLedger, InventoryLedger::queued).register(registry);
+            FunctionCounter.builder("pantry.ledger.group.commits", inventoryLedger, InventoryLedger::groupCommits)
+                    .description("ledger writes, each one a single fsync for every record that queued up")
+                    .register(registry);
+            Gauge.builder("pantry.forecast.low_stock", consumptionForecast, ConsumptionForecast::lowStockCount)
+                    .description("items at or below their predicted low stock threshold")
+                    .register(registry);
+            Gauge.builder("pantry.admission.limit", admissionControl, AdmissionControl::limit)
+                    .description("requests allowed to run at once, adapted to latency")
+                    .register(registry);
+            Gauge.builder("pantry.admission.inflight", admissionControl, AdmissionControl::inflight).register(registry);
+            Gauge.builder("pantry.admission.min_rtt", admissionControl, AdmissionControl::minRttSeconds)
+                    .baseUnit("seconds")
+                    .description("latency of a request that didn't wait for anything, the limit's baseline")
+                    .register(registry);
+            Gauge.builder("pantry.admission.clients", admissionControl, AdmissionControl::clients).register(registry);
+            for (AdmissionControl.Priority priority : AdmissionControl.Priority.values()) {
+                String tag = priority.name().toLowerCase();
+                FunctionCounter.builder("pantry.admission.rejected", admissionControl, control -> control.rateLimited(priority))
+                        .tag("reason", "rate_limit")
+                        .tag("priority", tag)
+                        .register(registry);
+                FunctionCounter.builder("pantry.admission.rejected", admissionControl, control -> control.shed(priority))
+                        .tag("reason", "overload")
+                        .tag("priority", tag)
+                        .register(registry);
+            }
+        };
+    }
+}
@@ -3,48 +3,64 @@ package com.byrnald.smart_pantry.config;
 import java.time.LocalDate;
 import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.byrnald.smart_pantry.model.PantryItem;
 import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.service.CategoryService;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
 
 @Configuration
 public class PantryDataLoader {
 
+    private static final Logger log = LoggerFactory.getLogger(PantryDataLoader.class);
+
     @Bean
-    CommandLineRunner initDatabase(PantryRepository repository) {
+    CommandLineRunner initDatabase(PantryRepository repository, CategoryService categoryService, PantryTenants pantryTenants) {
         return args -> {
-            // This check prevents duplicates when you restart!
-            if (repository.count() == 0) {
-                System.out.println("--- Seeding database with initial items ---");
-                
-                // Create items manually to set all fields including Category
-                PantryItem cables1 = new PantryItem();
-                cables1.setName("Patch Cables");
-                cables1.setQuantity(21);
-                cables1.setCategory("Electronics");
-                cables1.setExpirationDate(null); // Cables don't expire
-
-                PantryItem cables2 = new PantryItem();
-                cables2.setName("HDMI Cables");
-                cables2.setQuantity(4);
-                cables2.setCategory("Electronics");
-                cables2.setExpirationDate(null);
-
-                PantryItem eggs = new PantryItem();
-                eggs.setName("Eggs");
-                eggs.setQuantity(36);
-                eggs.setCategory("Pantry");
-                eggs.setExpirationDate(LocalDate.now().plusDays(7));
-
-                repository.saveAll(List.of(cables1, cables2, eggs));
-
-                System.out.println("--- Database Seeded Successfully ---");
+            // the schema and the old fix ups (sequence, legacy categories, sort keys...) are flyway migrations now
+            // (db/migration and the migration package), they run once instead of being checked on every boot
+
+            // pantries listed in pantry.tenants.dedicated get their schema (and their items moved there) before anything reads them
+            pantryTenants.createDedicatedSchemas();
+
+            // This check prevents duplicates when you restart! seeding is for the default pantry
+            // (runners have no request, so TenantContext is already on it). one row is enough to know,
+            // counting them all would read the whole pantry's index on every boot
+            if (!repository.existsByIdNotNull()) {
+                log.info("Seeding database with initial items");
+
+                List<PantryItem> seed = seedItems();
+                seed.forEach(categoryService::resolve); // the category names become rows in the category table
+                repository.saveAll(seed);
+
+                log.info("Database seeded with {} items", seed.size());
             } else {
-                System.out.println("--- Database already contains data, skipping seed ---");
+                log.info("Database already contains data, skipping seed");
             }
         };
     }
+
+    // the items an empty database starts with. subclasses (like the synthetic data generator in
+    // smart-pantry-benchmarks) override this to seed something bigger
+    protected List<PantryItem> seedItems() { 
+        // Create items manually to set all fields including Category
+        PantryItem cables1 = newItem("Patch Cables", 21, "Electronics", null); // Cables don't expire
+        PantryItem cables2 = newItem("HDMI Cables", 4, "Electronics", null);
+        PantryItem eggs = newItem("Eggs", 36, "Pantry", LocalDate.now().plusDays(7));
+        return List.of(cables1, cables2, eggs);
+    }
+
+    protected static PantryItem newItem(String name, int quantity, String category, LocalDate expirationDate) { 
+        PantryItem item = new PantryItem();
+        item.setName(name);
+        item.setQuantity(quantity);
+        item.setCategory(category);
+        item.setExpirationDate(expirationDate);
+        return item;
+    }
 }
\ No newline at end of file
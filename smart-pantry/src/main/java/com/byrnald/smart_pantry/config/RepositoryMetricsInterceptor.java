@@ -0,0 +1,93 @@
+package com.byrnald.smart_pantry.config;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.Modifying;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// sits in front of every repository method: times the call (pantry.repository) and records how many rows
+// came back or were changed (pantry.repository.rows), both tagged with the repository and method name
+class RepositoryMetricsInterceptor implements MethodInterceptor {
+
+    private final ObjectProvider<MeterRegistry> registryProvider; // looked up on first use, repositories are created before the registry
+    private final String repository;
+
+    RepositoryMetricsInterceptor(ObjectProvider<MeterRegistry> registryProvider, Class<?> repositoryInterface) {
+        this.registryProvider = registryProvider;
+        this.repository = repositoryInterface.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MeterRegistry registry = registryProvider.getIfAvailable();
+        if (registry == null) {
+            return invocation.proceed();
+        }
+        Method method = invocation.getMethod();
+        String outcome = "success";
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            long rows = rowsOf(method, result);
+            if (rows >= 0) {
+                DistributionSummary.builder("pantry.repository.rows")
+                        .description("rows returned or changed per repository call")
+                        .baseUnit("rows")
+                        .tag("repository", repository)
+                        .tag("method", method.getName())
+                        .register(registry)
+                        .record(rows);
+            }
+            return result;
+        } catch (Throwable e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            Timer.builder("pantry.repository")
+                    .description("repository method latency")
+                    .tag("repository", repository)
+                    .tag("method", method.getName())
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // -1 when there is nothing sensible to count (counts, max ids, streams that haven't been read yet)
+    private static long rowsOf(Method method, Object result) {
+        if (result instanceof Number number) {
+            return AnnotatedElementUtils.hasAnnotation(method, Modifying.class) ? number.longValue() : -1;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Window<?> window) {
+            return window.size();
+        }
+        if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result == null) {
+            return method.getReturnType() == void.class ? -1 : 0;
+        }
+        if (method.getName().startsWith("find")) {
+            return 1; // a single entity or projection
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,50 @@
+package com.byrnald.smart_pantry.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// records how many SQL statements each request ran (pantry.http.statements, tagged like http.server.requests),
+// and logs the requests that go over the warn threshold
+public class StatementCountInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementCountInterceptor.class);
+
+    private final MeterRegistry registry;
+    private final int warnThreshold;
+
+    public StatementCountInterceptor(MeterRegistry registry, int warnThreshold) {
+        this.registry = registry;
+        this.warnThreshold = warnThreshold;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        StatementCounter.reset();
+        return true;
+    }
+
+    // afterCompletion runs after the view is rendered, so lazy loads from the template are counted too
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        int statements = StatementCounter.current();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("pantry.http.statements")
+                .description("SQL statements run by hibernate per request")
+                .baseUnit("statements")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(registry)
+                .record(statements);
+        if (statements > warnThreshold) {
+            log.warn("{} {} ran {} SQL statements (threshold {})", request.getMethod(), uri, statements, warnThreshold);
+        }
+    }
+}
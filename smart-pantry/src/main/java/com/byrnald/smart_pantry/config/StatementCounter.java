@@ -0,0 +1,32 @@
+package com.byrnald.smart_pantry.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// hibernate hands every SQL statement it prepares to this before running it, we just count them per thread.
+// StatementCountInterceptor resets the count when a request comes in and records it when the request is done,
+// so a dashboard click that fires 200 selects (an N+1) shows up right away.
+// registered with spring.jpa.properties.hibernate.session_factory.statement_inspector, hibernate creates the instance
+// (plain JdbcTemplate statements, like the write-behind flush, don't go through hibernate and aren't counted)
+public class StatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql; // unchanged
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    // QueryFanOut adds what its virtual threads ran to the request thread's count
+    public static void add(int statements) {
+        COUNT.get()[0] += statements;
+    }
+
+    public static int current() {
+        return COUNT.get()[0];
+    }
+}
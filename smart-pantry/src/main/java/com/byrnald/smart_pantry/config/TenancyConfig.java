@@ -0,0 +1,25 @@
+package com.byrnald.smart_pantry.config;
+
+import org.hibernate.cfg.MultiTenancySettings;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+
+// plugs the pantries into hibernate: the resolver tells every new session which pantry it's for (TenantContext),
+// the schema mapper is only turned on when some pantry has a schema of its own, otherwise every session would
+// pay for a SET SCHEMA PUBLIC it doesn't need
+@Configuration
+public class TenancyConfig {
+
+    @Bean
+    HibernatePropertiesCustomizer tenancyCustomizer(PantryTenants pantryTenants) {
+        return properties -> {
+            properties.put(MultiTenancySettings.MULTI_TENANT_IDENTIFIER_RESOLVER, pantryTenants);
+            if (pantryTenants.hasDedicated()) {
+                properties.put(MultiTenancySettings.MULTI_TENANT_SCHEMA_MAPPER, pantryTenants);
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package com.byrnald.smart_pantry.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.JacksonCborHttpMessageConverter;
+import org.springframework.http.converter.smile.JacksonSmileHttpMessageConverter;
+
+// binary versions of the api's json, picked by the Accept header (json stays the default):
+// - application/cbor: the standard one (RFC 8949), every language has a library for it
+// - application/x-jackson-smile: jackson's own, a bit smaller since repeated field names are sent once
+// both skip the text parsing and number formatting that makes big json pages expensive, gzip (server.compression.*)
+// goes on top. spring boot adds every HttpMessageConverter bean to the ones mvc uses
+@Configuration
+public class WireFormatConfig {
+
+    @Bean
+    JacksonCborHttpMessageConverter cborHttpMessageConverter() {
+        return new JacksonCborHttpMessageConverter();
+    }
+
+    @Bean
+    JacksonSmileHttpMessageConverter smileHttpMessageConverter() {
+        return new JacksonSmileHttpMessageConverter();
+    }
+}
@@ -0,0 +1,82 @@
+package com.byrnald.smart_pantry.controller;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.byrnald.smart_pantry.service.ChangeFeed;
+
+// pushes the ChangeFeed to SSE clients. every client gets a ChangeFeed subscription (a bounded queue)
+// and a virtual thread that drains it into the SseEmitter, so a slow client only ever blocks its own thread.
+// events: "change" (id = cursor, data = the change), "reset" (id = data = the newest cursor: you were dropped,
+// fell out of the buffer or come from before a restart, reload the full list) and a keepalive comment every 15 seconds so dead connections get noticed.
+// browsers' EventSource reconnects by itself with Last-Event-ID, so a dropped client resumes where it stopped
+@Component
+public class ChangeStream {
+
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final long STREAM_TIMEOUT_MS = 30 * 60 * 1000L; // clients reconnect after this, keeps stuck connections from living forever
+
+    private final ChangeFeed changeFeed;
+    private final int queueCapacity;
+    private final int maxSubscribers;
+
+    public ChangeStream(ChangeFeed changeFeed, @Value("${pantry.changes.subscriber-queue:256}") int queueCapacity,
+            @Value("${pantry.changes.max-subscribers:200}") int maxSubscribers) {
+        this.changeFeed = changeFeed;
+        this.queueCapacity = queueCapacity;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    // streams one pantry's changes
+    // cursor = ChangeFeed.cursor, IllegalArgumentException if it isn't one
+    public SseEmitter open(String pantryId, String cursor) {
+        if (changeFeed.subscriberCount() >= maxSubscribers) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many change stream subscribers, poll /api/pantry/changes instead");
+        }
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(pantryId, cursor, queueCapacity);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscription.close());
+        Thread.ofVirtual().name("change-stream").start(() -> pump(pantryId, emitter, subscription));
+        return emitter;
+    }
+
+    private void pump(String pantryId, SseEmitter emitter, ChangeFeed.Subscription subscription) {
+        try (subscription) {
+            while (true) {
+                // an evicted subscription gets no new entries, so just drain what's left without waiting
+                ChangeFeed.Entry entry = subscription.isEvicted()
+                        ? subscription.queue().poll()
+                        : subscription.queue().poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                if (entry != null) {
+                    emitter.send(SseEmitter.event().id(changeFeed.cursor(entry.sequence())).name("change").data(entry));
+                } else if (subscription.isEvicted()) {
+                    emitter.send(resetEvent(pantryId));
+                    emitter.complete();
+                    return;
+                } else {
+                    emitter.send(SseEmitter.event().comment("keepalive"));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client went away or the emitter already timed out, nothing left to send to
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        }
+    }
+
+    // the reset carries the newest cursor as its id, so the EventSource's Last-Event-ID moves forward. reconnecting
+    // with the old one would ask for the same backlog that got this client evicted and go round in circles
+    SseEmitter.SseEventBuilder resetEvent(String pantryId) {
+        String cursor = changeFeed.cursor(changeFeed.lastSequence(pantryId));
+        return SseEmitter.event().id(cursor).name("reset").data(cursor);
+    }
+}
@@ -0,0 +1,126 @@
+package com.byrnald.smart_pantry.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// remembers the response to every write sent with an Idempotency-Key header, so a client that retries
+// (the mobile app does on every timeout) gets the first response back instead of adding the item twice.
+// - same key, same request, first one done: the stored response is replayed (with Idempotency-Replayed: true)
+// - same key while the first one is still running: 409, the client should retry a bit later
+// - same key, different request: 422, that's a client bug
+// - a request that failed (threw) is forgotten, so retrying it with the same key really retries
+// in memory and per node: bounded LRU map, entries expire after pantry.idempotency.ttl.
+// keys are per pantry, two pantries' scanners can't replay each other's responses.
+// requests are told apart by a SHA-256 of their content (fingerprint()), not the content itself, and an endpoint with
+// big responses can keep a smaller version for replays, so 10000 entries of 50,000 operation batches don't pile up
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotency-Replayed";
+
+    private record Entry(String fingerprint, CompletableFuture<ResponseEntity<?>> response, long createdAt) { }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public IdempotencyStore(@Value("${pantry.idempotency.max-entries:10000}") int maxEntries,
+            @Value("${pantry.idempotency.ttl:24h}") Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IdempotencyStore.this.maxEntries;
+            }
+        };
+    }
+
+    // SHA-256 of the request's parts in order, what execute() expects as the fingerprint
+    public static String fingerprint(Iterable<?> parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256", e);
+        }
+        for (Object part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0); // so ("ab", "c") and ("a", "bc") differ
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // runs the write once per key. scope keeps the same key on two different endpoints apart,
+    // fingerprint identifies the request's content (so a reused key with a new body is caught)
+    public <T> ResponseEntity<T> execute(String key, String scope, String fingerprint, Supplier<ResponseEntity<T>> write) {
+        return execute(key, scope, fingerprint, write, UnaryOperator.identity());
+    }
+
+    // same, but a retry is answered with forReplay(first response) instead of the first response itself
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String key, String scope, String fingerprint, Supplier<ResponseEntity<T>> write,
+            UnaryOperator<ResponseEntity<T>> forReplay) {
+        if (key == null || key.isBlank()) {
+            return write.get();
+        }
+        String storeKey = TenantContext.current() + " " + scope + " " + key;
+        CompletableFuture<ResponseEntity<?>> stored = new CompletableFuture<>();
+        Entry existing;
+        synchronized (this) {
+            existing = entries.get(storeKey);
+            if (existing != null && System.nanoTime() - existing.createdAt() > ttlNanos) {
+                entries.remove(storeKey);
+                existing = null;
+            }
+            if (existing == null) {
+                entries.put(storeKey, new Entry(fingerprint, stored, System.nanoTime()));
+            }
+        }
+
+        if (existing != null) {
+            if (!Objects.equals(existing.fingerprint(), fingerprint)) {
+                throw new ResponseStatusException(HttpStatusCode.valueOf(422), HEADER + " was already used for a different request");
+            }
+            ResponseEntity<?> done = existing.response().getNow(null);
+            if (done == null) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "A request with this " + HEADER + " is still in progress");
+            }
+            return (ResponseEntity<T>) ResponseEntity.status(done.getStatusCode())
+                    .headers(done.getHeaders())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(done.getBody());
+        }
+
+        try {
+            ResponseEntity<T> response = write.get();
+            stored.complete(forReplay.apply(response));
+            return response;
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                entries.remove(storeKey);
+            }
+            stored.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
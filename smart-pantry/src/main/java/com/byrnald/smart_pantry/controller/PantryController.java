@@ -1,50 +1,245 @@
 package com.byrnald.smart_pantry.controller;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.byrnald.smart_pantry.ledger.InventoryLedger;
+import com.byrnald.smart_pantry.ledger.LedgerRecord;
+import com.byrnald.smart_pantry.model.CategoryStatsView;
+import com.byrnald.smart_pantry.model.ItemForecast;
+import com.byrnald.smart_pantry.model.PantryAnalytics;
 import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryViewPage;
+import com.byrnald.smart_pantry.service.CategoryStatsService;
+import com.byrnald.smart_pantry.service.ChangeFeed;
+import com.byrnald.smart_pantry.service.DashboardCache;
+import com.byrnald.smart_pantry.service.ExpiryAlerts;
+import com.byrnald.smart_pantry.service.InventoryAnalytics;
+import com.byrnald.smart_pantry.service.InventoryColumns;
+import com.byrnald.smart_pantry.service.PantryBatchService;
+import com.byrnald.smart_pantry.service.PantryBulkService;
 import com.byrnald.smart_pantry.service.PantryService;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 
 @RestController //this annotation tells spring that this class is a controller
 //  which means it will handle incoming HTTP requests and return responses
 @RequestMapping("/api/pantry") // this annotation specifies the base URL for all endpoints in this controller
 // so for example: google.com/api/pantry would be the base URL for this controller
+// every endpoint works on one pantry, picked by the X-Pantry-Id header (or ?pantry=), see TenantFilter
 public class PantryController {
     
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_CHANGES = 1000;
+    private static final int MAX_BATCH_OPERATIONS = 50_000;
+    private static final int MAX_REPLAYED_RESULTS = 1_000;
+
     private final PantryService pantryService;
+    private final PantryBulkService pantryBulkService;
+    private final PantryBatchService pantryBatchService;
+    private final CategoryStatsService categoryStatsService;
+    private final IdempotencyStore idempotencyStore;
+    private final ChangeFeed changeFeed;
+    private final ChangeStream changeStream;
+    private final InventoryLedger inventoryLedger;
+    private final InventoryAnalytics inventoryAnalytics;
+    private final ExpiryAlerts expiryAlerts;
 
     //then we inject the service.
-    public PantryController(PantryService pantryService) {
+    public PantryController(PantryService pantryService, PantryBulkService pantryBulkService, PantryBatchService pantryBatchService,
+            CategoryStatsService categoryStatsService, IdempotencyStore idempotencyStore, ChangeFeed changeFeed, ChangeStream changeStream,
+            InventoryLedger inventoryLedger, InventoryAnalytics inventoryAnalytics, ExpiryAlerts expiryAlerts) {
         this.pantryService = pantryService;
+        this.pantryBulkService = pantryBulkService;
+        this.pantryBatchService = pantryBatchService;
+        this.categoryStatsService = categoryStatsService;
+        this.idempotencyStore = idempotencyStore;
+        this.changeFeed = changeFeed;
+        this.changeStream = changeStream;
+        this.inventoryLedger = inventoryLedger;
+        this.inventoryAnalytics = inventoryAnalytics;
+        this.expiryAlerts = expiryAlerts;
     }
 
     //then we create a GET endpoint to see all the items.
+    // URL: http://localhost:8080/api/pantry?size=50 then keep passing &cursor=<nextCursor> to get the next page
+    // the items are PantryItemViews (id, name, quantity, expirationDate, category, version), not the whole entity.
+    // send Accept: application/cbor (or application/x-jackson-smile) for the binary encoding, big pages are gzipped either way
     @GetMapping
-    public List<PantryItem> getAllItems() { 
-        return pantryService.getAllItems();
+    public PantryViewPage getAllItems(@RequestParam(required = false) String cursor, @RequestParam(defaultValue = "50") int size) { 
+        try { 
+            return pantryService.getItemViews(cursor, size);
+        } catch (IllegalArgumentException e) { 
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // URL (GET): http://localhost:8080/api/pantry/1
+    // the response has an ETag (the item's version), send it back as If-None-Match and you get 304 with no body
+    // until the item changes. spring does the If-None-Match check for us because the ResponseEntity carries the ETag
+    @GetMapping("/{id}")
+    public ResponseEntity<PantryItem> getItem(@PathVariable Long id) { 
+        return pantryService.getItem(id)
+                .map(item -> ResponseEntity.ok().eTag(etagOf(item)).body(item))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping //Url (POST): post https://localhost:8080/api/pantry
-    public PantryItem addItem(@RequestBody PantryItem item) { 
-        return pantryService.addItem(item);
+    // with an Idempotency-Key header a retried POST returns the first response instead of adding the item again
+    public ResponseEntity<PantryItem> addItem(@RequestBody PantryItem item, @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) { 
+        String fingerprint = IdempotencyStore.fingerprint(Arrays.asList(item.getName(), item.getQuantity(), item.getExpirationDate(), item.getCategory()));
+        return idempotencyStore.execute(idempotencyKey, "POST /api/pantry", fingerprint, () -> {
+            PantryItem saved = pantryService.addItem(item);
+            return ResponseEntity.ok().eTag(etagOf(saved)).body(saved);
+        });
+    }
+    // URL (POST): http://localhost:8080/api/pantry/bulk with a text/csv or application/x-ndjson body
+    // e.g. curl -X POST -H "Content-Type: text/csv" --data-binary @items.csv http://localhost:8080/api/pantry/bulk
+    // the body is read line by line straight off the request, never loaded into memory all at once
+    @PostMapping(value = "/bulk", consumes = { "text/csv", NDJSON })
+    public PantryBulkService.ImportResult bulkImport(HttpServletRequest request) throws IOException { 
+        PantryBulkService.Format format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.parseMediaType(NDJSON))
+                ? PantryBulkService.Format.NDJSON
+                : PantryBulkService.Format.CSV;
+        return pantryBulkService.importItems(request.getInputStream(), format);
+    }
+
+    // URL (POST): http://localhost:8080/api/pantry/batch with a json array of operations, e.g.
+    // [{"op":"DELETE","id":1}, {"op":"ADJUST","id":2,"delta":-3}, {"op":"SET_CATEGORY","id":3,"category":"Pantry"},
+    //  {"op":"SET_EXPIRY","id":4,"expirationDate":"2026-03-01"}, {"op":"PURGE_EXPIRED","before":"2026-01-01"}]
+    // all of it runs in one transaction as a handful of set based statements, the response has a result per operation.
+    // with an Idempotency-Key header a retried batch isn't applied twice. a retried batch of more than
+    // MAX_REPLAYED_RESULTS operations gets the counts back but no per-operation results, those aren't kept for 24h
+    @PostMapping("/batch")
+    public ResponseEntity<PantryBatchService.BatchResult> batch(@RequestBody List<PantryBatchService.Operation> operations,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) { 
+        if (operations.size() > MAX_BATCH_OPERATIONS) { 
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "At most " + MAX_BATCH_OPERATIONS + " operations per batch");
+        }
+        // each operation is a record, its toString has every field in a fixed order
+        return idempotencyStore.execute(idempotencyKey, "POST /api/pantry/batch", IdempotencyStore.fingerprint(operations),
+                () -> ResponseEntity.ok(pantryBatchService.apply(operations)), PantryController::forReplay);
+    }
+
+    private static ResponseEntity<PantryBatchService.BatchResult> forReplay(ResponseEntity<PantryBatchService.BatchResult> response) { 
+        PantryBatchService.BatchResult result = response.getBody();
+        if (result == null || result.results().size() <= MAX_REPLAYED_RESULTS) { 
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                .body(new PantryBatchService.BatchResult(result.applied(), result.failed(), result.purged(), List.of()));
     }
+
+    // URL (DELETE): http://localhost:8080/api/pantry/expired?before=2026-01-01
+    // every item that expired before that day, gone in one DELETE
+    @DeleteMapping("/expired")
+    public PantryBatchService.BatchResult purgeExpired(@RequestParam LocalDate before) { 
+        return pantryBatchService.purgeExpired(before);
+    }
+
+    // URL (GET): http://localhost:8080/api/pantry/export?format=csv (or format=ndjson)
+    // rows are written as they come off the database cursor, so exporting everything doesn't need everything in memory
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "csv") String format) { 
+        PantryBulkService.Format exportFormat;
+        try { 
+            exportFormat = PantryBulkService.Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) { 
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format " + format + ", use csv or ndjson");
+        }
+        boolean csv = exportFormat == PantryBulkService.Format.CSV;
+        // the body is written on another thread after this method returns, it has to take the pantry along
+        String pantryId = TenantContext.current();
+        StreamingResponseBody body = out -> TenantContext.runAs(pantryId, () -> pantryBulkService.exportItems(out, exportFormat));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(csv ? "text/csv" : NDJSON))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=pantry." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+
+    // URL (GET): http://localhost:8080/api/pantry/changes?since=k3x9f2:1234
+    // everything that changed after that cursor (up to `limit` changes), keep polling with the returned cursor.
+    // no since = everything still in the buffer.
+    // reset = true means the changes you need are gone from the buffer (or the app restarted), reload the full list
+    @GetMapping("/changes")
+    public ChangeFeed.Batch getChanges(@RequestParam(required = false) String since, @RequestParam(defaultValue = "500") int limit) { 
+        try { 
+            return changeFeed.since(TenantContext.current(), since, Math.max(1, Math.min(limit, MAX_CHANGES)));
+        } catch (IllegalArgumentException e) { 
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid change cursor: " + since);
+        }
+    }
+
+    // URL (GET): http://localhost:8080/api/pantry/changes/stream (server-sent events, e.g. new EventSource(url) in the browser)
+    // starts from `since` (or the Last-Event-ID the browser sends when it reconnects), otherwise only new changes
+    @GetMapping(value = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) String since, @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) { 
+        String pantryId = TenantContext.current();
+        String from = lastEventId != null ? lastEventId : since != null ? since : changeFeed.cursor(changeFeed.lastSequence(pantryId));
+        try { 
+            return changeStream.open(pantryId, from);
+        } catch (IllegalArgumentException e) { 
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid change cursor: " + from);
+        }
+    }
+
+    // URL (GET): http://localhost:8080/api/pantry/ledger/state?at=2026-01-01T00:00:00Z
+    // item id -> quantity as it was at that moment, rebuilt from the inventory ledger
+    @GetMapping("/ledger/state")
+    public Map<Long, Integer> getLedgerState(@RequestParam Instant at) { 
+        requireLedger();
+        return inventoryLedger.stateAt(TenantContext.current(), at);
+    }
+
+    // URL (GET): http://localhost:8080/api/pantry/1/history?since=2026-01-01T00:00:00Z (default: the last 30 days)
+    // every quantity change of one item, oldest first
+    @GetMapping("/{id}/history")
+    public List<LedgerRecord> getHistory(@PathVariable Long id, @RequestParam(required = false) Instant since) { 
+        requireLedger();
+        return inventoryLedger.history(TenantContext.current(), id, since != null ? since : Instant.now().minus(30, ChronoUnit.DAYS));
+    }
+
     // url (GET): https://localhost:8080/api/pantry/expiring
     @GetMapping("/expiring")
     public List<PantryItem> getExpiringSoon() {
         return pantryService.getExpiringSoon();
     }
 
+    // URL (GET): http://localhost:8080/api/pantry/alerts
+    // what expired each night (the last 30 sweeps), newest first
+    @GetMapping("/alerts")
+    public List<ExpiryAlerts.Alert> getExpiryAlerts() { 
+        return expiryAlerts.recent();
+    }
+
     // lets say we dont have any items in our pantry, we need to find a way to delete items.
     // URL (DELETE): http://localhost:8080/api/pantry/1 (1 is just the ID of the item we want to delete) so just an example
     @DeleteMapping("/{id}")
@@ -54,17 +249,139 @@ public class PantryController {
         //it will delete by id
     }
 
+    // send If-Match: "<version>" (the ETag from the GET) and the update only happens if nobody changed the item since,
+    // otherwise 412. a "version" in the body works the same way (409 on a mismatch), with neither the last write wins.
+    // 404 if there's no item with that id
     @PutMapping("/{id}")
-    public PantryItem updateItem(@PathVariable Long id, @RequestBody PantryItem itemDetails) { 
-        return pantryService.updateItem(id, itemDetails);
+    public ResponseEntity<PantryItem> updateItem(@PathVariable Long id, @RequestBody PantryItem itemDetails,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) { 
+        if (ifMatch != null) { 
+            itemDetails.setVersion(versionOf(ifMatch));
+        }
+        try { 
+            return pantryService.editItem(id, itemDetails)
+                    .map(saved -> ResponseEntity.ok().eTag(etagOf(saved)).body(saved))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (ObjectOptimisticLockingFailureException e) { 
+            return ResponseEntity.status(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT).build();
+        }
         // this will update an item by id, and the new details will be in the request body
     }
    
+    // URL (POST): http://localhost:8080/api/pantry/1/adjust?delta=-1
+    // this is what the barcode scanners call, the change happens inside the database so no lost updates.
+    // 204 = applied, 202 = buffered by write-behind mode, 404 = no item with that id, 400 = the buffered total would overflow
+    // a scanner that retries with the same Idempotency-Key only counts the scan once
+    @PostMapping("/{id}/adjust")
+    public ResponseEntity<Void> adjustQuantity(@PathVariable Long id, @RequestParam int delta,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) { 
+        return idempotencyStore.execute(idempotencyKey, "POST /api/pantry/adjust", id + ":" + delta, () -> {
+            try { 
+                if (!pantryService.adjustQuantity(id, delta)) { 
+                    return ResponseEntity.notFound().build();
+                }
+            } catch (IllegalArgumentException e) { 
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
+            return pantryService.isWriteBehind() ? ResponseEntity.accepted().build() : ResponseEntity.noContent().build();
+        });
+    }
+
+    // URL: http://localhost:8080/api/pantry/search?q=egs&limit=10
+    // answered from the in-memory name index, ranked best match first and typo tolerant
+    @GetMapping("/search")
+    public List<PantryItem> search(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) { 
+        return pantryService.rankedSearch(q, limit);
+    }
+
+    // URL: http://localhost:8080/api/pantry/categories/stats
+    // item count, total quantity, low stock and expiring counts per category, read from the category_stats table
+    @GetMapping("/categories/stats")
+    public List<CategoryStatsView> getCategoryStats() { 
+        return categoryStatsService.getStats();
+    }
+
+    // URL: http://localhost:8080/api/pantry/analytics?groupBy=category&withinDays=7 (total quantity per category expiring this week)
+    // item count + total quantity per group, worked out on the in-memory column copy of the pantry, no rows are loaded.
+    // groupBy: none, category, days-to-expiry or weeks-to-expiry (a histogram counted from today).
+    // filters: category (repeat it for several), expiresFrom/expiresTo (inclusive, items without a date are left out),
+    // withinDays (today up to today + withinDays), minQuantity/maxQuantity
+    @GetMapping("/analytics")
+    public PantryAnalytics getAnalytics(@RequestParam(defaultValue = "none") String groupBy, @RequestParam(required = false) Set<String> category,
+            @RequestParam(required = false) LocalDate expiresFrom, @RequestParam(required = false) LocalDate expiresTo,
+            @RequestParam(required = false) Integer withinDays, @RequestParam(required = false) Integer minQuantity,
+            @RequestParam(required = false) Integer maxQuantity) { 
+        if (!inventoryAnalytics.isEnabled()) { 
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Inventory analytics is turned off");
+        }
+        if (!inventoryAnalytics.isReady()) { 
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Inventory analytics is still loading");
+        }
+        if (withinDays != null) { 
+            expiresFrom = LocalDate.now();
+            expiresTo = expiresFrom.plusDays(withinDays);
+        }
+        try { 
+            InventoryColumns.GroupBy by = InventoryColumns.GroupBy.valueOf(groupBy.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            return inventoryAnalytics.query(by, new InventoryColumns.Filter(category, expiresFrom, expiresTo, minQuantity, maxQuantity));
+        } catch (IllegalArgumentException e) { 
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // URL: http://localhost:8080/api/pantry/cache-stats
+    // hit/miss/eviction counts of the dashboard cache, to check it's actually saving us queries
+    @GetMapping("/cache-stats")
+    public DashboardCache.Stats getCacheStats() { 
+        return pantryService.getDashboardCacheStats();
+    }
+
     // URL: http://localhost:8080/api/pantry/low-stock?threshold=5
+    // without ?threshold every item is checked against its own predicted threshold (see /forecast)
     @GetMapping("/low-stock")
-    public List<PantryItem> getLowStock(@RequestParam(defaultValue = "5") int threshold) { 
+    public List<PantryItem> getLowStock(@RequestParam(required = false) Integer threshold) { 
         //the @ RequestParam helps me change the warning level on in the URL instantly
-        return pantryService.getLowStockItems(threshold);
+        return threshold != null ? pantryService.getLowStockItems(threshold) : pantryService.getLowStockItems();
     }
-    
+
+    // URL: http://localhost:8080/api/pantry/forecast
+    // per item usage per day, days until it runs out, run-out date and its low stock threshold. soonest to run out first
+    @GetMapping("/forecast")
+    public List<ItemForecast> getForecasts() { 
+        return pantryService.getForecasts();
+    }
+
+    // URL: http://localhost:8080/api/pantry/1/forecast
+    @GetMapping("/{id}/forecast")
+    public ResponseEntity<ItemForecast> getForecast(@PathVariable Long id) { 
+        return ResponseEntity.of(pantryService.getForecast(id));
+    }
+
+    private void requireLedger() { 
+        if (!inventoryLedger.isEnabled()) { 
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The inventory ledger is turned off");
+        }
+    }
+
+    private static String etagOf(PantryItem item) { 
+        return "\"" + item.getVersion() + "\"";
+    }
+
+    // If-Match: "3". * means any version, so no check at all.
+    // If-Match compares strongly (RFC 9110), a weak W/"3" never matches and gets a 412 like any other stale tag
+    static Long versionOf(String ifMatch) { 
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) { 
+            return null;
+        }
+        if (tag.startsWith("W/")) { 
+            return -1L;
+        }
+        try { 
+            return Long.valueOf(tag.replace("\"", ""));
+        } catch (NumberFormatException e) { 
+            return -1L; // not one of our ETags, can never match so the client gets a 412
+        }
+    }
+
 }
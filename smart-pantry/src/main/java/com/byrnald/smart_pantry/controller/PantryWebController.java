@@ -1,15 +1,20 @@
 package com.byrnald.smart_pantry.controller;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 
+import com.byrnald.smart_pantry.model.DashboardView;
 import com.byrnald.smart_pantry.model.PantryItem;
 import com.byrnald.smart_pantry.repository.PantryRepository;
 import com.byrnald.smart_pantry.service.PantryService;
+import com.byrnald.smart_pantry.tenant.TenantContext;
 
 @Controller
 public class PantryWebController {
@@ -23,13 +28,27 @@ public class PantryWebController {
     }
 
     @GetMapping("/dashboard")
-    public String dashboard(Model model, @RequestParam(required = false) String keyword, @RequestParam(required = false) String category) {
+    public String dashboard(Model model, @RequestParam(required = false) String keyword, @RequestParam(required = false) String category, @RequestParam(required = false) String cursor) {
         //now we get filtered items instead of using the getAllItems method
-        model.addAttribute("items", pantryService.searchItems(keyword, category));
+        //only one page at a time, the cursor says where the previous page stopped
+        //and it usually comes straight out of the dashboard cache, so the redirect after every button is cheap
+        DashboardView view;
+        try {
+            view = pantryService.getDashboard(keyword, category, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e); // a cursor we didn't hand out
+        }
+        model.addAttribute("items", view.page().items());
+        model.addAttribute("nextCursor", view.page().nextCursor());
+        model.addAttribute("cursor", cursor);
 
         // now we keep the other necessary attributes
-        model.addAttribute("urgentItems", pantryService.getUrgentItems());
+        model.addAttribute("urgentItems", view.urgentItems());
+        model.addAttribute("urgentIds", view.urgentIds());
         model.addAttribute("threshold", PantryService.DEFAULT_THRESHOLD);
+        model.addAttribute("lowStockIds", pantryService.getLowStockIds()); //low by each item's own forecast threshold (null = not loaded yet)
+        model.addAttribute("categoryStats", view.categoryStats()); //per category totals, from the small stats table
+        model.addAttribute("pantryId", TenantContext.current()); //which pantry this is, switch with /dashboard?pantry=<id>
 
         //now we send search terms back to the search bar doesnt go blank
         model.addAttribute("keyword", keyword);
@@ -88,18 +107,24 @@ public class PantryWebController {
     }
     //process the update
     @PostMapping("/dashboard/edit/{id}")
-    public String updateItem(@PathVariable Long id, @RequestParam String name, @RequestParam int quantity, @RequestParam(required = false) String expirationDate, @RequestParam String category) { 
-        pantryRepository.findById(id).ifPresent(item -> {
-            item.setName(name);
-            item.setQuantity(quantity);
-            item.setCategory(category);
-            if (expirationDate != null && !expirationDate.isEmpty()) {
-                item.setExpirationDate(java.time.LocalDate.parse(expirationDate));
-            } else { 
-                item.setExpirationDate(null);
-            }
-            pantryRepository.save(item);
-        });
+    public String updateItem(@PathVariable Long id, @RequestParam String name, @RequestParam int quantity, @RequestParam(required = false) String expirationDate, @RequestParam String category, @RequestParam(required = false) Long version) { 
+        //goes through the service now so the change gets published to the indexes too
+        PantryItem changes = new PantryItem();
+        changes.setName(name);
+        changes.setQuantity(quantity);
+        changes.setCategory(category);
+        if (expirationDate != null && !expirationDate.isEmpty()) {
+            changes.setExpirationDate(java.time.LocalDate.parse(expirationDate));
+        } else { 
+            changes.setExpirationDate(null);
+        }
+        changes.setVersion(version); //the version the form was loaded with, so we don't overwrite someone else's edit
+        try { 
+            pantryService.editItem(id, changes);
+        } catch (ObjectOptimisticLockingFailureException e) { 
+            //someone changed the item while the form was open, show the form again with their changes
+            return "redirect:/dashboard/edit/" + id + "?conflict";
+        }
         return "redirect:/dashboard";
     }
 
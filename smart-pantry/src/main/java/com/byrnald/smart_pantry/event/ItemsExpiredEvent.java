@@ -0,0 +1,8 @@
+package com.byrnald.smart_pantry.event;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// published by the daily expiry sweep with the items (of one pantry) whose expiration date just went by
+public record ItemsExpiredEvent(String pantryId, LocalDate day, List<Long> itemIds) {
+}
@@ -0,0 +1,44 @@
+package com.byrnald.smart_pantry.event;
+
+import java.time.LocalDate;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+
+// one thing that happened to one item.
+// before/after are plain copies of the row (not the managed entity) so listeners can keep them around safely.
+// ADDED has only after, DELETED has only before, UPDATED has both.
+// ADJUSTED (restock/subtract/adjust) comes straight from "quantity = quantity + delta" in the database,
+// so we only know the id and the delta, not the full row. quantity is what the adjust left, read back in the same
+// transaction while the update still holds the row lock (so quantity - delta is exactly what it was before this
+// change, whatever else was adjusting the item at the same time). null when it isn't known
+public record PantryChange(Type type, Long itemId, ItemState before, ItemState after, int delta, Integer quantity) {
+
+    public enum Type { ADDED, UPDATED, DELETED, ADJUSTED }
+
+    public record ItemState(Long id, String name, Integer quantity, LocalDate expirationDate, String category, String sortKey) {
+
+        public static ItemState of(PantryItem item) { 
+            return new ItemState(item.getId(), item.getName(), item.getQuantity(), item.getExpirationDate(), item.getCategory(), item.getSortKey());
+        }
+    }
+
+    public static PantryChange added(PantryItem item) { 
+        return new PantryChange(Type.ADDED, item.getId(), null, ItemState.of(item), 0, null);
+    }
+
+    public static PantryChange updated(ItemState before, PantryItem item) { 
+        return new PantryChange(Type.UPDATED, item.getId(), before, ItemState.of(item), 0, null);
+    }
+
+    public static PantryChange deleted(ItemState before) { 
+        return new PantryChange(Type.DELETED, before.id(), before, null, 0, null);
+    }
+
+    public static PantryChange adjusted(Long itemId, int delta) { 
+        return adjusted(itemId, delta, null);
+    }
+
+    public static PantryChange adjusted(Long itemId, int delta, Integer quantity) { 
+        return new PantryChange(Type.ADJUSTED, itemId, null, null, delta, quantity);
+    }
+}
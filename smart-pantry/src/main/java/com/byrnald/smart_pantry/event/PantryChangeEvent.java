@@ -0,0 +1,21 @@
+package com.byrnald.smart_pantry.event;
+
+import java.util.List;
+
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// published (as a spring application event) after every write that went through PantryService,
+// the bulk import or the write-behind flush. the in-memory indexes listen to this to stay in sync
+// without going back to the database. writes that touch many items at once send them all in one event.
+// every event is for one pantry, listeners keep their state per pantryId
+public record PantryChangeEvent(String pantryId, List<PantryChange> changes) {
+
+    // for the pantry the current request is working on
+    public static PantryChangeEvent of(PantryChange change) { 
+        return of(List.of(change));
+    }
+
+    public static PantryChangeEvent of(List<PantryChange> changes) { 
+        return new PantryChangeEvent(TenantContext.current(), changes);
+    }
+}
@@ -0,0 +1,403 @@
+package com.byrnald.smart_pantry.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// append only history of every quantity change (adds, edits, deletes, restock/subtract, bulk imports, write-behind flushes).
+// pantry_item only knows the current quantity, the ledger knows how it got there, so we can rebuild the whole
+// pantry as it was at any point in time (stateAt) and see how fast things get used up.
+//
+// changes come in from PantryChangeEvents and are only queued, a single writer thread appends whatever has queued up
+// in one write + one fsync (group commit), so a click never waits on the disk. the catch: a crash can lose the last
+// few milliseconds of history, the database itself is still fine.
+// every pantry.ledger.snapshot-every records (and on shutdown) the writer saves a snapshot of all quantities,
+// startup and stateAt start from the closest snapshot and only replay the records after it.
+//
+// every pantry has its own ledger (its own LedgerStore in pantry.ledger.dir/<pantry id>, with its own sequence numbers),
+// so rebuilding one pantry never reads another pantry's history. the one writer thread serves all of them
+@Component
+public class InventoryLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryLedger.class);
+    private static final int MAX_GROUP = 4096; // records per write/fsync at most
+
+    // what goes through the queue: a change, or a request the writer thread has to handle in order with the changes
+    private sealed interface Task permits Append, Sync, Baseline { }
+    private record Append(String pantryId, long itemId, LedgerRecord.Type type, int delta) implements Task { }
+    private record Sync(CompletableFuture<Void> done) implements Task { }
+    private record Baseline(String pantryId, Map<Long, Integer> quantities) implements Task { }
+
+    // one pantry's files plus what the writer keeps track of for them
+    private static final class Journal {
+
+        private final LedgerStore store;
+        private final AtomicLong lastSequence = new AtomicLong();
+        private final boolean needsBaseline;
+
+        // only touched by the writer thread
+        private final Map<Long, Integer> quantities = new HashMap<>();
+        private long lastTimestamp;
+        private long sinceSnapshot;
+
+        private Journal(LedgerStore store, LedgerStore.State state) {
+            this.store = store;
+            this.quantities.putAll(state.quantities());
+            this.lastSequence.set(state.lastSequence());
+            this.lastTimestamp = state.lastTimestamp();
+            this.needsBaseline = state.empty();
+        }
+    }
+
+    private final PantryRepository pantryRepository;
+    private final PantryTenants pantryTenants;
+    private final boolean enabled;
+    private final Path dir;
+    private final long segmentBytes;
+    private final long snapshotEvery;
+    private final BlockingQueue<Task> queue;
+
+    private final Map<String, Journal> journals = new ConcurrentHashMap<>();
+    private Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong groupCommits = new AtomicLong();
+
+    public InventoryLedger(PantryRepository pantryRepository, PantryTenants pantryTenants,
+            @Value("${pantry.ledger.enabled:true}") boolean enabled,
+            @Value("${pantry.ledger.dir:./pantry-ledger}") Path dir,
+            @Value("${pantry.ledger.segment-size-mb:64}") long segmentSizeMb,
+            @Value("${pantry.ledger.snapshot-every:100000}") long snapshotEvery,
+            @Value("${pantry.ledger.queue-capacity:100000}") int queueCapacity) {
+        this.pantryRepository = pantryRepository;
+        this.pantryTenants = pantryTenants;
+        this.enabled = enabled;
+        this.dir = dir;
+        this.segmentBytes = segmentSizeMb * 1024 * 1024;
+        this.snapshotEvery = snapshotEvery;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(dir);
+        moveLegacyFiles();
+        try (DirectoryStream<Path> pantryDirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path pantryDir : pantryDirs) {
+                String pantryId = pantryDir.getFileName().toString();
+                if (TenantContext.isValid(pantryId)) {
+                    journals.put(pantryId, open(pantryId));
+                }
+            }
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "inventory-ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // a brand new ledger on a database that already has items starts from a snapshot of what's there now,
+    // otherwise every later record would be a delta on top of nothing
+    @EventListener(ApplicationReadyEvent.class)
+    public void baseline() {
+        if (!enabled) {
+            return;
+        }
+        for (String pantryId : pantryTenants.all()) {
+            Journal journal = journals.get(pantryId);
+            if (journal != null && !journal.needsBaseline) {
+                continue;
+            }
+            Map<Long, Integer> current = new HashMap<>();
+            TenantContext.callAs(pantryId, pantryRepository::findQuantityEntries)
+                    .forEach(entry -> current.put(entry.getId(), entry.getQuantity() != null ? entry.getQuantity() : 0));
+            if (journal != null || !current.isEmpty()) {
+                enqueue(new Baseline(pantryId, current));
+            }
+        }
+    }
+
+    @EventListener
+    public void onChange(PantryChangeEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (PantryChange change : event.changes()) {
+            Append append = switch (change.type()) {
+                case ADDED -> new Append(event.pantryId(), change.itemId(), LedgerRecord.Type.ADDED, quantityOf(change.after()));
+                case UPDATED -> new Append(event.pantryId(), change.itemId(), LedgerRecord.Type.UPDATED, quantityOf(change.after()) - quantityOf(change.before()));
+                case DELETED -> new Append(event.pantryId(), change.itemId(), LedgerRecord.Type.DELETED, -quantityOf(change.before()));
+                case ADJUSTED -> new Append(event.pantryId(), change.itemId(), LedgerRecord.Type.ADJUSTED, change.delta());
+            };
+            if (append.type() == LedgerRecord.Type.UPDATED && append.delta() == 0) {
+                continue; // an edit that didn't touch the quantity isn't inventory history
+            }
+            enqueue(append);
+        }
+    }
+
+    // waits until everything queued so far is on disk
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        enqueue(new Sync(done));
+        done.join();
+    }
+
+    // every item's quantity in the pantry at that moment, rebuilt from the closest earlier snapshot plus the records after it
+    public Map<Long, Integer> stateAt(String pantryId, Instant at) {
+        requireEnabled();
+        sync();
+        Journal journal = journals.get(pantryId);
+        if (journal == null) {
+            return Map.of(); // nothing ever happened in this pantry
+        }
+        try {
+            return journal.store.stateAt(at.toEpochMilli());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Rebuilding ledger state failed", e);
+        }
+    }
+
+    // every record of the pantry between from and to, oldest first
+    public void replay(String pantryId, Instant from, Instant to, Consumer<LedgerRecord> consumer) {
+        requireEnabled();
+        sync();
+        Journal journal = journals.get(pantryId);
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.store.scan(1, from.toEpochMilli(), to.toEpochMilli(), consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading the ledger failed", e);
+        }
+    }
+
+    public List<LedgerRecord> history(String pantryId, long itemId, Instant from) {
+        List<LedgerRecord> records = new ArrayList<>();
+        replay(pantryId, from, Instant.now(), record -> {
+            if (record.itemId() == itemId) {
+                records.add(record);
+            }
+        });
+        return records;
+    }
+
+    // records written so far, all pantries together
+    public long records() {
+        return journals.values().stream().mapToLong(journal -> journal.lastSequence.get()).sum();
+    }
+
+    public long groupCommits() {
+        return groupCommits.get();
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!enabled) {
+            return;
+        }
+        running = false; // no interrupt, that would close the FileChannel in the middle of a write
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        for (Journal journal : journals.values()) {
+            journal.store.close();
+        }
+    }
+
+    private void enqueue(Task task) {
+        try {
+            queue.put(task); // only blocks if the disk has fallen queue-capacity records behind
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a ledger record", e);
+        }
+    }
+
+    private void writeLoop() {
+        List<Task> batch = new ArrayList<>(MAX_GROUP);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_GROUP - 1); // everything that piled up during the last fsync goes in this one
+                process(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException | RuntimeException e) {
+                log.error("Writing {} ledger records failed, they are lost from the history", batch.size(), e);
+                failSyncs(batch, e);
+                startNewSegments(); // the next group starts a fresh segment instead of appending after a half written one
+            }
+            batch.clear();
+        }
+        for (Journal journal : journals.values()) {
+            try {
+                if (journal.sinceSnapshot > 0) {
+                    snapshot(journal); // so the next startup has nothing to replay
+                }
+            } catch (IOException e) {
+                log.warn("Writing the shutdown snapshot failed", e);
+            }
+        }
+    }
+
+    private void startNewSegments() {
+        for (Journal journal : journals.values()) {
+            journal.store.startNewSegment();
+        }
+    }
+
+    // records are grouped per pantry, each pantry that got any is one write + one fsync
+    private void process(List<Task> batch) throws IOException {
+        Map<Journal, List<LedgerRecord>> records = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> syncs = new ArrayList<>();
+        for (Task task : batch) {
+            switch (task) {
+                case Append append -> {
+                    Journal journal = journal(append.pantryId());
+                    List<LedgerRecord> pending = records.computeIfAbsent(journal, j -> new ArrayList<>());
+                    journal.lastTimestamp = Math.max(journal.lastTimestamp, System.currentTimeMillis()); // never goes backwards, stateAt relies on it
+                    LedgerRecord record = new LedgerRecord(journal.lastSequence.get() + pending.size() + 1, journal.lastTimestamp,
+                            append.itemId(), append.type(), append.delta());
+                    pending.add(record); // the quantities only take it once it's on disk (flush)
+                }
+                case Sync sync -> syncs.add(sync.done());
+                case Baseline baseline -> {
+                    Journal journal = journal(baseline.pantryId());
+                    List<LedgerRecord> pending = records.remove(journal);
+                    if (pending != null) {
+                        flush(journal, pending);
+                    }
+                    journal.quantities.clear();
+                    journal.quantities.putAll(baseline.quantities());
+                    snapshot(journal);
+                    log.info("Inventory ledger of pantry {} started from a baseline of {} items", baseline.pantryId(), journal.quantities.size());
+                }
+            }
+        }
+        for (Map.Entry<Journal, List<LedgerRecord>> entry : records.entrySet()) {
+            flush(entry.getKey(), entry.getValue());
+        }
+        syncs.forEach(done -> done.complete(null));
+    }
+
+    private void flush(Journal journal, List<LedgerRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        journal.store.append(records);
+        // only now, a group that failed must not end up in the quantities (and every snapshot after) without being on disk
+        for (LedgerRecord record : records) {
+            LedgerStore.apply(journal.quantities, record);
+        }
+        journal.lastSequence.addAndGet(records.size());
+        groupCommits.incrementAndGet();
+        journal.sinceSnapshot += records.size();
+        records.clear();
+        if (journal.sinceSnapshot >= snapshotEvery) {
+            snapshot(journal);
+        }
+    }
+
+    private void snapshot(Journal journal) throws IOException {
+        journal.lastTimestamp = Math.max(journal.lastTimestamp, System.currentTimeMillis());
+        journal.store.writeSnapshot(journal.lastSequence.get(), journal.lastTimestamp, journal.quantities);
+        journal.sinceSnapshot = 0;
+    }
+
+    // writer thread only, the first change of a new pantry starts its ledger
+    private Journal journal(String pantryId) {
+        return journals.computeIfAbsent(pantryId, id -> {
+            try {
+                return open(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Opening the ledger of pantry " + id + " failed", e);
+            }
+        });
+    }
+
+    private Journal open(String pantryId) throws IOException {
+        LedgerStore store = new LedgerStore(dir.resolve(pantryId), segmentBytes);
+        LedgerStore.State state = store.recover();
+        log.info("Inventory ledger of pantry {} recovered {} items up to sequence {}", pantryId, state.quantities().size(), state.lastSequence());
+        return new Journal(store, state);
+    }
+
+    // before pantries the ledger files sat right in pantry.ledger.dir, they're the default pantry's history
+    private void moveLegacyFiles() throws IOException {
+        Path target = dir.resolve(TenantContext.DEFAULT);
+        try (DirectoryStream<Path> legacy = Files.newDirectoryStream(dir, "{segment-*.log,snapshot-*.bin}")) {
+            for (Path file : legacy) {
+                Files.createDirectories(target);
+                Files.move(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static void failSyncs(List<Task> batch, Exception e) {
+        for (Task task : batch) {
+            if (task instanceof Sync sync) {
+                sync.done().completeExceptionally(e);
+            }
+        }
+    }
+
+    private void requireEnabled() {
+        if (!enabled) {
+            throw new IllegalStateException("The inventory ledger is turned off (pantry.ledger.enabled=false)");
+        }
+    }
+
+    private static int quantityOf(PantryChange.ItemState state) {
+        return state != null && state.quantity() != null ? state.quantity() : 0;
+    }
+}
@@ -0,0 +1,45 @@
+package com.byrnald.smart_pantry.ledger;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+// one quantity change in the ledger. fixed size on disk (SIZE bytes):
+// sequence (8) | timestamp millis (8) | item id (8) | delta (4) | type (1) | crc32c of the first 29 bytes (4)
+// the checksum lets recovery tell a half written record at the end of a segment (crash mid write) from a real one
+public record LedgerRecord(long sequence, long timestamp, long itemId, Type type, int delta) {
+
+    // ADDED: delta is the starting quantity, DELETED: minus whatever was left,
+    // UPDATED: new quantity - old quantity, ADJUSTED: restock/subtract/adjust
+    public enum Type { ADDED, UPDATED, DELETED, ADJUSTED }
+
+    public static final int SIZE = 33;
+    private static final int PAYLOAD = SIZE - 4;
+    private static final Type[] TYPES = Type.values();
+
+    void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(sequence).putLong(timestamp).putLong(itemId).putInt(delta).put((byte) type.ordinal());
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    // null if the bytes aren't a valid record (torn write or garbage)
+    static LedgerRecord readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        long itemId = buffer.getLong();
+        int delta = buffer.getInt();
+        int type = buffer.get();
+        int expected = checksum(buffer, start);
+        if (buffer.getInt() != expected || type < 0 || type >= TYPES.length) {
+            return null;
+        }
+        return new LedgerRecord(sequence, timestamp, itemId, TYPES[type], delta);
+    }
+
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start, PAYLOAD));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,327 @@
+package com.byrnald.smart_pantry.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// the files behind the InventoryLedger, all in one directory:
+// - segment-<first sequence>.log: LedgerRecords back to back, append only, a new segment starts once one is segmentBytes big
+// - snapshot-<sequence>.bin: every item's quantity as of that sequence, so a rebuild only replays the records after it
+// not thread safe, InventoryLedger only calls it from its writer thread (reads of closed files excepted)
+public class LedgerStore implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOT_MAGIC = 0x50534e50; // "PSNP"
+    private static final int SNAPSHOT_HEADER = 4 + 8 + 8 + 4; // magic, sequence, timestamp, count
+    private static final int SNAPSHOT_ENTRY = 8 + 4; // item id, quantity
+    private static final int READ_CHUNK = LedgerRecord.SIZE * 4096;
+
+    // what recover() found: the quantities as of the last valid record
+    public record State(Map<Long, Integer> quantities, long lastSequence, long lastTimestamp, boolean empty) { }
+
+    private record Snapshot(Path file, long sequence, long timestamp) { }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private FileChannel current; // segment being appended to
+    private long currentSize;
+    private boolean newSegment; // after a failed append, never keep appending to the segment it left behind
+
+    public LedgerStore(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+    }
+
+    // rebuilds the state from the newest snapshot plus the records after it.
+    // a torn record at the end of the last segment (crash mid write) is cut off so appends continue cleanly
+    public State recover() throws IOException {
+        Map<Long, Integer> quantities = new HashMap<>();
+        long lastSequence = 0;
+        long lastTimestamp = 0;
+        Snapshot snapshot = latestSnapshot(Long.MAX_VALUE);
+        if (snapshot != null) {
+            lastSequence = snapshot.sequence();
+            lastTimestamp = snapshot.timestamp();
+            readSnapshot(snapshot.file(), quantities);
+        }
+        List<Path> segments = segments();
+        long[] last = { lastSequence, lastTimestamp };
+        for (int i = 0; i < segments.size(); i++) {
+            // a segment can be skipped if the next one starts at or before the snapshot
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= lastSequence + 1) {
+                continue;
+            }
+            long snapshotSequence = lastSequence;
+            long nextSegment = nextFirstSequence(segments, i);
+            long valid = readSegment(segments.get(i), record -> {
+                if (record.sequence() > snapshotSequence && record.sequence() < nextSegment) {
+                    apply(quantities, record);
+                    last[0] = record.sequence();
+                    last[1] = record.timestamp();
+                }
+            });
+            if (i == segments.size() - 1 && valid < Files.size(segments.get(i))) {
+                try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+            }
+        }
+        return new State(quantities, last[0], last[1], snapshot == null && segments.isEmpty());
+    }
+
+    // writes the records and forces them to disk, one fsync for the whole group
+    public void append(List<LedgerRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (current == null || currentSize >= segmentBytes) {
+            roll(records.get(0).sequence());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(records.size() * LedgerRecord.SIZE);
+        for (LedgerRecord record : records) {
+            record.writeTo(buffer);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                current.write(buffer);
+            }
+            current.force(false);
+        } catch (IOException | RuntimeException e) {
+            // cut off whatever part of the group made it out (if the disk still lets us), the caller reuses these sequences
+            try {
+                current.truncate(currentSize);
+            } catch (IOException | RuntimeException ignored) {
+                // the readers skip records a later segment starts before, and stop at a torn one
+            }
+            startNewSegment();
+            throw e;
+        }
+        currentSize += records.size() * (long) LedgerRecord.SIZE;
+    }
+
+    // the next append goes into a new segment instead of after whatever a failed write left in the current one
+    public void startNewSegment() {
+        try {
+            close();
+        } catch (IOException ignored) {
+            // it's not written to again either way
+        }
+        current = null;
+        currentSize = 0;
+        newSegment = true;
+    }
+
+    // written to a temp file and moved into place, so a crash never leaves half a snapshot behind
+    public void writeSnapshot(long sequence, long timestamp, Map<Long, Integer> quantities) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER + quantities.size() * SNAPSHOT_ENTRY + 4);
+        buffer.putInt(SNAPSHOT_MAGIC).putLong(sequence).putLong(timestamp).putInt(quantities.size());
+        quantities.forEach((id, quantity) -> buffer.putLong(id).putInt(quantity));
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        Path tmp = dir.resolve(SNAPSHOT_PREFIX + "tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(name(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX)), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // every item's quantity as it was at `timestamp`: the newest snapshot from before then, plus the records up to then
+    public Map<Long, Integer> stateAt(long timestamp) throws IOException {
+        Map<Long, Integer> quantities = new HashMap<>();
+        Snapshot snapshot = latestSnapshot(timestamp);
+        long fromSequence = 1;
+        if (snapshot != null) {
+            readSnapshot(snapshot.file(), quantities);
+            fromSequence = snapshot.sequence() + 1;
+        }
+        scan(fromSequence, Long.MIN_VALUE, timestamp, record -> apply(quantities, record));
+        return quantities;
+    }
+
+    // hands every record with sequence >= fromSequence and fromTimestamp <= timestamp <= toTimestamp to the consumer, oldest first.
+    // a segment is only read if the next one starts after fromSequence and after fromTimestamp (one record read to find out),
+    // so a few days of one item's history doesn't read the ledger from the very beginning
+    public void scan(long fromSequence, long fromTimestamp, long toTimestamp, Consumer<LedgerRecord> consumer) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            long nextSegment = nextFirstSequence(segments, i);
+            if (nextSegment <= fromSequence) {
+                continue; // everything in this segment is older than fromSequence
+            }
+            if (i + 1 < segments.size() && firstTimestamp(segments.get(i + 1)) < fromTimestamp) {
+                continue; // and timestamps only go up, so this one ends before fromTimestamp
+            }
+            boolean[] done = { false };
+            readSegment(segments.get(i), record -> {
+                if (done[0] || record.sequence() < fromSequence || record.sequence() >= nextSegment || record.timestamp() < fromTimestamp) {
+                    return;
+                }
+                if (record.timestamp() > toTimestamp) {
+                    done[0] = true; // timestamps only go up, nothing after this can be in range
+                    return;
+                }
+                consumer.accept(record);
+            });
+            if (done[0]) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    static void apply(Map<Long, Integer> quantities, LedgerRecord record) {
+        if (record.type() == LedgerRecord.Type.DELETED) {
+            quantities.remove(record.itemId());
+        } else {
+            quantities.merge(record.itemId(), record.delta(), Integer::sum);
+        }
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        close();
+        List<Path> segments = segments();
+        Path last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        // after a restart keep appending to the last segment if it still has room
+        if (!newSegment && last != null && Files.size(last) < segmentBytes && current == null && currentSize == 0) {
+            current = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            currentSize = Files.size(last);
+            return;
+        }
+        // a segment with this name already there is one whose first write failed, nothing in it ever counted
+        current = FileChannel.open(dir.resolve(name(SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        currentSize = 0;
+        newSegment = false;
+    }
+
+    // returns how many bytes at the start of the file are valid records
+    private static long readSegment(Path segment, Consumer<LedgerRecord> consumer) throws IOException {
+        long valid = 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK);
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < LedgerRecord.SIZE) {
+                    break; // partial record at the end
+                }
+                while (buffer.remaining() >= LedgerRecord.SIZE) {
+                    LedgerRecord record = LedgerRecord.readFrom(buffer);
+                    if (record == null) {
+                        return valid;
+                    }
+                    consumer.accept(record);
+                    valid += LedgerRecord.SIZE;
+                }
+                buffer.compact();
+            }
+        }
+        return valid;
+    }
+
+    private static void readSnapshot(Path file, Map<Long, Integer> quantities) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        buffer.position(SNAPSHOT_HEADER - 4);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            quantities.put(buffer.getLong(), buffer.getInt());
+        }
+    }
+
+    // newest snapshot taken at or before `timestamp` that isn't corrupt
+    private Snapshot latestSnapshot(long timestamp) throws IOException {
+        List<Path> files = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Collections.reverse(files);
+        for (Path file : files) {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length < SNAPSHOT_HEADER + 4) {
+                continue;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, 0, bytes.length - 4);
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt(bytes.length - 4) != (int) crc.getValue()) {
+                continue;
+            }
+            long sequence = buffer.getLong();
+            long snapshotTime = buffer.getLong();
+            if (snapshotTime <= timestamp) {
+                return new Snapshot(file, sequence, snapshotTime);
+            }
+        }
+        return null;
+    }
+
+    private List<Path> segments() throws IOException {
+        return list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+    }
+
+    // zero padded names, so sorting by name is sorting by sequence
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    // records in a segment all come before the next segment's first one. anything at or past it was left behind
+    // by a failed write whose sequences got used again in the next segment
+    private static long nextFirstSequence(List<Path> segments, int i) {
+        return i + 1 < segments.size() ? firstSequence(segments.get(i + 1)) : Long.MAX_VALUE;
+    }
+
+    private static long firstTimestamp(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(LedgerRecord.SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // keep reading
+            }
+            if (buffer.hasRemaining()) {
+                return Long.MAX_VALUE; // empty or torn, can't tell so it doesn't get skipped
+            }
+            buffer.flip();
+            LedgerRecord record = LedgerRecord.readFrom(buffer);
+            return record != null ? record.timestamp() : Long.MAX_VALUE;
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static String name(String prefix, long sequence, String suffix) {
+        return prefix + String.format("%020d", sequence) + suffix;
+    }
+}
@@ -0,0 +1,36 @@
+package com.byrnald.smart_pantry.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+
+// ids used to come from an IDENTITY column, now they come from pantry_item_seq.
+// on a database that already had items the sequence started at 1, so it gets pushed past the highest id
+// (hibernate's pooled ids can use up to 50 below the value it gets back, hence the extra ID_ALLOCATION_SIZE).
+// java and not SQL because the new start depends on what's in the table.
+// migrations are beans, spring boot hands them to flyway (no classpath scanning at startup)
+@Component
+public class V3__MoveItemSequence extends BaseJavaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(V3__MoveItemSequence.class);
+
+    @Override
+    public void migrate(Context context) { 
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM pantry_item", Long.class);
+        if (maxId == null) { 
+            return;
+        }
+        Long next = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR pantry_item_seq", Long.class);
+        if (next != null && next - PantryItem.ID_ALLOCATION_SIZE < maxId) { 
+            jdbcTemplate.execute("ALTER SEQUENCE pantry_item_seq RESTART WITH " + (maxId + PantryItem.ID_ALLOCATION_SIZE + 1));
+            log.info("Moved pantry_item_seq past existing id {}", maxId);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.byrnald.smart_pantry.migration;
+
+import java.util.List;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+// category used to be a text column on pantry_item, now it's a category_id pointing at the category table.
+// databases from before still have the old column, so every row gets pointed at its category once
+// (the category row is made here if nobody used the name yet). java because the column may not be there at all
+@Component
+public class V4__MoveLegacyCategories extends BaseJavaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(V4__MoveLegacyCategories.class);
+
+    @Override
+    public void migrate(Context context) { 
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        Integer legacyColumn = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+                + "WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'PANTRY_ITEM' AND COLUMN_NAME = 'CATEGORY'", Integer.class);
+        if (legacyColumn == null || legacyColumn == 0) { 
+            return;
+        }
+        List<String> names = jdbcTemplate.queryForList("SELECT DISTINCT category FROM pantry_item "
+                + "WHERE category IS NOT NULL AND category_id IS NULL", String.class);
+        for (String name : names) { 
+            List<Long> existing = jdbcTemplate.queryForList("SELECT id FROM category WHERE name = ?", Long.class, name);
+            Long categoryId;
+            if (existing.isEmpty()) { 
+                categoryId = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR category_seq", Long.class);
+                jdbcTemplate.update("INSERT INTO category (id, name) VALUES (?, ?)", categoryId, name);
+            } else { 
+                categoryId = existing.get(0);
+            }
+            int moved = jdbcTemplate.update("UPDATE pantry_item SET category_id = ? WHERE category = ? AND category_id IS NULL", categoryId, name);
+            log.info("Moved {} items to category {}", moved, name);
+        }
+    }
+}
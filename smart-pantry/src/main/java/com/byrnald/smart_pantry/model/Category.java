@@ -0,0 +1,54 @@
+package com.byrnald.smart_pantry.model;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+@Entity // the category table, each PantryItem points at one of these instead of carrying its own text copy
+// shared by every pantry, so it always lives in PUBLIC (pantries with their own schema point their category_id here)
+@Table(schema = "PUBLIC", indexes = @Index(name = "idx_category_name", columnList = "name", unique = true))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) // every PantryItem loads its category eagerly, so a cached item needs a cached category too
+public class Category {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "category_seq")
+    @SequenceGenerator(name = "category_seq", sequenceName = "category_seq", schema = "PUBLIC", allocationSize = 1) // only a handful ever get created
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    public Category() { //jpa needs the empty one
+
+    }
+
+    public Category(String name) { 
+        this.name = name;
+    }
+
+    public Category(Long id, String name) { 
+        this.id = id;
+        this.name = name;
+    }
+
+    public Long getId() { 
+        return id;
+    }
+    public String getName() { 
+        return name;
+    }
+
+    @Override
+    public String toString() { 
+        return name;
+    }
+}
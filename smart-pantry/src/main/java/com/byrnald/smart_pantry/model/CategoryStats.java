@@ -0,0 +1,60 @@
+package com.byrnald.smart_pantry.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "pantry_category_stats", schema = "PUBLIC")
+@IdClass(CategoryStats.Key.class)
+// one row per pantry and category with running totals, kept up to date on every write by CategoryStatsService
+// so "how many items per category" never has to scan pantry_item.
+// it's a tiny table, so every pantry's rows stay in PUBLIC, even for pantries with a schema of their own
+public class CategoryStats {
+
+    public record Key(String pantryId, Long categoryId) implements Serializable { }
+
+    @Id
+    @Column(name = "pantry_id", length = 64)
+    private String pantryId;
+
+    @Id // same id as the category it belongs to
+    private Long categoryId;
+
+    private long itemCount;
+    private long totalQuantity;
+    private long lowStockCount; // quantity <= LOW_STOCK_THRESHOLD
+    private long expiringCount; // expires within EXPIRING_SOON_DAYS (or already expired)
+
+    public CategoryStats() { 
+
+    }
+
+    public CategoryStats(String pantryId, Long categoryId) { 
+        this.pantryId = pantryId;
+        this.categoryId = categoryId;
+    }
+
+    public String getPantryId() { 
+        return pantryId;
+    }
+    public Long getCategoryId() { 
+        return categoryId;
+    }
+    public long getItemCount() { 
+        return itemCount;
+    }
+    public long getTotalQuantity() { 
+        return totalQuantity;
+    }
+    public long getLowStockCount() { 
+        return lowStockCount;
+    }
+    public long getExpiringCount() { 
+        return expiringCount;
+    }
+}
@@ -0,0 +1,5 @@
+package com.byrnald.smart_pantry.model;
+
+// what /api/pantry/categories/stats sends back, the category name instead of its id
+public record CategoryStatsView(String category, long itemCount, long totalQuantity, long lowStockCount, long expiringCount) {
+}
@@ -0,0 +1,9 @@
+package com.byrnald.smart_pantry.model;
+
+import java.util.List;
+import java.util.Set;
+
+// everything dashboard.html needs for one render, comes out of the DashboardCache most of the time
+// (the category stats come from the small category_stats table)
+public record DashboardView(PantryPage page, List<PantryItem> urgentItems, Set<Long> urgentIds, List<CategoryStatsView> categoryStats) {
+}
@@ -0,0 +1,10 @@
+package com.byrnald.smart_pantry.model;
+
+import java.time.LocalDate;
+
+// what /api/pantry/forecast sends back for one item.
+// dailyUsage is the smoothed number of units used per day, daysToEmpty/runOutDate are null while nothing is being used up.
+// predicted is false until the item has enough history, until then the threshold is just the default one
+public record ItemForecast(Long itemId, int quantity, double dailyUsage, Double daysToEmpty, LocalDate runOutDate,
+        int lowStockThreshold, boolean lowStock, boolean predicted) {
+}
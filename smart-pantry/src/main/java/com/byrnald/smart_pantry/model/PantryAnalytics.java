@@ -0,0 +1,14 @@
+package com.byrnald.smart_pantry.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// what /api/pantry/analytics sends back: the items that matched the filters, grouped.
+// key is the category name, the days (or weeks) until expiry relative to `today` ("0" = today, "-2" = two days ago),
+// "earlier"/"later" for dates outside the histogram, "none" for no category / no expiration date, "all" without grouping.
+// groups with nothing in them are left out
+public record PantryAnalytics(String groupBy, LocalDate today, long items, long totalQuantity, List<Group> groups) {
+
+    public record Group(String key, long items, long totalQuantity) {
+    }
+}
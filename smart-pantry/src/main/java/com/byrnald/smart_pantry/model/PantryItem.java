@@ -2,21 +2,76 @@ package com.byrnald.smart_pantry.model;
 
 import java.time.LocalDate;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.TenantId;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity // tells springboot to create a table named pantry_item in the database
+@Table(indexes = {
+        @Index(name = "idx_pantry_item_pantry_sort", columnList = "pantry_id, sort_key, id"),
+        @Index(name = "idx_pantry_item_pantry_category_sort", columnList = "pantry_id, category_id, sort_key, id"),
+        @Index(name = "idx_pantry_item_pantry_expiry", columnList = "pantry_id, expiration_date")
+})
+// the composite indexes let the database walk the list (or one category of it) in "smart sort" order and jump straight to a cursor.
+// they all start with pantry_id, every query has "pantry_id = ?" in it, so one pantry's walk never touches another pantry's rows
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) // findById (edit form, edits, restock) comes out of the second-level cache, see HibernateCacheConfig
 public class PantryItem {
+    public static final int LOW_STOCK_THRESHOLD = 5; // PantryService.DEFAULT_THRESHOLD points here so the sort key and the service agree
+    private static final String NO_EXPIRY_KEY = "9999-12-31"; // null dates (like cables) sort after every real date
+    private static final int NAME_KEY_LENGTH = 200;
+
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id // this is primary key (unique id)
-    @GeneratedValue(strategy = GenerationType.IDENTITY) //this just auto incremements, so it goes by: 1,2,3,4,5... etc
+    // this still goes 1,2,3,4,5... but hibernate grabs 50 ids from the sequence in one call (pooled).
+    // with IDENTITY every insert had to run alone to find out its id, with a sequence inserts can be JDBC batched
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pantry_item_seq")
+    // the sequence stays in PUBLIC even for pantries with their own schema, so an id is unique across every pantry
+    @SequenceGenerator(name = "pantry_item_seq", sequenceName = "pantry_item_seq", schema = "PUBLIC", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
+    // which pantry the item belongs to. hibernate fills it in from TenantContext on insert and adds it to the where clause
+    // of every query, so the repository methods never have to pass it around (see PantryTenants)
+    @TenantId
+    @Column(name = "pantry_id", length = 64, updatable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY) // comes from the request's pantry, never from the body
+    private String pantryId;
+
     private String name;
     private Integer quantity;
     private LocalDate expirationDate;
 
+    // the sort key is the old smartSort comparator flattened into one string: "<0 low | 1 ok>|<yyyy-MM-dd>|<lowercase name>"
+    // so ORDER BY sort_key, id gives: low stock first, then expiration date (nulls last), then name
+    @Column(name = "sort_key", length = 220)
+    private String sortKey;
+
+    // bumped on every write (hibernate does it for saves, the quantity update queries do it by hand).
+    // an update only goes through if the row still has the version it was read with, so two people editing
+    // the same item can't silently overwrite each other. it's also the item's ETag in the api
+    @Version
+    private Long version;
+
     ///Contructors:
     // we'll have overloaded contructors, one with no paramters, and one will all the parameters.
 
@@ -58,14 +113,70 @@ public class PantryItem {
         this.expirationDate = expirationDate;
     }
 
-    private String category; // we can add a category field to categorize items, like "food", "electronics"
+    // we can add a category field to categorize items, like "food", "electronics".
+    // it's a row in the category table now (category_id foreign key), but getCategory/setCategory still
+    // work with the plain name so the json, the forms and the templates didn't have to change
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "category_id")
+    private Category category;
 
     //now we add the getter and settery for category
     public String getCategory() { 
-        return category;
+        return category != null ? category.getName() : null;
     }
+    // only remembers the name, CategoryService.resolve swaps in the real category row before the item gets saved
     public void setCategory(String category) { 
+        if (category == null) { 
+            this.category = null;
+        } else if (this.category == null || !category.equals(this.category.getName())) { 
+            this.category = new Category(category);
+        }
+    }
+
+    @JsonIgnore
+    public Category getCategoryRef() { 
+        return category;
+    }
+    @JsonIgnore
+    public void setCategoryRef(Category category) { 
         this.category = category;
     }
 
+    public String getSortKey() { 
+        return sortKey;
+    }
+
+    public String getPantryId() { 
+        return pantryId;
+    }
+
+    public Long getVersion() { 
+        return version;
+    }
+    public void setVersion(Long version) { 
+        this.version = version;
+    }
+
+    //the sort key is recomputed every time the row is written, so it never drifts from quantity/expiration/name
+    @PrePersist
+    @PreUpdate
+    public void refreshSortKey() { 
+        this.sortKey = sortKeyOf(quantity, expirationDate, name);
+    }
+
+    public static String sortKeyOf(Integer quantity, LocalDate expirationDate, String name) { 
+        String rank = quantity != null && quantity <= LOW_STOCK_THRESHOLD ? "0" : "1";
+        String date = expiryKeyOf(expirationDate);
+        String nameKey = name != null ? name.toLowerCase() : "";
+        if (nameKey.length() > NAME_KEY_LENGTH) { 
+            nameKey = nameKey.substring(0, NAME_KEY_LENGTH);
+        }
+        return rank + "|" + date + "|" + nameKey;
+    }
+
+    // the date part of the sort key (characters 3 to 12), the batch expiry update swaps just that part in SQL
+    public static String expiryKeyOf(LocalDate expirationDate) { 
+        return expirationDate != null ? expirationDate.toString() : NO_EXPIRY_KEY;
+    }
+
 }
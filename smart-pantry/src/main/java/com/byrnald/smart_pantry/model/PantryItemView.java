@@ -0,0 +1,12 @@
+package com.byrnald.smart_pantry.model;
+
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// what a list of items needs, read straight into this record by a JPQL constructor expression (PantryRepository.findViews).
+// no entity, so nothing for hibernate to track, snapshot or dirty check, and the json is just these fields.
+// version is there so a client can still send If-Match when it edits an item it saw in a list
+public record PantryItemView(Long id, String name, Integer quantity, LocalDate expirationDate, String category, Long version,
+        @JsonIgnore String sortKey) {
+}
@@ -0,0 +1,13 @@
+package com.byrnald.smart_pantry.model;
+
+import java.util.List;
+
+// one page of the inventory in "smart sort" order.
+// nextCursor is handed back on the next request (?cursor=...) to continue right after the last item,
+// it is null when there is nothing left to show
+public record PantryPage(List<PantryItem> items, String nextCursor) {
+
+    public boolean hasNext() { 
+        return nextCursor != null;
+    }
+}
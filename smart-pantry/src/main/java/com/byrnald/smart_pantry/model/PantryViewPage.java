@@ -0,0 +1,11 @@
+package com.byrnald.smart_pantry.model;
+
+import java.util.List;
+
+// PantryPage for PantryItemViews, same cursor
+public record PantryViewPage(List<PantryItemView> items, String nextCursor) {
+
+    public boolean hasNext() { 
+        return nextCursor != null;
+    }
+}
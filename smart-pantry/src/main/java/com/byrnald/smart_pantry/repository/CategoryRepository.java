@@ -0,0 +1,13 @@
+package com.byrnald.smart_pantry.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.byrnald.smart_pantry.model.Category;
+
+@Repository
+public interface CategoryRepository extends JpaRepository<Category, Long> {
+    Optional<Category> findByName(String name); // uses the unique index on name
+}
@@ -0,0 +1,30 @@
+package com.byrnald.smart_pantry.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.byrnald.smart_pantry.model.CategoryStats;
+import com.byrnald.smart_pantry.model.CategoryStatsView;
+
+@Repository
+public interface CategoryStatsRepository extends JpaRepository<CategoryStats, CategoryStats.Key> {
+
+    // adds (or with negative numbers, takes away) from one category's running totals in a single statement.
+    // stats aren't a @TenantId entity (every pantry's rows share the table), so the pantry is always passed in
+    @Modifying
+    @Query("update CategoryStats s set s.itemCount = s.itemCount + :items, s.totalQuantity = s.totalQuantity + :quantity, "
+            + "s.lowStockCount = s.lowStockCount + :lowStock, s.expiringCount = s.expiringCount + :expiring "
+            + "where s.pantryId = :pantryId and s.categoryId = :categoryId")
+    int addToStats(@Param("pantryId") String pantryId, @Param("categoryId") Long categoryId, @Param("items") long items,
+            @Param("quantity") long quantity, @Param("lowStock") long lowStock, @Param("expiring") long expiring);
+
+    // only reads the small category + pantry_category_stats tables, never pantry_item
+    @Query("select new com.byrnald.smart_pantry.model.CategoryStatsView(c.name, s.itemCount, s.totalQuantity, s.lowStockCount, s.expiringCount) "
+            + "from CategoryStats s join Category c on c.id = s.categoryId where s.pantryId = :pantryId order by c.name")
+    List<CategoryStatsView> findAllViews(@Param("pantryId") String pantryId);
+}
@@ -1,28 +1,178 @@
 package com.byrnald.smart_pantry.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.byrnald.smart_pantry.model.Category;
 import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryItemView;
+
+import jakarta.persistence.QueryHint;
 
 
 @Repository // this annotation tells spring that this is a repository, basically just interacts with the database.
 public interface PantryRepository extends JpaRepository<PantryItem, Long> {
+    // these two get called with the same arguments all day (today..today+3, the default threshold), so their results
+    // go in hibernate's query cache. any write to pantry_item through hibernate (saves, the adjustQuantity update)
+    // makes them stale, write-behind flushes evict the cache by hand
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<PantryItem> findByExpirationDateBetween(LocalDate start, LocalDate end);
+    // everything expired or expiring up to `end`, however long ago it expired (idx_pantry_item_pantry_expiry)
+    List<PantryItem> findByExpirationDateLessThanEqual(LocalDate end);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<PantryItem> findByQuantityLessThanEqual(int threshold);
     //we need to teach our database on how to find items based on their quantity
 
+    // the listing methods below return a Window (one page) instead of the whole table.
+    // they are called with a keyset ScrollPosition + Sort.by("sortKey", "id"), so the database
+    // seeks straight to the cursor through idx_pantry_item_pantry_sort instead of sorting everything in java
+    Window<PantryItem> findAllBy(ScrollPosition position, Sort sort, Limit limit);
+
     //now we are going to search by name, CASE SENSITITIVE
-    List<PantryItem> findByNameContainingIgnoreCase(String keyword);
-    //then filter by category
-    List<PantryItem> findByCategory(String category);
+    Window<PantryItem> findByNameContainingIgnoreCase(String keyword, ScrollPosition position, Sort sort, Limit limit);
+    //then filter by category (by its id, which walks idx_pantry_item_category_sort, CategoryService knows the id of every name)
+    Window<PantryItem> findByCategoryId(Long categoryId, ScrollPosition position, Sort sort, Limit limit);
     //then both at the same time
-    List<PantryItem> findByCategoryAndNameContainingIgnoreCase(String category, String keyword);
+    Window<PantryItem> findByCategoryIdAndNameContainingIgnoreCase(Long categoryId, String keyword, ScrollPosition position, Sort sort, Limit limit);
+
+    // the same list as findAllBy, but as PantryItemViews: five columns (plus version and sort key) per row instead of
+    // a managed entity. the keyset condition is spelled out since the cursor comes in as sort key + id.
+    // callers ask for one row more than they show, if it comes back there is a next page
+    String VIEW = "select new com.byrnald.smart_pantry.model.PantryItemView(p.id, p.name, p.quantity, p.expirationDate, c.name, p.version, p.sortKey) "
+            + "from PantryItem p left join p.category c ";
+
+    @Query(VIEW + "order by p.sortKey, p.id")
+    List<PantryItemView> findViews(Limit limit);
+
+    @Query(VIEW + "where p.sortKey > :sortKey or (p.sortKey = :sortKey and p.id > :id) order by p.sortKey, p.id")
+    List<PantryItemView> findViewsAfter(@Param("sortKey") String sortKey, @Param("id") long id, Limit limit);
+
+    // adds delta to the quantity inside the database in ONE statement, no findById first, so two scanners
+    // hitting the same item at the same time can't overwrite each other. the low stock part of the sort key
+    // (first character) is flipped in the same statement so the list order stays right.
+    // returns how many rows changed (0 means the id doesn't exist).
+    // hibernate can't tell which rows a bulk update touched, so it drops every PantryItem from the second-level cache
+    // and marks the cached queries stale, the next findById goes to the database once
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update PantryItem p set p.quantity = p.quantity + :delta, "
+            + "p.sortKey = concat(case when p.quantity + :delta <= :threshold then '0' else '1' end, substring(p.sortKey, 2)), "
+            + "p.version = p.version + 1 " // bulk updates skip hibernate's own versioning, so the ETag would go stale without this
+            + "where p.id = :id")
+    int adjustQuantity(@Param("id") Long id, @Param("delta") int delta, @Param("threshold") int threshold);
+
+    // the batch api's set based versions (PantryBatchService): one statement for every id that gets the same change,
+    // instead of a findById + save per item. same cache story as adjustQuantity above
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update PantryItem p set p.quantity = p.quantity + :delta, "
+            + "p.sortKey = concat(case when p.quantity + :delta <= :threshold then '0' else '1' end, substring(p.sortKey, 2)), "
+            + "p.version = p.version + 1 "
+            + "where p.id in :ids")
+    int adjustQuantities(@Param("ids") Collection<Long> ids, @Param("delta") int delta, @Param("threshold") int threshold);
+
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update PantryItem p set p.category = :category, p.version = p.version + 1 where p.id in :ids")
+    int updateCategory(@Param("ids") Collection<Long> ids, @Param("category") Category category);
+
+    // the expiration date is part of the sort key ("<rank>|<date>|<name>"), so the date part of it is swapped too
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update PantryItem p set p.expirationDate = :date, "
+            + "p.sortKey = concat(substring(p.sortKey, 1, 2), :dateKey, substring(p.sortKey, 13)), "
+            + "p.version = p.version + 1 "
+            + "where p.id in :ids")
+    int updateExpirationDate(@Param("ids") Collection<Long> ids, @Param("date") LocalDate date, @Param("dateKey") String dateKey);
+
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("delete from PantryItem p where p.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    // "throw out everything that expired before X" in one DELETE, findExpiredBefore reads what it's about to delete
+    // (for the PantryChangeEvent) in the same transaction
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("delete from PantryItem p where p.expirationDate < :before")
+    int deleteExpiredBefore(@Param("before") LocalDate before);
+
+    // the columns of PantryChange.ItemState, without loading every expired item as an entity
+    interface ItemEntry { 
+        Long getId();
+        String getName();
+        Integer getQuantity();
+        LocalDate getExpirationDate();
+        String getCategory();
+        String getSortKey();
+    }
+
+    @Query("select p.id as id, p.name as name, p.quantity as quantity, p.expirationDate as expirationDate, "
+            + "c.name as category, p.sortKey as sortKey from PantryItem p left join p.category c where p.expirationDate < :before")
+    List<ItemEntry> findExpiredBefore(@Param("before") LocalDate before);
+
+    // used by the export, rows come through a forward only cursor (fetched 1000 at a time) instead of one big list.
+    // has to be called inside a transaction and the stream has to be closed
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select p from PantryItem p order by p.id")
+    Stream<PantryItem> streamAllByOrderById();
+
+    // just the two columns the ExpiryIndex needs, loaded once at startup
+    interface ExpiryEntry { 
+        Long getId();
+        LocalDate getExpirationDate();
+    }
+
+    @Query("select p.id as id, p.expirationDate as expirationDate from PantryItem p where p.expirationDate is not null")
+    List<ExpiryEntry> findExpiryEntries();
+
+    // the search box goes through the NameSearchIndex first, then only the matching ids are paged here
+    Window<PantryItem> findByIdIn(Collection<Long> ids, ScrollPosition position, Sort sort, Limit limit);
+    Window<PantryItem> findByCategoryIdAndIdIn(Long categoryId, Collection<Long> ids, ScrollPosition position, Sort sort, Limit limit);
+
+    // just id + name for the NameSearchIndex, loaded once at startup
+    interface NameEntry { 
+        Long getId();
+        String getName();
+    }
+
+    @Query("select p.id as id, p.name as name from PantryItem p")
+    List<NameEntry> findNameEntries();
+
+    // id + quantity, the InventoryLedger's starting point when it's turned on for an existing pantry
+    interface QuantityEntry { 
+        Long getId();
+        Integer getQuantity();
+    }
+
+    @Query("select p.id as id, p.quantity as quantity from PantryItem p")
+    List<QuantityEntry> findQuantityEntries();
+
+    // what an adjust left, read in the adjust's own transaction (the rows are still locked, see PantryChange.quantity)
+    @Query("select p.id as id, p.quantity as quantity from PantryItem p where p.id in :ids")
+    List<QuantityEntry> findQuantityEntriesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // is there anything at all, stops at the first row (the seeding check)
+    boolean existsByIdNotNull();
     
 }
 // this interface extends JpaRepository so it provides basic CRUD operations for the PantryItem entity.
 // CRUD is just Creation Read Update Delete.
-
@@ -0,0 +1,164 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.service.PantryBatchService.Op;
+import com.byrnald.smart_pantry.service.PantryBatchService.Operation;
+import com.byrnald.smart_pantry.service.PantryBatchService.OperationResult;
+import com.byrnald.smart_pantry.service.PantryBatchService.Status;
+
+// turns a list of batch operations into the few set based statements PantryBatchService runs.
+// every id ends up with at most one of each: a summed delta, a final category, a final expiry date, or a delete.
+// a delete swallows whatever came before it for that id (the row is gone at the end either way) and anything
+// after it is NOT_FOUND, so the outcome is the same as running the operations one by one
+final class BatchPlan {
+
+    private final Map<Long, PantryChange.ItemState> existing;
+    private final Set<Long> touched = new LinkedHashSet<>(); // ids with at least one OK operation, in request order
+    private final Map<Long, Integer> deltas = new LinkedHashMap<>();
+    private final Map<Long, String> categories = new LinkedHashMap<>();
+    private final Map<Long, LocalDate> expiries = new LinkedHashMap<>(); // a null date clears it
+    private final Set<Long> deletes = new LinkedHashSet<>();
+    private final List<OperationResult> results = new ArrayList<>();
+    private LocalDate purgeBefore;
+
+    // existing = the current state of every id the operations mention, ids missing from it don't exist (in this pantry)
+    BatchPlan(List<Operation> operations, Map<Long, PantryChange.ItemState> existing) {
+        this.existing = existing;
+        for (int i = 0; i < operations.size(); i++) {
+            results.add(plan(i, operations.get(i)));
+        }
+    }
+
+    private OperationResult plan(int index, Operation operation) {
+        String invalid = validate(operation);
+        if (invalid != null) {
+            return new OperationResult(index, operation != null ? operation.id() : null, Status.INVALID, invalid);
+        }
+        if (operation.op() == Op.PURGE_EXPIRED) {
+            // two purges in one batch are just one purge up to the later date
+            if (purgeBefore == null || operation.before().isAfter(purgeBefore)) {
+                purgeBefore = operation.before();
+            }
+            return new OperationResult(index, null, Status.OK, null);
+        }
+        Long id = operation.id();
+        if (!existing.containsKey(id) || deletes.contains(id)) {
+            return new OperationResult(index, id, Status.NOT_FOUND, null);
+        }
+        switch (operation.op()) {
+            case DELETE -> {
+                deletes.add(id);
+                deltas.remove(id);
+                categories.remove(id);
+                expiries.remove(id);
+            }
+            case ADJUST -> deltas.merge(id, operation.delta(), Integer::sum);
+            case SET_CATEGORY -> categories.put(id, operation.category());
+            case SET_EXPIRY -> expiries.put(id, operation.expirationDate());
+            case PURGE_EXPIRED -> { } // handled above
+        }
+        touched.add(id);
+        return new OperationResult(index, id, Status.OK, null);
+    }
+
+    private static String validate(Operation operation) {
+        if (operation == null || operation.op() == null) {
+            return "op is required";
+        }
+        if (operation.op() == Op.PURGE_EXPIRED) {
+            return operation.before() == null ? "before is required" : null;
+        }
+        if (operation.id() == null) {
+            return "id is required";
+        }
+        if (operation.op() == Op.ADJUST && operation.delta() == null) {
+            return "delta is required";
+        }
+        if (operation.op() == Op.SET_CATEGORY && (operation.category() == null || operation.category().isBlank())) {
+            return "category is required";
+        }
+        return null;
+    }
+
+    // total delta -> ids, so every item that goes down by 3 is one UPDATE. +1 then -1 needs no statement at all
+    Map<Integer, List<Long>> adjustments() {
+        Map<Integer, List<Long>> groups = new LinkedHashMap<>();
+        deltas.forEach((id, delta) -> {
+            if (delta != 0) {
+                groups.computeIfAbsent(delta, d -> new ArrayList<>()).add(id);
+            }
+        });
+        return groups;
+    }
+
+    // category name -> ids (the last SET_CATEGORY for an id wins)
+    Map<String, List<Long>> categoryChanges() {
+        Map<String, List<Long>> groups = new LinkedHashMap<>();
+        categories.forEach((id, category) -> groups.computeIfAbsent(category, c -> new ArrayList<>()).add(id));
+        return groups;
+    }
+
+    // expiration date -> ids, the null key clears the date
+    Map<LocalDate, List<Long>> expiryChanges() {
+        Map<LocalDate, List<Long>> groups = new LinkedHashMap<>();
+        expiries.forEach((id, date) -> groups.computeIfAbsent(date, d -> new ArrayList<>()).add(id));
+        return groups;
+    }
+
+    Set<Long> deletes() {
+        return deletes;
+    }
+
+    // null = no purge in this batch
+    LocalDate purgeBefore() {
+        return purgeBefore;
+    }
+
+    List<OperationResult> results() {
+        return results;
+    }
+
+    // what happened to each id, for the PantryChangeEvent. an adjust on its own is an ADJUSTED change. an adjust plus a
+    // category/expiry change is one UPDATED from the row as it was to the row as it ends up: an ADJUSTED next to it
+    // would be counted twice by the category stats (they look up the item's category after the commit, the new one).
+    // quantities = what the adjusts left, read back in the batch's transaction (PantryChange.quantity). the UPDATED
+    // starts from that minus the delta rather than from the row as we loaded it, which another adjust may have moved
+    List<PantryChange> changes(Map<Long, Integer> quantities) {
+        List<PantryChange> changes = new ArrayList<>(touched.size());
+        for (Long id : touched) {
+            PantryChange.ItemState state = existing.get(id);
+            if (deletes.contains(id)) {
+                changes.add(PantryChange.deleted(state));
+                continue;
+            }
+            int delta = deltas.getOrDefault(id, 0);
+            Integer quantity = quantities.get(id);
+            if (categories.containsKey(id) || expiries.containsKey(id)) {
+                if (quantity != null) {
+                    state = with(state, quantity - delta, state.expirationDate(), state.category());
+                }
+                PantryChange.ItemState after = with(state, state.quantity() != null ? state.quantity() + delta : null,
+                        expiries.containsKey(id) ? expiries.get(id) : state.expirationDate(),
+                        categories.getOrDefault(id, state.category()));
+                changes.add(new PantryChange(PantryChange.Type.UPDATED, id, state, after, 0, null));
+            } else if (delta != 0) {
+                changes.add(PantryChange.adjusted(id, delta, quantity));
+            }
+        }
+        return changes;
+    }
+
+    private static PantryChange.ItemState with(PantryChange.ItemState state, Integer quantity, LocalDate expirationDate, String category) {
+        return new PantryChange.ItemState(state.id(), state.name(), quantity, expirationDate, category,
+                PantryItem.sortKeyOf(quantity, expirationDate, state.name()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.byrnald.smart_pantry.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.byrnald.smart_pantry.model.Category;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.CategoryRepository;
+
+// turns category names into rows of the category table.
+// there are only a handful of categories, so they're cached by name after the first lookup,
+// after that going from "Pantry" to its id never touches the database
+@Service
+public class CategoryService {
+
+    private final CategoryRepository categoryRepository;
+    // detached copies (only id + name), safe to hand to any request
+    private final ConcurrentHashMap<String, Category> byName = new ConcurrentHashMap<>();
+
+    public CategoryService(CategoryRepository categoryRepository) {
+        this.categoryRepository = categoryRepository;
+    }
+
+    // id of an existing category, null if nobody ever used that name
+    public Long idOf(String name) {
+        if (name == null) {
+            return null;
+        }
+        Category cached = byName.get(name);
+        if (cached != null) {
+            return cached.getId();
+        }
+        return categoryRepository.findByName(name).map(found -> remember(found).getId()).orElse(null);
+    }
+
+    // finds the category with this name, or creates it the first time it's used.
+    // categories are shared by every pantry, CategoryStatsService adds a pantry's stats row when it first uses one
+    public Category resolve(String name) {
+        if (name == null) {
+            return null;
+        }
+        Category cached = byName.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        Category category = categoryRepository.findByName(name).orElseGet(() -> create(name));
+        return remember(category);
+    }
+
+    // PantryItem.setCategory only remembers the name, this swaps in the real row so the item can be saved
+    public void resolve(PantryItem item) {
+        item.setCategoryRef(resolve(item.getCategory()));
+    }
+
+    private Category create(String name) {
+        try {
+            return categoryRepository.save(new Category(name));
+        } catch (DataIntegrityViolationException e) {
+            // someone else created it at the same moment, the unique index on name stopped the duplicate
+            return categoryRepository.findByName(name).orElseThrow(() -> e);
+        }
+    }
+
+    private Category remember(Category category) {
+        Category copy = new Category(category.getId(), category.getName());
+        byName.putIfAbsent(copy.getName(), copy);
+        return copy;
+    }
+}
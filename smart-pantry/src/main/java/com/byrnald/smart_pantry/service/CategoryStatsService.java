@@ -0,0 +1,151 @@
+package com.byrnald.smart_pantry.service;
+
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.CategoryStatsView;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.CategoryStatsRepository;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// keeps the pantry_category_stats table (item count, total quantity, low stock count, expiring count per pantry and category)
+// up to date from PantryChangeEvents, so reading the stats is a look at a tiny table instead of a GROUP BY over every item.
+// a pantry gets a stats row for a category the first time one of its items uses it
+@Service
+public class CategoryStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryStatsService.class);
+
+    // restock/subtract carry the quantity the change left (read back while the row was locked, PantryChange.quantity),
+    // and so the one before it, which is all we need to know if it crossed the low stock line. that stays right with
+    // two scanners on the same item, the row as it is now could already include the other one's change.
+    // only when the change doesn't know it (:quantity is null) the row is asked instead.
+    // every lookup is by primary key, nothing gets scanned. %1$s is the pantry's item table (PantryTenants.itemTable)
+    private static final String ADJUST_SQL = """
+            UPDATE PUBLIC.pantry_category_stats SET
+                total_quantity = total_quantity + :delta,
+                low_stock_count = low_stock_count
+                    + CASE WHEN COALESCE(CAST(:quantity AS INTEGER), (SELECT quantity FROM %1$s WHERE id = :id)) <= :threshold THEN 1 ELSE 0 END
+                    - CASE WHEN COALESCE(CAST(:quantity AS INTEGER), (SELECT quantity FROM %1$s WHERE id = :id)) - :delta <= :threshold THEN 1 ELSE 0 END
+            WHERE pantry_id = :pantryId AND category_id = (SELECT category_id FROM %1$s WHERE id = :id AND pantry_id = :pantryId)
+            """;
+
+    private static final String INSERT_ROW_SQL = "INSERT INTO PUBLIC.pantry_category_stats "
+            + "(pantry_id, category_id, item_count, total_quantity, low_stock_count, expiring_count) "
+            + "SELECT ?, ?, 0, 0, 0, 0 WHERE NOT EXISTS "
+            + "(SELECT 1 FROM PUBLIC.pantry_category_stats WHERE pantry_id = ? AND category_id = ?)";
+
+    private final CategoryStatsRepository categoryStatsRepository;
+    private final CategoryService categoryService;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PantryTenants pantryTenants;
+
+    public CategoryStatsService(CategoryStatsRepository categoryStatsRepository, CategoryService categoryService,
+            JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate, PantryTenants pantryTenants) {
+        this.categoryStatsRepository = categoryStatsRepository;
+        this.categoryService = categoryService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.pantryTenants = pantryTenants;
+    }
+
+    // the current pantry's stats
+    public List<CategoryStatsView> getStats() {
+        return categoryStatsRepository.findAllViews(TenantContext.current());
+    }
+
+    @EventListener
+    @Transactional
+    public void onChange(PantryChangeEvent event) {
+        String pantryId = event.pantryId();
+        // add up what every change does to each category first, so a bulk import chunk is one UPDATE per category
+        Map<String, long[]> deltas = new HashMap<>();
+        List<SqlParameterSource> adjustments = new ArrayList<>();
+        for (PantryChange change : event.changes()) {
+            if (change.type() == PantryChange.Type.ADJUSTED) {
+                adjustments.add(new MapSqlParameterSource()
+                        .addValue("pantryId", pantryId)
+                        .addValue("id", change.itemId())
+                        .addValue("delta", change.delta())
+                        .addValue("quantity", change.quantity(), Types.INTEGER)
+                        .addValue("threshold", PantryItem.LOW_STOCK_THRESHOLD));
+                continue;
+            }
+            contribute(deltas, change.before(), -1);
+            contribute(deltas, change.after(), 1);
+        }
+
+        deltas.forEach((category, d) -> {
+            Long categoryId = categoryService.idOf(category);
+            if (categoryId != null && (d[0] != 0 || d[1] != 0 || d[2] != 0 || d[3] != 0)
+                    && categoryStatsRepository.addToStats(pantryId, categoryId, d[0], d[1], d[2], d[3]) == 0) {
+                // first item of this category in this pantry
+                jdbcTemplate.update(INSERT_ROW_SQL, pantryId, categoryId, pantryId, categoryId);
+                categoryStatsRepository.addToStats(pantryId, categoryId, d[0], d[1], d[2], d[3]);
+            }
+        });
+        if (!adjustments.isEmpty()) {
+            namedJdbcTemplate.batchUpdate(ADJUST_SQL.formatted(pantryTenants.itemTable(pantryId)), adjustments.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    // recounts everything from pantry_item. runs once at startup and once a day (the "expiring" count
+    // moves with the calendar, and it's a safety net for a listener that failed on a change)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${pantry.category-stats.rebuild-cron:0 5 0 * * *}")
+    @Transactional
+    public void rebuild() {
+        LocalDate expiringBy = LocalDate.now().plusDays(PantryService.EXPIRING_SOON_DAYS);
+        int categories = 0;
+        for (String pantryId : pantryTenants.all()) {
+            // rows of categories the pantry doesn't use anymore stay, just with zeros
+            jdbcTemplate.update("UPDATE PUBLIC.pantry_category_stats SET item_count = 0, total_quantity = 0, low_stock_count = 0, expiring_count = 0 "
+                    + "WHERE pantry_id = ?", pantryId);
+            categories += jdbcTemplate.update("MERGE INTO PUBLIC.pantry_category_stats "
+                    + "(pantry_id, category_id, item_count, total_quantity, low_stock_count, expiring_count) KEY (pantry_id, category_id) "
+                    + "SELECT pantry_id, category_id, COUNT(*), COALESCE(SUM(quantity), 0), "
+                    + "SUM(CASE WHEN quantity <= ? THEN 1 ELSE 0 END), "
+                    + "SUM(CASE WHEN expiration_date <= ? THEN 1 ELSE 0 END) "
+                    + "FROM " + pantryTenants.itemTable(pantryId) + " WHERE pantry_id = ? AND category_id IS NOT NULL GROUP BY pantry_id, category_id",
+                    PantryItem.LOW_STOCK_THRESHOLD, expiringBy, pantryId);
+        }
+        log.info("Category stats rebuilt for {} pantry categories", categories);
+    }
+
+    private static void contribute(Map<String, long[]> deltas, PantryChange.ItemState state, int sign) {
+        if (state == null || state.category() == null) {
+            return;
+        }
+        long[] d = deltas.computeIfAbsent(state.category(), c -> new long[4]);
+        int quantity = state.quantity() != null ? state.quantity() : 0;
+        d[0] += sign;
+        d[1] += (long) sign * quantity;
+        if (state.quantity() != null && state.quantity() <= PantryItem.LOW_STOCK_THRESHOLD) {
+            d[2] += sign;
+        }
+        if (state.expirationDate() != null
+                && !state.expirationDate().isAfter(LocalDate.now().plusDays(PantryService.EXPIRING_SOON_DAYS))) {
+            d[3] += sign;
+        }
+    }
+}
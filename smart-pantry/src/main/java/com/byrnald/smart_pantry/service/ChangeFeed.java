@@ -0,0 +1,229 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+
+// every change to the pantry gets a sequence number and goes into a fixed size ring buffer, so clients
+// (the kiosk screens) can ask "what changed since #1234" and apply the deltas instead of refetching everything.
+// live subscribers (the SSE stream) each get a bounded queue. a subscriber that can't keep up is dropped
+// instead of letting its queue grow without limit, it reconnects with its last sequence and catches up from
+// the ring, or refetches the full list if it fell out of the ring entirely (reset = true).
+// every pantry has its own ring and its own sequence numbers, a client only ever sees its own pantry's changes.
+// sequences start over on every restart, so what clients hold on to is a cursor "<epoch>:<sequence>" where the epoch
+// is made up at startup: a cursor from an earlier run never matches and gets a reset, even once the new run's
+// sequences have gone past the old number
+@Component
+public class ChangeFeed {
+
+    public record Entry(long sequence, Instant at, PantryChange change) { }
+
+    // reset means changes after `since` are gone (overwritten in the ring, or from before a restart), the client has
+    // to reload everything. cursor is what to ask with next time
+    public record Batch(List<Entry> changes, long lastSequence, String cursor, boolean reset) { }
+
+    // one live listener. the feed fills the queue, whoever subscribed drains it
+    public static final class Subscription implements AutoCloseable {
+
+        private final BlockingQueue<Entry> queue;
+        private final Ring ring;
+        private volatile boolean evicted;
+
+        private Subscription(Ring ring, int capacity) {
+            this.ring = ring;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        public BlockingQueue<Entry> queue() {
+            return queue;
+        }
+
+        // true once the feed gave up on this subscriber (queue full or it started too far behind)
+        public boolean isEvicted() {
+            return evicted;
+        }
+
+        @Override
+        public void close() {
+            ring.unsubscribe(this);
+        }
+    }
+
+    // one pantry's changes and live subscribers. the entries are only allocated with the first change, a ring that
+    // only ever had subscribers is dropped again when the last one leaves (retired), so a made-up X-Pantry-Id can't
+    // leave anything behind
+    private final class Ring {
+
+        private final String pantryId;
+        private Entry[] entries;
+        private long lastSequence; // sequence of the newest entry, 0 = nothing yet
+        private final Set<Subscription> subscribers = new CopyOnWriteArraySet<>();
+        private boolean retired;
+
+        Ring(String pantryId) {
+            this.pantryId = pantryId;
+        }
+
+        // false if the ring was retired in the meantime, the caller has to get the pantry's new one
+        synchronized boolean append(List<PantryChange> changes, Instant now) {
+            if (retired) {
+                return false;
+            }
+            if (entries == null) {
+                entries = new Entry[capacity];
+            }
+            for (PantryChange change : changes) {
+                Entry entry = new Entry(++lastSequence, now, change);
+                entries[(int) (entry.sequence() % capacity)] = entry;
+                for (Subscription subscription : subscribers) {
+                    if (!subscription.queue.offer(entry)) {
+                        evict(subscription);
+                    }
+                }
+            }
+            return true;
+        }
+
+        // since = -1 for a cursor from an earlier run
+        synchronized Batch since(long since, int limit) {
+            long oldest = lastSequence - capacity + 1;
+            if (since < 0 || since > lastSequence || since + 1 < oldest) {
+                return new Batch(List.of(), lastSequence, cursor(lastSequence), true);
+            }
+            List<Entry> changes = new ArrayList<>();
+            for (long sequence = since + 1; sequence <= lastSequence && changes.size() < limit; sequence++) {
+                changes.add(entries[(int) (sequence % capacity)]);
+            }
+            long upTo = changes.isEmpty() ? since : changes.get(changes.size() - 1).sequence();
+            return new Batch(changes, upTo, cursor(upTo), false);
+        }
+
+        synchronized long lastSequence() {
+            return lastSequence;
+        }
+
+        // null if the ring was retired in the meantime
+        synchronized Subscription subscribe(long since, int queueCapacity) {
+            if (retired) {
+                return null;
+            }
+            Subscription subscription = new Subscription(this, queueCapacity);
+            Batch backlog = since(since, queueCapacity);
+            if (backlog.reset() || backlog.lastSequence() < lastSequence) {
+                evict(subscription); // too far behind to catch up through the queue
+                return subscription;
+            }
+            subscription.queue.addAll(backlog.changes());
+            subscribers.add(subscription);
+            return subscription;
+        }
+
+        synchronized void unsubscribe(Subscription subscription) {
+            subscribers.remove(subscription);
+            if (subscribers.isEmpty() && lastSequence == 0) {
+                retired = true;
+                rings.remove(pantryId, this);
+            }
+        }
+
+        private void evict(Subscription subscription) {
+            subscription.evicted = true;
+            subscribers.remove(subscription);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private final int capacity;
+    private final String epoch;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    // what reads see for a pantry that has no ring (yet), nothing is ever appended to it
+    private final Ring noChanges = new Ring(null);
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ChangeFeed(@Value("${pantry.changes.capacity:10000}") int capacity) {
+        this.capacity = capacity;
+        this.epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    @EventListener
+    public void onChange(PantryChangeEvent event) {
+        Ring ring;
+        do {
+            ring = rings.computeIfAbsent(event.pantryId(), Ring::new);
+        } while (!ring.append(event.changes(), Instant.now()));
+    }
+
+    // IllegalArgumentException for a cursor that isn't one.
+    // reading doesn't create a ring, a pantry nothing happened in (or one somebody made up) just has no changes
+    public Batch since(String pantryId, String cursor, int limit) {
+        return rings.getOrDefault(pantryId, noChanges).since(sequenceOf(cursor), limit);
+    }
+
+    public long lastSequence(String pantryId) {
+        Ring ring = rings.get(pantryId);
+        return ring != null ? ring.lastSequence() : 0;
+    }
+
+    // starts a live subscription. everything after `since` that is still in the ring is queued first,
+    // then new changes as they happen, without gaps or duplicates in between (both happen under the ring's lock)
+    public Subscription subscribe(String pantryId, String cursor, int queueCapacity) {
+        long since = sequenceOf(cursor);
+        Subscription subscription;
+        do {
+            subscription = rings.computeIfAbsent(pantryId, Ring::new).subscribe(since, queueCapacity);
+        } while (subscription == null);
+        return subscription;
+    }
+
+    // what a client sends back to carry on after `sequence` (the SSE ids are these too)
+    public String cursor(long sequence) {
+        return epoch + ":" + sequence;
+    }
+
+    // the sequence of one of this run's cursors, -1 for one from an earlier run. no cursor (or "0") is the beginning,
+    // a bare number is what clients got before there were epochs, so it's from an earlier run too
+    long sequenceOf(String cursor) {
+        if (cursor == null || cursor.isBlank() || cursor.equals("0")) {
+            return 0;
+        }
+        int colon = cursor.indexOf(':');
+        long sequence = Long.parseLong(cursor.substring(colon + 1)); // NumberFormatException is an IllegalArgumentException
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Invalid change cursor: " + cursor);
+        }
+        return colon > 0 && cursor.substring(0, colon).equals(epoch) ? sequence : -1;
+    }
+
+    // changes across all pantries since startup
+    public long totalChanges() {
+        return rings.values().stream().mapToLong(Ring::lastSequence).sum();
+    }
+
+    public int subscriberCount() {
+        return rings.values().stream().mapToInt(ring -> ring.subscribers.size()).sum();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    // pantries that have a ring right now
+    int ringCount() {
+        return rings.size();
+    }
+}
@@ -0,0 +1,277 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.ledger.InventoryLedger;
+import com.byrnald.smart_pantry.model.ItemForecast;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// predicts when each item runs out and how low its stock can go before that's a problem.
+// per item we keep a handful of running numbers that get updated on every quantity change (no history is rescanned):
+// an exponentially decayed sum of the units used up (older usage counts less, the weight halves every ~0.7 window)
+// divided by how much (decayed) time we've been watching the item. that's the EWMA of daily usage.
+//
+// the low stock threshold is "what we'd use up during the lead time" plus a safety margin, assuming usage is roughly
+// poisson: rate * lead + Z * sqrt(rate * lead). eggs used every day get a high threshold, the spare HDMI cable gets 1.
+// items without enough history keep PantryService.DEFAULT_THRESHOLD.
+//
+// the forecast for each item is worked out when its quantity changes, reads just hand back what's stored.
+// an item nobody touches has no changes to redo it, so refresh() works every forecast out again as of now every so often
+// (otherwise the eggs nobody has bought in a month would keep their old threshold and stay on the urgent list forever).
+// on startup the stats are warmed up from the inventory ledger (if it's on), quantities always come from the database.
+// every pantry keeps its own stats, the reads answer for the pantry of the current request (TenantContext)
+@Component
+public class ConsumptionForecast {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumptionForecast.class);
+    private static final double DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final double Z = 1.65; // ~95% chance the threshold covers the lead time
+    private static final double MAX_DAYS_TO_EMPTY = 36500; // anything slower than this is "never"
+
+    // everything we know about one item. usedUnits is decayed up to usedAt, watchedSince is when we started counting
+    private record Stats(int quantity, double usedUnits, long usedAt, long watchedSince, int samples, ItemForecast forecast) { }
+
+    // one pantry's items. lowStockIds is kept up to date with the stats, so the urgent list doesn't scan
+    private record PantryStats(Map<Long, Stats> items, Set<Long> lowStockIds) {
+
+        PantryStats() {
+            this(new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    private final PantryRepository pantryRepository;
+    private final InventoryLedger inventoryLedger;
+    private final PantryTenants pantryTenants;
+    private final boolean enabled;
+    private final double windowMillis;
+    private final double leadDays;
+    private final long minHistoryMillis;
+    private final int minSamples;
+    private final int historyDays;
+
+    private final Map<String, PantryStats> pantries = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public ConsumptionForecast(PantryRepository pantryRepository, InventoryLedger inventoryLedger, PantryTenants pantryTenants,
+            @Value("${pantry.forecast.enabled:true}") boolean enabled,
+            @Value("${pantry.forecast.window-days:14}") double windowDays,
+            @Value("${pantry.forecast.lead-days:3}") double leadDays,
+            @Value("${pantry.forecast.min-history-days:3}") double minHistoryDays,
+            @Value("${pantry.forecast.min-samples:2}") int minSamples,
+            @Value("${pantry.forecast.history-days:90}") int historyDays) {
+        this.pantryRepository = pantryRepository;
+        this.inventoryLedger = inventoryLedger;
+        this.pantryTenants = pantryTenants;
+        this.enabled = enabled;
+        this.windowMillis = windowDays * DAY_MILLIS;
+        this.leadDays = leadDays;
+        this.minHistoryMillis = (long) (minHistoryDays * DAY_MILLIS);
+        this.minSamples = minSamples;
+        this.historyDays = historyDays;
+    }
+
+    // false until the startup load is done (or when it's turned off), PantryService falls back to the static threshold
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        for (String pantryId : pantryTenants.all()) {
+            load(pantryId);
+        }
+        ready = true;
+        log.info("Consumption forecast loaded for {} items in {} pantries, {} predicted low on stock", size(), pantries.size(), lowStockCount());
+    }
+
+    private void load(String pantryId) {
+        long now = System.currentTimeMillis();
+        if (inventoryLedger.isEnabled()) {
+            // replays the same kind of changes onChange sees, just with the times they really happened
+            inventoryLedger.replay(pantryId, Instant.ofEpochMilli(now).minus(historyDays, ChronoUnit.DAYS), Instant.ofEpochMilli(now),
+                    record -> apply(pantryId, record.itemId(), PantryChange.Type.valueOf(record.type().name()), record.delta(), record.timestamp()));
+        }
+        // the ledger only has what happened since it was turned on, the database has the real quantities
+        PantryStats pantry = pantry(pantryId);
+        Set<Long> existing = new HashSet<>();
+        for (PantryRepository.QuantityEntry entry : TenantContext.callAs(pantryId, pantryRepository::findQuantityEntries)) {
+            int quantity = entry.getQuantity() != null ? entry.getQuantity() : 0;
+            existing.add(entry.getId());
+            pantry.items().compute(entry.getId(), (id, stats) -> stats == null
+                    ? store(pantry, id, new Stats(quantity, 0, now, now, 0, null), now)
+                    : store(pantry, id, new Stats(quantity, stats.usedUnits(), stats.usedAt(), stats.watchedSince(), stats.samples(), null), now));
+        }
+        pantry.items().keySet().removeIf(id -> {
+            boolean gone = !existing.contains(id);
+            if (gone) {
+                pantry.lowStockIds().remove(id);
+            }
+            return gone;
+        });
+    }
+
+    @EventListener
+    public void onChange(PantryChangeEvent event) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PantryChange change : event.changes()) {
+            int delta = switch (change.type()) {
+                case ADDED -> quantityOf(change.after()); // for ADDED the "delta" is the starting quantity, same as in the ledger
+                case UPDATED -> quantityOf(change.after()) - quantityOf(change.before());
+                case DELETED -> 0;
+                case ADJUSTED -> change.delta();
+            };
+            apply(event.pantryId(), change.itemId(), change.type(), delta, now);
+        }
+    }
+
+    // redoes every forecast as of now so usage decays on items that haven't changed in a while.
+    // the stored usage isn't touched, only the forecast and lowStockIds are
+    @Scheduled(fixedDelayString = "${pantry.forecast.refresh-interval-ms:3600000}")
+    public void refresh() {
+        if (enabled && ready) {
+            refresh(System.currentTimeMillis());
+        }
+    }
+
+    void refresh(long now) {
+        for (PantryStats pantry : pantries.values()) {
+            for (Long itemId : pantry.items().keySet()) {
+                pantry.items().computeIfPresent(itemId, (id, stats) -> store(pantry, id, stats, now));
+            }
+        }
+    }
+
+    // the current pantry's item
+    public Optional<ItemForecast> forecast(Long itemId) {
+        PantryStats pantry = pantries.get(TenantContext.current());
+        Stats stats = pantry != null ? pantry.items().get(itemId) : null;
+        return stats != null ? Optional.of(stats.forecast()) : Optional.empty();
+    }
+
+    // every item of the current pantry, the ones running out first at the top (items nobody is using come last)
+    public List<ItemForecast> forecasts() {
+        PantryStats pantry = pantries.get(TenantContext.current());
+        if (pantry == null) {
+            return List.of();
+        }
+        List<ItemForecast> forecasts = new ArrayList<>(pantry.items().size());
+        pantry.items().values().forEach(stats -> forecasts.add(stats.forecast()));
+        forecasts.sort(Comparator.comparing(ItemForecast::daysToEmpty, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(ItemForecast::itemId));
+        return forecasts;
+    }
+
+    // the current pantry's items at or below their own threshold right now
+    public Set<Long> lowStockIds() {
+        PantryStats pantry = pantries.get(TenantContext.current());
+        return pantry != null ? Set.copyOf(pantry.lowStockIds()) : Set.of();
+    }
+
+    // all pantries together
+    public int size() {
+        return pantries.values().stream().mapToInt(pantry -> pantry.items().size()).sum();
+    }
+
+    public int lowStockCount() {
+        return pantries.values().stream().mapToInt(pantry -> pantry.lowStockIds().size()).sum();
+    }
+
+    // one change to one item at time `at`. O(1): decay the used units up to now, add what was just used, redo the forecast
+    void apply(String pantryId, Long itemId, PantryChange.Type type, int delta, long at) {
+        PantryStats pantry = pantry(pantryId);
+        if (type == PantryChange.Type.DELETED) {
+            pantry.items().remove(itemId);
+            pantry.lowStockIds().remove(itemId);
+            return;
+        }
+        pantry.items().compute(itemId, (id, stats) -> {
+            if (type == PantryChange.Type.ADDED || stats == null) {
+                // a new item, or one we first hear about now (created before the ledger was on). it starts with no usage,
+                // its quantity gets fixed by load() if we didn't know it
+                int quantity = type == PantryChange.Type.ADDED ? delta : Math.max(0, delta);
+                return store(pantry, id, new Stats(quantity, 0, at, at, 0, null), at);
+            }
+            long time = Math.max(at, stats.usedAt()); // the clock can step back a bit, the decay can't
+            double usedUnits = decay(stats.usedUnits(), time - stats.usedAt());
+            int samples = stats.samples();
+            if (delta < 0) {
+                usedUnits -= delta; // restocks only change the quantity, using things up is what we're measuring
+                samples++;
+            }
+            return store(pantry, id, new Stats(stats.quantity() + delta, usedUnits, time, stats.watchedSince(), samples, null), time);
+        });
+    }
+
+    // works out the forecast for the stats as of `now` and keeps lowStockIds in line with it.
+    // the used units are decayed from usedAt up to now, so time without any usage brings the rate down too
+    private Stats store(PantryStats pantry, Long itemId, Stats stats, long now) {
+        long time = Math.max(now, stats.usedAt());
+        long watched = time - stats.watchedSince();
+        boolean predicted = stats.samples() >= minSamples && watched >= minHistoryMillis;
+        double dailyUsage = 0;
+        int threshold = PantryService.DEFAULT_THRESHOLD;
+        if (predicted) {
+            // decayed units / decayed time we watched = units per ms, the (1 - e^-t) part stops a short history reading too low
+            double watchedWeight = windowMillis * (1 - Math.exp(-watched / windowMillis));
+            dailyUsage = decay(stats.usedUnits(), time - stats.usedAt()) / watchedWeight * DAY_MILLIS;
+            double leadUsage = dailyUsage * leadDays;
+            threshold = (int) Math.ceil(leadUsage + Z * Math.sqrt(leadUsage));
+        }
+        Double daysToEmpty = null;
+        LocalDate runOutDate = null;
+        if (dailyUsage > 0) {
+            daysToEmpty = Math.min(Math.max(0, stats.quantity()) / dailyUsage, MAX_DAYS_TO_EMPTY);
+            runOutDate = Instant.ofEpochMilli(time + (long) (daysToEmpty * DAY_MILLIS)).atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+        boolean lowStock = stats.quantity() <= threshold;
+        if (lowStock) {
+            pantry.lowStockIds().add(itemId);
+        } else {
+            pantry.lowStockIds().remove(itemId);
+        }
+        ItemForecast forecast = new ItemForecast(itemId, stats.quantity(), dailyUsage, daysToEmpty, runOutDate, threshold, lowStock, predicted);
+        return new Stats(stats.quantity(), stats.usedUnits(), stats.usedAt(), stats.watchedSince(), stats.samples(), forecast);
+    }
+
+    private PantryStats pantry(String pantryId) {
+        return pantries.computeIfAbsent(pantryId, id -> new PantryStats());
+    }
+
+    private double decay(double value, long elapsedMillis) {
+        return elapsedMillis <= 0 ? value : value * Math.exp(-elapsedMillis / windowMillis);
+    }
+
+    private static int quantityOf(PantryChange.ItemState state) {
+        return state != null && state.quantity() != null ? state.quantity() : 0;
+    }
+}
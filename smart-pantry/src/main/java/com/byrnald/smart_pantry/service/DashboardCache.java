@@ -0,0 +1,268 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.ItemsExpiredEvent;
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryPage;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// cached read model behind /dashboard. every button on the dashboard redirects back to it,
+// so the same few pages get rendered over and over, this keeps them (and the urgent list) in memory.
+//
+// pages are keyed by (keyword, category, cursor) and kept in a bounded LRU map. because pages are keyset based,
+// a page only changes when an item inside its key range changes (or one of its own items does), so a write
+// only evicts the pages it actually lands on instead of throwing the whole cache away.
+// every pantry has its own pages (the pantry is part of the key) and its own urgent list, a write in one pantry
+// never evicts anything of another. they all share the one LRU limit, so a busy pantry can push out an idle one's pages
+@Component
+public class DashboardCache {
+
+    // what we remember about each cached page, enough to tell if a change lands on it
+    private record CachedPage(PantryPage page, Set<Long> ids, PageCursor after, PageCursor last) { }
+
+    record PageKey(String pantryId, String keyword, String category, String cursor) {
+
+        // the same normalization searchItems does, so "?category=All" and no category share an entry
+        static PageKey of(String pantryId, String keyword, String category, String cursor) {
+            return new PageKey(pantryId, keyword == null || keyword.isEmpty() ? null : keyword,
+                    category == null || category.equals("All") ? null : category,
+                    cursor == null || cursor.isEmpty() ? null : cursor);
+        }
+
+        boolean matches(PantryChange.ItemState item) {
+            if (category != null && !category.equals(item.category())) {
+                return false;
+            }
+            return keyword == null || (item.name() != null && item.name().toLowerCase().contains(keyword.toLowerCase()));
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size) { }
+
+    private record CachedUrgent(LocalDate day, List<PantryItem> items, Set<Long> ids) { }
+
+    private final int maxEntries;
+    private final LinkedHashMap<PageKey, CachedPage> pages;
+    private final Map<String, CachedUrgent> urgent = new HashMap<>();
+
+    // per pantry, bumped on every change. a page that was loaded while a write happened is not stored (it might already be stale)
+    private final Map<String, Long> generations = new HashMap<>();
+    private long clears; // clear() counts as a change in every pantry
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DashboardCache(@Value("${pantry.dashboard.cache.max-entries:256}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        // access ordered LinkedHashMap = LRU, the eldest entry goes once we're over the limit
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageKey, CachedPage> eldest) {
+                return size() > DashboardCache.this.maxEntries;
+            }
+        };
+    }
+
+    // pages and urgent lists of the current pantry (TenantContext)
+    public PantryPage page(String keyword, String category, String cursor, Supplier<PantryPage> loader) {
+        PageKey key = PageKey.of(TenantContext.current(), keyword, category, cursor);
+        long loadedAt;
+        synchronized (this) {
+            CachedPage cached = pages.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached.page();
+            }
+            loadedAt = generation(key.pantryId());
+        }
+        misses.incrementAndGet();
+        PantryPage page = loader.get(); // the database work happens outside the lock
+
+        Set<Long> ids = new HashSet<>();
+        page.items().forEach(item -> ids.add(item.getId()));
+        PageCursor last = page.items().isEmpty() ? null : PageCursor.of(page.items().get(page.items().size() - 1));
+        synchronized (this) {
+            if (generation(key.pantryId()) == loadedAt) {
+                pages.put(key, new CachedPage(page, ids, PageCursor.decode(key.cursor()), page.hasNext() ? last : null));
+            }
+        }
+        return page;
+    }
+
+    public List<PantryItem> urgentItems(Supplier<List<PantryItem>> loader) {
+        return urgent(loader).items();
+    }
+
+    // the dashboard highlights rows by id, page items and urgent items are different objects once they're cached
+    public Set<Long> urgentIds(Supplier<List<PantryItem>> loader) {
+        return urgent(loader).ids();
+    }
+
+    private CachedUrgent urgent(Supplier<List<PantryItem>> loader) {
+        String pantryId = TenantContext.current();
+        LocalDate today = LocalDate.now();
+        long loadedAt;
+        synchronized (this) {
+            CachedUrgent cached = urgent.get(pantryId);
+            if (cached != null && cached.day().equals(today)) { // "expiring soon" moves every day
+                hits.incrementAndGet();
+                return cached;
+            }
+            loadedAt = generation(pantryId);
+        }
+        misses.incrementAndGet();
+        List<PantryItem> items = loader.get();
+        Set<Long> ids = new HashSet<>();
+        items.forEach(item -> ids.add(item.getId()));
+        CachedUrgent loaded = new CachedUrgent(today, items, ids);
+        synchronized (this) {
+            if (generation(pantryId) == loadedAt) {
+                urgent.put(pantryId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    @EventListener
+    public synchronized void onChange(PantryChangeEvent event) {
+        String pantryId = event.pantryId();
+        generations.merge(pantryId, 1L, Long::sum);
+        for (PantryChange change : event.changes()) {
+            if (change.type() == PantryChange.Type.ADJUSTED) {
+                evictAdjusted(pantryId, change);
+            } else {
+                evictWhere(pantryId, change.itemId(), change.before());
+                evictWhere(pantryId, change.itemId(), change.after());
+                // an item can also be urgent by its forecast threshold, which only the forecast knows about,
+                // so deleting it or editing its quantity always drops the urgent list
+                if (isUrgent(change.before()) || isUrgent(change.after()) || quantityChanged(change)) {
+                    evictUrgent(pantryId);
+                }
+            }
+        }
+    }
+
+    @EventListener
+    public synchronized void onExpired(ItemsExpiredEvent event) {
+        generations.merge(event.pantryId(), 1L, Long::sum);
+        evictUrgent(event.pantryId());
+    }
+
+    // all pantries together
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), pages.size() + urgent.size());
+        }
+    }
+
+    public synchronized void clear() {
+        clears++;
+        evictions.addAndGet(pages.size() + urgent.size());
+        pages.clear();
+        urgent.clear();
+    }
+
+    private long generation(String pantryId) {
+        return clears + generations.getOrDefault(pantryId, 0L);
+    }
+
+    // evicts the pantry's pages that hold the item, plus pages whose key range the item's (old or new) position falls into
+    private void evictWhere(String pantryId, Long itemId, PantryChange.ItemState state) {
+        PageCursor position = state != null && state.sortKey() != null ? new PageCursor(state.sortKey(), state.id()) : null;
+        Iterator<Map.Entry<PageKey, CachedPage>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<PageKey, CachedPage> entry = it.next();
+            if (!entry.getKey().pantryId().equals(pantryId)) {
+                continue;
+            }
+            CachedPage cached = entry.getValue();
+            boolean hit = cached.ids().contains(itemId)
+                    || (position != null && entry.getKey().matches(state) && inRange(cached, position));
+            if (hit) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // restock/subtract only tell us the id and the delta. if the item sits on a cached page we know its quantity,
+    // and unless it crossed the low stock line its place in the order didn't move, so only its own pages go.
+    // if it did cross (or we've never seen it) it could land on any page, so every page of the pantry goes
+    private void evictAdjusted(String pantryId, PantryChange change) {
+        evictUrgent(pantryId);
+        PantryItem known = null;
+        for (Map.Entry<PageKey, CachedPage> entry : pages.entrySet()) {
+            if (entry.getKey().pantryId().equals(pantryId) && entry.getValue().ids().contains(change.itemId())) {
+                known = entry.getValue().page().items().stream().filter(item -> Objects.equals(item.getId(), change.itemId())).findFirst().orElse(null);
+                break;
+            }
+        }
+        if (known == null || known.getQuantity() == null || known.getSortKey() == null) {
+            evictPantry(pantryId);
+            return;
+        }
+        boolean wasLow = known.getQuantity() <= PantryItem.LOW_STOCK_THRESHOLD;
+        boolean isLow = known.getQuantity() + change.delta() <= PantryItem.LOW_STOCK_THRESHOLD;
+        evictWhere(pantryId, change.itemId(), null);
+        if (wasLow != isLow) {
+            String movedKey = (isLow ? "0" : "1") + known.getSortKey().substring(1);
+            evictWhere(pantryId, change.itemId(), new PantryChange.ItemState(known.getId(), known.getName(), known.getQuantity() + change.delta(),
+                    known.getExpirationDate(), known.getCategory(), movedKey));
+        }
+    }
+
+    private void evictPantry(String pantryId) {
+        Iterator<PageKey> it = pages.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().pantryId().equals(pantryId)) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictUrgent(String pantryId) {
+        if (urgent.remove(pantryId) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    // a page covers everything after its cursor up to its last item, the last page covers everything after its cursor
+    private static boolean inRange(CachedPage cached, PageCursor position) {
+        boolean afterStart = cached.after() == null || position.compareTo(cached.after()) > 0;
+        boolean beforeEnd = cached.last() == null || position.compareTo(cached.last()) <= 0;
+        return afterStart && beforeEnd;
+    }
+
+    private static boolean quantityChanged(PantryChange change) {
+        return change.before() != null && (change.after() == null || !Objects.equals(change.before().quantity(), change.after().quantity()));
+    }
+
+    private static boolean isUrgent(PantryChange.ItemState state) {
+        if (state == null) {
+            return false;
+        }
+        boolean lowStock = state.quantity() != null && state.quantity() <= PantryItem.LOW_STOCK_THRESHOLD;
+        boolean expiring = state.expirationDate() != null
+                && !state.expirationDate().isAfter(LocalDate.now().plusDays(PantryService.EXPIRING_SOON_DAYS));
+        return lowStock || expiring;
+    }
+}
@@ -0,0 +1,71 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.ItemsExpiredEvent;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// turns the daily ItemsExpiredEvent into something a person sees: one line on the "pantry.alerts" logger per pantry
+// and day (point a mail/chat appender at that logger to get notified), and the last MAX_ALERTS of them per pantry
+// for /api/pantry/alerts
+@Component
+public class ExpiryAlerts {
+
+    private static final Logger alerts = LoggerFactory.getLogger("pantry.alerts");
+    private static final int MAX_ALERTS = 30; // about a month of daily sweeps
+    private static final int MAX_NAMES = 20; // a pantry nobody cleaned out can expire hundreds of items in one night
+
+    // items = how many expired, names = the first MAX_NAMES of them that still exist
+    public record Alert(LocalDate day, int items, List<String> names) { }
+
+    private final PantryRepository pantryRepository;
+    private final Map<String, Deque<Alert>> recent = new ConcurrentHashMap<>();
+
+    public ExpiryAlerts(PantryRepository pantryRepository) {
+        this.pantryRepository = pantryRepository;
+    }
+
+    @EventListener
+    public void onExpired(ItemsExpiredEvent event) {
+        List<Long> ids = event.itemIds().subList(0, Math.min(event.itemIds().size(), MAX_NAMES));
+        List<String> names = new ArrayList<>();
+        TenantContext.callAs(event.pantryId(), () -> pantryRepository.findAllById(ids)).stream()
+                .map(PantryItem::getName)
+                .forEach(names::add);
+        Alert alert = new Alert(event.day(), event.itemIds().size(), List.copyOf(names));
+        alerts.warn("Pantry {}: {} items expired on {}: {}{}", event.pantryId(), alert.items(), alert.day(),
+                String.join(", ", names), alert.items() > names.size() ? ", ..." : "");
+
+        Deque<Alert> pantryAlerts = recent.computeIfAbsent(event.pantryId(), id -> new ArrayDeque<>());
+        synchronized (pantryAlerts) {
+            pantryAlerts.addFirst(alert);
+            if (pantryAlerts.size() > MAX_ALERTS) {
+                pantryAlerts.removeLast();
+            }
+        }
+    }
+
+    // the current pantry's alerts, newest first
+    public List<Alert> recent() {
+        Deque<Alert> pantryAlerts = recent.get(TenantContext.current());
+        if (pantryAlerts == null) {
+            return List.of();
+        }
+        synchronized (pantryAlerts) {
+            return List.copyOf(pantryAlerts);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.ItemsExpiredEvent;
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// in-memory index of which items expire when, so the dashboard's "expiring soon"/"urgent" lists
+// don't run a date range scan on every page load.
+// it's loaded once when the app is ready and then kept up to date from PantryChangeEvents,
+// until then PantryService just falls back to the old queries.
+// every pantry has its own wheel, reads answer for the pantry of the current request (TenantContext)
+@Component
+public class ExpiryIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiryIndex.class);
+    private static final int WHEEL_DAYS = 64; // one bucket per day for ~2 months, later dates wait in the overflow
+
+    private final PantryRepository pantryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PantryTenants pantryTenants;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, ExpiryTimeWheel> wheels = new ConcurrentHashMap<>();
+    private volatile LocalDate today = LocalDate.now();
+    private volatile boolean ready;
+
+    public ExpiryIndex(PantryRepository pantryRepository, ApplicationEventPublisher eventPublisher, PantryTenants pantryTenants) {
+        this.pantryRepository = pantryRepository;
+        this.eventPublisher = eventPublisher;
+        this.pantryTenants = pantryTenants;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        int loaded = 0;
+        for (String pantryId : pantryTenants.all()) {
+            // only (id, expirationDate) is read, items without a date are never in the index.
+            // the read happens under the write lock: a change that lands meanwhile waits and goes on top of what was read,
+            // instead of being overwritten by a snapshot from before it (writes stall for one pantry's read at startup)
+            List<PantryRepository.ExpiryEntry> entries;
+            lock.writeLock().lock();
+            try {
+                entries = TenantContext.callAs(pantryId, pantryRepository::findExpiryEntries);
+                ExpiryTimeWheel wheel = wheel(pantryId);
+                for (PantryRepository.ExpiryEntry entry : entries) {
+                    wheel.put(entry.getId(), entry.getExpirationDate());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            loaded += entries.size();
+        }
+        ready = true;
+        log.info("Expiry index loaded with {} dated items in {} pantries", loaded, wheels.size());
+    }
+
+    @EventListener
+    public void onChange(PantryChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            ExpiryTimeWheel wheel = wheel(event.pantryId());
+            for (PantryChange change : event.changes()) {
+                switch (change.type()) {
+                    case ADDED, UPDATED -> wheel.put(change.itemId(), change.after().expirationDate());
+                    case DELETED -> wheel.remove(change.itemId());
+                    case ADJUSTED -> { } // quantity only, the date didn't move
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // number of items with an expiration date, all pantries together
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return wheels.values().stream().mapToInt(ExpiryTimeWheel::size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // items of the current pantry expiring from today up to today + days
+    public List<Long> expiringWithin(int days) {
+        rollForward();
+        lock.readLock().lock();
+        try {
+            ExpiryTimeWheel wheel = wheels.get(TenantContext.current());
+            return wheel != null ? wheel.expiringWithin(days) : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Long> expired() {
+        rollForward();
+        lock.readLock().lock();
+        try {
+            ExpiryTimeWheel wheel = wheels.get(TenantContext.current());
+            return wheel != null ? wheel.expired() : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // runs just after midnight, turns the wheel to the new day and tells everyone what just expired
+    @Scheduled(cron = "${pantry.expiry.sweep-cron:0 0 0 * * *}")
+    public void dailySweep() {
+        rollForward();
+    }
+
+    // also called from the reads, so a missed sweep (laptop asleep at midnight) can't leave the index a day behind
+    // every pantry's wheel turns together, each pantry gets its own ItemsExpiredEvent
+    private void rollForward() {
+        LocalDate now = LocalDate.now();
+        if (!now.isAfter(today)) {
+            return;
+        }
+        Map<String, List<Long>> newlyExpired = new HashMap<>();
+        lock.writeLock().lock();
+        try {
+            if (!now.isAfter(today)) {
+                return; // another thread got here first
+            }
+            wheels.forEach((pantryId, wheel) -> newlyExpired.put(pantryId, wheel.advanceTo(now)));
+            today = now;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        newlyExpired.forEach((pantryId, ids) -> {
+            if (!ids.isEmpty()) {
+                log.info("{} items in pantry {} expired as of {}", ids.size(), pantryId, now);
+                eventPublisher.publishEvent(new ItemsExpiredEvent(pantryId, now, ids));
+            }
+        });
+    }
+
+    // callers hold the write lock. a pantry we haven't seen yet starts with an empty wheel
+    private ExpiryTimeWheel wheel(String pantryId) {
+        return wheels.computeIfAbsent(pantryId, id -> new ExpiryTimeWheel(WHEEL_DAYS, today));
+    }
+}
@@ -0,0 +1,141 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// a day-bucketed time wheel of item ids keyed by expiration date.
+// the wheel has one bucket per day for the next `slots` days (bucket = epochDay % slots), anything further
+// out waits in an overflow map and anything already past lives in the expired set.
+// "what expires in the next N days" is just reading N buckets, no matter how many items there are.
+// not thread safe on its own, ExpiryIndex does the locking
+public class ExpiryTimeWheel {
+
+    private final int slots;
+    private final List<Set<Long>> wheel;
+    private final TreeMap<Long, Set<Long>> overflow = new TreeMap<>(); // epochDay -> ids, for days past the wheel
+    private final Set<Long> expired = new HashSet<>();
+    private final Map<Long, Long> dayOf = new HashMap<>(); // id -> epochDay, so updates/deletes know which bucket to leave
+    private long today;
+
+    public ExpiryTimeWheel(int slots, LocalDate today) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be at least 1");
+        }
+        this.slots = slots;
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new HashSet<>());
+        }
+        this.today = today.toEpochDay();
+    }
+
+    public LocalDate today() {
+        return LocalDate.ofEpochDay(today);
+    }
+
+    public int size() {
+        return dayOf.size();
+    }
+
+    // adds or moves an item, a null date just takes it out (things like cables never expire)
+    public void put(Long id, LocalDate expirationDate) {
+        remove(id);
+        if (expirationDate == null) {
+            return;
+        }
+        long day = expirationDate.toEpochDay();
+        dayOf.put(id, day);
+        bucketFor(day).add(id);
+    }
+
+    public void remove(Long id) {
+        Long day = dayOf.remove(id);
+        if (day == null) {
+            return;
+        }
+        if (day < today) {
+            expired.remove(id);
+        } else if (day < today + slots) {
+            wheel.get(slot(day)).remove(id);
+        } else {
+            Set<Long> ids = overflow.get(day);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    overflow.remove(day);
+                }
+            }
+        }
+    }
+
+    // items expiring between today and today + days (both ends included)
+    public List<Long> expiringWithin(int days) {
+        List<Long> result = new ArrayList<>();
+        long last = today + days;
+        for (long day = today; day <= last && day < today + slots; day++) {
+            result.addAll(wheel.get(slot(day)));
+        }
+        if (last >= today + slots) {
+            overflow.headMap(last, true).values().forEach(result::addAll);
+        }
+        return result;
+    }
+
+    // items whose expiration date is before today
+    public List<Long> expired() {
+        return new ArrayList<>(expired);
+    }
+
+    // turns the wheel forward to a new day, returns the ids that expired on the way
+    public List<Long> advanceTo(LocalDate newToday) {
+        long target = newToday.toEpochDay();
+        List<Long> newlyExpired = new ArrayList<>();
+        if (target <= today) {
+            return newlyExpired;
+        }
+        // every bucket we pass over is for a day that is now in the past
+        for (long day = today; day < target && day < today + slots; day++) {
+            Set<Long> bucket = wheel.get(slot(day));
+            newlyExpired.addAll(bucket);
+            bucket.clear();
+        }
+        // if we skipped more than a full turn, some overflow days are in the past too
+        Iterator<Map.Entry<Long, Set<Long>>> past = overflow.headMap(target, false).entrySet().iterator();
+        while (past.hasNext()) {
+            newlyExpired.addAll(past.next().getValue());
+            past.remove();
+        }
+        expired.addAll(newlyExpired);
+        today = target;
+
+        // overflow days that are now within reach move onto the wheel
+        Iterator<Map.Entry<Long, Set<Long>>> due = overflow.headMap(today + slots, false).entrySet().iterator();
+        while (due.hasNext()) {
+            Map.Entry<Long, Set<Long>> entry = due.next();
+            wheel.get(slot(entry.getKey())).addAll(entry.getValue());
+            due.remove();
+        }
+        return newlyExpired;
+    }
+
+    private Set<Long> bucketFor(long day) {
+        if (day < today) {
+            return expired;
+        }
+        if (day < today + slots) {
+            return wheel.get(slot(day));
+        }
+        return overflow.computeIfAbsent(day, d -> new HashSet<>());
+    }
+
+    private int slot(long day) {
+        return (int) Math.floorMod(day, (long) slots);
+    }
+}
@@ -0,0 +1,151 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.PantryAnalytics;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// answers /api/pantry/analytics ("quantity per category expiring this week", "days to expiry histogram") from an
+// InventoryColumns copy of every pantry instead of loading the items. the copy is read once when the app is ready
+// (plain JDBC straight into the arrays, no entity per row) and then kept up to date from PantryChangeEvents
+// like the ExpiryIndex, adjusts included. reads answer for the pantry of the current request (TenantContext).
+// every pantry has its own lock, a big pantry's scan only holds up writes to that pantry
+@Component
+public class InventoryAnalytics {
+
+    // one pantry's columns and the lock that guards them. load() swaps in fresh columns under the write lock
+    private static final class PantryColumns {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private InventoryColumns columns = new InventoryColumns();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryAnalytics.class);
+    private static final InventoryColumns EMPTY = new InventoryColumns(0); // for a pantry we haven't seen, only ever read
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PantryTenants pantryTenants;
+    private final boolean enabled;
+    private final Map<String, PantryColumns> pantries = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public InventoryAnalytics(JdbcTemplate jdbcTemplate, PantryTenants pantryTenants,
+            @Value("${pantry.analytics.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pantryTenants = pantryTenants;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        // the rows only have the category id, the names are read once up front
+        Map<Long, String> categoryNames = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM " + PantryTenants.SHARED_SCHEMA + ".category",
+                (RowCallbackHandler) rs -> categoryNames.put(rs.getLong(1), rs.getString(2)));
+        int loaded = 0;
+        for (String pantryId : pantryTenants.all()) {
+            // read and swapped in under the write lock, a change that lands meanwhile waits and then goes on top
+            // instead of being thrown away with the columns onChange had started for this pantry
+            InventoryColumns columns = new InventoryColumns();
+            PantryColumns pantry = pantry(pantryId);
+            pantry.lock.writeLock().lock();
+            try {
+                jdbcTemplate.query("SELECT id, quantity, expiration_date, category_id FROM " + pantryTenants.itemTable(pantryId) + " WHERE pantry_id = ?",
+                        (RowCallbackHandler) rs -> {
+                            Long categoryId = rs.getObject(4, Long.class);
+                            columns.put(rs.getLong(1), rs.getObject(2, Integer.class), rs.getObject(3, LocalDate.class),
+                                    categoryId != null ? categoryNames.get(categoryId) : null);
+                        }, pantryId);
+                pantry.columns = columns;
+            } finally {
+                pantry.lock.writeLock().unlock();
+            }
+            loaded += columns.size();
+        }
+        ready = true;
+        log.info("Inventory analytics loaded {} items in {} pantries", loaded, pantries.size());
+    }
+
+    @EventListener
+    public void onChange(PantryChangeEvent event) {
+        if (!enabled) {
+            return;
+        }
+        PantryColumns pantry = pantry(event.pantryId());
+        pantry.lock.writeLock().lock();
+        try {
+            InventoryColumns columns = pantry.columns;
+            for (PantryChange change : event.changes()) {
+                switch (change.type()) {
+                    case ADDED, UPDATED -> columns.put(change.itemId(), change.after().quantity(), change.after().expirationDate(),
+                            change.after().category());
+                    case DELETED -> columns.remove(change.itemId());
+                    case ADJUSTED -> columns.adjust(change.itemId(), change.delta());
+                }
+            }
+        } finally {
+            pantry.lock.writeLock().unlock();
+        }
+    }
+
+    // all pantries together
+    public int size() {
+        int size = 0;
+        for (PantryColumns pantry : pantries.values()) {
+            pantry.lock.readLock().lock();
+            try {
+                size += pantry.columns.size();
+            } finally {
+                pantry.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    // the current pantry's items that pass the filter, grouped. the scan runs in parallel for big pantries,
+    // writes to the same pantry wait for it (a 10M row scan is milliseconds)
+    public PantryAnalytics query(InventoryColumns.GroupBy groupBy, InventoryColumns.Filter filter) {
+        LocalDate today = LocalDate.now();
+        PantryColumns pantry = pantries.get(TenantContext.current());
+        if (pantry == null) {
+            return EMPTY.query(groupBy, filter, today);
+        }
+        pantry.lock.readLock().lock();
+        try {
+            return pantry.columns.query(groupBy, filter, today);
+        } finally {
+            pantry.lock.readLock().unlock();
+        }
+    }
+
+    private PantryColumns pantry(String pantryId) {
+        return pantries.computeIfAbsent(pantryId, id -> new PantryColumns());
+    }
+}
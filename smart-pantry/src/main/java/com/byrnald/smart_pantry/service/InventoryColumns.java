@@ -0,0 +1,433 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import com.byrnald.smart_pantry.model.PantryAnalytics;
+
+// a read optimized copy of one pantry's items for the analytics queries, one primitive array per column:
+// quantity (int), expiration date as an epoch day (int, NO_EXPIRY for none) and the category as a dictionary code
+// (int, index into `dictionary`), plus the item id so a change can find its row again.
+// rows stay packed: a removed row gets the last row moved into its place, so a query is one pass over dense arrays
+// with no objects, boxing or nulls in the way. big scans are cut into chunks that run on the fork-join pool,
+// every chunk counts into its own totals and those get added up at the end.
+// ~40 bytes a row with the id lookup, 10M items is about 400MB.
+// not thread safe on its own, InventoryAnalytics does the locking
+public class InventoryColumns {
+
+    public enum GroupBy { NONE, CATEGORY, DAYS_TO_EXPIRY, WEEKS_TO_EXPIRY }
+
+    // null = no filter. expiresFrom/expiresTo are inclusive and any date filter leaves out items without a date,
+    // an unknown category just matches nothing
+    public record Filter(Set<String> categories, LocalDate expiresFrom, LocalDate expiresTo, Integer minQuantity, Integer maxQuantity) {
+
+        public static final Filter NONE = new Filter(null, null, null, null, null);
+    }
+
+    public static final int NO_EXPIRY = Integer.MAX_VALUE;
+
+    static final int CHUNK_ROWS = 1 << 16; // rows per fork-join task, splitting is free next to scanning that many
+    static final int DEFAULT_HISTOGRAM_DAYS = 365; // without dates in the filter the histogram is a year back and a year ahead
+    static final int MAX_BUCKETS = 4096; // a day histogram over decades would make every chunk count into huge arrays
+
+    private static final int NO_CATEGORY = -1;
+    // the histogram's buckets come after these three
+    private static final int UNDATED = 0;
+    private static final int EARLIER = 1;
+    private static final int LATER = 2;
+    private static final int HISTOGRAM = 3;
+
+    private long[] ids;
+    private int[] quantities;
+    private int[] expiries;
+    private int[] categories;
+    private int size;
+    private final RowIndex rowOf = new RowIndex();
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    public InventoryColumns() {
+        this(1024);
+    }
+
+    public InventoryColumns(int capacity) {
+        int initial = Math.max(16, capacity);
+        ids = new long[initial];
+        quantities = new int[initial];
+        expiries = new int[initial];
+        categories = new int[initial];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // adds the item, or overwrites everything we had for it
+    public void put(long id, Integer quantity, LocalDate expirationDate, String category) {
+        int row = rowOf.get(id);
+        if (row < 0) {
+            row = size;
+            ensureCapacity(size + 1);
+            size++;
+            ids[row] = id;
+            rowOf.put(id, row);
+        }
+        quantities[row] = quantity != null ? quantity : 0;
+        expiries[row] = expirationDate != null ? dayOf(expirationDate) : NO_EXPIRY;
+        categories[row] = code(category);
+    }
+
+    // false if the item isn't here
+    public boolean adjust(long id, int delta) {
+        int row = rowOf.get(id);
+        if (row < 0) {
+            return false;
+        }
+        quantities[row] += delta;
+        return true;
+    }
+
+    public void remove(long id) {
+        int row = rowOf.remove(id);
+        if (row < 0) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            quantities[row] = quantities[last];
+            expiries[row] = expiries[last];
+            categories[row] = categories[last];
+            rowOf.put(ids[row], row);
+        }
+    }
+
+    public PantryAnalytics query(GroupBy groupBy, Filter filter, LocalDate today) {
+        return query(groupBy, filter, today, true);
+    }
+
+    // parallel = false keeps the whole scan on the calling thread, small pantries (under two chunks) always do
+    public PantryAnalytics query(GroupBy groupBy, Filter filter, LocalDate today, boolean parallel) {
+        Plan plan = new Plan(groupBy, filter, dayOf(today));
+        int rows = size;
+        int chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        Totals totals;
+        if (!parallel || chunks < 2) {
+            totals = new Totals(plan.buckets);
+            scan(plan, 0, rows, totals);
+        } else {
+            // collect gives every fork-join leaf its own Totals, so the scans never share a counter
+            totals = IntStream.range(0, chunks).parallel().collect(() -> new Totals(plan.buckets),
+                    (partial, chunk) -> scan(plan, chunk * CHUNK_ROWS, Math.min(rows, (chunk + 1) * CHUNK_ROWS), partial),
+                    Totals::add);
+        }
+        return plan.result(totals, today);
+    }
+
+    // the hot loop. locals instead of fields and & instead of && so the body is one straight line without
+    // early exits, which the JIT unrolls well
+    private void scan(Plan plan, int from, int to, Totals totals) {
+        int[] quantities = this.quantities;
+        int[] expiries = this.expiries;
+        int[] categories = this.categories;
+        boolean[] categoryMask = plan.categoryMask;
+        int minQuantity = plan.minQuantity;
+        int maxQuantity = plan.maxQuantity;
+        int fromDay = plan.fromDay;
+        int toDay = plan.toDay;
+        long[] items = totals.items;
+        long[] quantity = totals.quantity;
+        for (int row = from; row < to; row++) {
+            int q = quantities[row];
+            int expiry = expiries[row];
+            int category = categories[row];
+            if ((q >= minQuantity) & (q <= maxQuantity) & (expiry >= fromDay) & (expiry <= toDay) & categoryMask[category + 1]) {
+                int bucket = plan.bucket(expiry, category);
+                items[bucket]++;
+                quantity[bucket] += q;
+            }
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(needed, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        expiries = Arrays.copyOf(expiries, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+    }
+
+    // categories are a handful of names, codes are never given back
+    private int code(String category) {
+        if (category == null) {
+            return NO_CATEGORY;
+        }
+        Integer code = codes.get(category);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(category);
+            codes.put(category, code);
+        }
+        return code;
+    }
+
+    // dates way out (year 999999999) don't fit an int epoch day, they just stick to the ends
+    private static int dayOf(LocalDate date) {
+        return clamp(date.toEpochDay());
+    }
+
+    private static int clamp(long epochDay) {
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(NO_EXPIRY - 1, epochDay));
+    }
+
+    // one query turned into plain ints: the filter bounds, which categories pass and how a row picks its bucket
+    private final class Plan {
+
+        private final GroupBy groupBy;
+        private final boolean byCategory;
+        private final boolean byExpiry;
+        private final int minQuantity;
+        private final int maxQuantity;
+        private final int fromDay;
+        private final int toDay;
+        private final boolean[] categoryMask; // by code + 1, [0] = no category
+        private final int buckets;
+        // the histogram: days from today lowDay..highDay, width days per bucket, firstBucket = lowDay / width.
+        // for the rows it's a lookup table: [0] earlier, [1 + expiry - lowExpiry] the day's bucket, then later, then
+        // no date. a row clamps its day into the table with min/max, no branches on (random) dates, no division
+        private final long lowDay;
+        private final long highDay;
+        private final int width;
+        private final long firstBucket;
+        private final int lowExpiry;
+        private final int highExpiry;
+        private final int[] dayBuckets;
+
+        Plan(GroupBy groupBy, Filter filter, int today) {
+            this.groupBy = groupBy;
+            byCategory = groupBy == GroupBy.CATEGORY;
+            byExpiry = groupBy == GroupBy.DAYS_TO_EXPIRY || groupBy == GroupBy.WEEKS_TO_EXPIRY;
+            minQuantity = filter.minQuantity() != null ? filter.minQuantity() : Integer.MIN_VALUE;
+            maxQuantity = filter.maxQuantity() != null ? filter.maxQuantity() : Integer.MAX_VALUE;
+            boolean dated = filter.expiresFrom() != null || filter.expiresTo() != null;
+            fromDay = filter.expiresFrom() != null ? dayOf(filter.expiresFrom()) : Integer.MIN_VALUE;
+            toDay = filter.expiresTo() != null ? dayOf(filter.expiresTo()) : dated ? NO_EXPIRY - 1 : NO_EXPIRY;
+
+            categoryMask = new boolean[dictionary.size() + 1];
+            if (filter.categories() == null || filter.categories().isEmpty()) {
+                Arrays.fill(categoryMask, true);
+            } else {
+                for (String name : filter.categories()) {
+                    Integer code = codes.get(name);
+                    if (code != null) {
+                        categoryMask[code + 1] = true;
+                    }
+                }
+            }
+
+            // the histogram covers the filter's dates, or two years around them when one (or both) ends are open
+            long window = 2L * DEFAULT_HISTOGRAM_DAYS;
+            if (filter.expiresFrom() != null) {
+                lowDay = (long) fromDay - today;
+                highDay = filter.expiresTo() != null ? (long) toDay - today : lowDay + window;
+            } else if (filter.expiresTo() != null) {
+                highDay = (long) toDay - today;
+                lowDay = highDay - window;
+            } else {
+                lowDay = -DEFAULT_HISTOGRAM_DAYS;
+                highDay = DEFAULT_HISTOGRAM_DAYS;
+            }
+            width = groupBy == GroupBy.WEEKS_TO_EXPIRY ? 7 : 1;
+            firstBucket = Math.floorDiv(lowDay, width);
+            lowExpiry = clamp(today + lowDay);
+            highExpiry = clamp(today + highDay);
+            buckets = switch (groupBy) {
+                case NONE -> 1;
+                case CATEGORY -> dictionary.size() + 1;
+                case DAYS_TO_EXPIRY, WEEKS_TO_EXPIRY -> {
+                    long histogram = Math.max(0, Math.floorDiv(highDay, width) - firstBucket + 1);
+                    if (histogram > MAX_BUCKETS) {
+                        throw new IllegalArgumentException("The date range needs " + histogram + " buckets, at most " + MAX_BUCKETS
+                                + " are allowed (narrow the dates or group by weeks)");
+                    }
+                    yield HISTOGRAM + (int) histogram;
+                }
+            };
+            if (byExpiry) {
+                int days = Math.max(0, highExpiry - lowExpiry + 1);
+                dayBuckets = new int[days + 3];
+                dayBuckets[0] = EARLIER;
+                for (int day = 0; day < days; day++) {
+                    dayBuckets[day + 1] = HISTOGRAM + (int) (Math.floorDiv(lowDay + day, width) - firstBucket);
+                }
+                dayBuckets[days + 1] = LATER;
+                dayBuckets[days + 2] = UNDATED;
+            } else {
+                dayBuckets = null;
+            }
+        }
+
+        int bucket(int expiry, int category) {
+            if (byCategory) {
+                return category + 1;
+            }
+            if (!byExpiry) {
+                return 0;
+            }
+            // NO_EXPIRY clamps to "later" like any far date, the +1 moves it one further to "no date"
+            long day = Math.min(Math.max((long) expiry - lowExpiry + 1, 0), dayBuckets.length - 2);
+            return dayBuckets[(int) day + (expiry == NO_EXPIRY ? 1 : 0)];
+        }
+
+        PantryAnalytics result(Totals totals, LocalDate date) {
+            List<PantryAnalytics.Group> groups = new ArrayList<>();
+            switch (groupBy) {
+                case NONE -> addGroup(groups, "all", totals, 0);
+                case CATEGORY -> {
+                    for (int bucket = 1; bucket < buckets; bucket++) {
+                        addGroup(groups, dictionary.get(bucket - 1), totals, bucket);
+                    }
+                    groups.sort(Comparator.comparing(PantryAnalytics.Group::key));
+                    addGroup(groups, "none", totals, 0);
+                }
+                default -> {
+                    addGroup(groups, "earlier", totals, EARLIER);
+                    for (int bucket = HISTOGRAM; bucket < buckets; bucket++) {
+                        addGroup(groups, Long.toString(firstBucket + bucket - HISTOGRAM), totals, bucket);
+                    }
+                    addGroup(groups, "later", totals, LATER);
+                    addGroup(groups, "none", totals, UNDATED);
+                }
+            }
+            long items = 0;
+            long quantity = 0;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                items += totals.items[bucket];
+                quantity += totals.quantity[bucket];
+            }
+            return new PantryAnalytics(groupBy.name().toLowerCase(Locale.ROOT).replace('_', '-'), date, items, quantity, groups);
+        }
+
+        private static void addGroup(List<PantryAnalytics.Group> groups, String key, Totals totals, int bucket) {
+            if (totals.items[bucket] > 0) {
+                groups.add(new PantryAnalytics.Group(key, totals.items[bucket], totals.quantity[bucket]));
+            }
+        }
+    }
+
+    // item count and quantity sum per bucket
+    private static final class Totals {
+
+        private final long[] items;
+        private final long[] quantity;
+
+        Totals(int buckets) {
+            items = new long[buckets];
+            quantity = new long[buckets];
+        }
+
+        void add(Totals other) {
+            for (int bucket = 0; bucket < items.length; bucket++) {
+                items[bucket] += other.items[bucket];
+                quantity[bucket] += other.quantity[bucket];
+            }
+        }
+    }
+
+    // item id -> row. open addressing over two flat arrays, a HashMap<Long, Integer> would cost more per row
+    // than all the columns together
+    private static final class RowIndex {
+
+        private long[] keys = new long[16];
+        private int[] rows = new int[16]; // row + 1, 0 = empty slot
+        private int size;
+
+        int get(long id) {
+            int mask = keys.length - 1;
+            for (int slot = slot(id, mask); rows[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == id) {
+                    return rows[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        void put(long id, int row) {
+            if ((size + 1) * 4L > keys.length * 3L) { // at most 3/4 full
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            while (rows[slot] != 0 && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (rows[slot] == 0) {
+                size++;
+            }
+            keys[slot] = id;
+            rows[slot] = row + 1;
+        }
+
+        // the row the id was at, -1 if it wasn't here
+        int remove(long id) {
+            int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            while (rows[slot] != 0 && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (rows[slot] == 0) {
+                return -1;
+            }
+            int row = rows[slot] - 1;
+            size--;
+            // pull the rest of the run back into the hole (if that's not before their home slot),
+            // so a lookup never hits an empty slot before it finds its key
+            int hole = slot;
+            for (int next = (hole + 1) & mask; rows[next] != 0; next = (next + 1) & mask) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    rows[hole] = rows[next];
+                    hole = next;
+                }
+            }
+            rows[hole] = 0;
+            return row;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new long[oldKeys.length * 2];
+            rows = new int[oldRows.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldRows[i] != 0) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (rows[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+
+        // ids come from a sequence, so spread them out before masking
+        private static int slot(long id, int mask) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
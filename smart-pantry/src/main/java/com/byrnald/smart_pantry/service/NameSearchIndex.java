@@ -0,0 +1,115 @@
+package com.byrnald.smart_pantry.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// keeps a TrigramIndex of every item name in memory so the dashboard search box and /api/pantry/search
+// don't run a LOWER(name) LIKE '%...%' table scan on every keystroke.
+// loaded once when the app is ready, then kept in sync from PantryChangeEvents like the ExpiryIndex.
+// one TrigramIndex per pantry, so a search only ever sees (and ranks against) its own pantry's names
+@Component
+public class NameSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(NameSearchIndex.class);
+
+    private final PantryRepository pantryRepository;
+    private final PantryTenants pantryTenants;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, TrigramIndex> indexes = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public NameSearchIndex(PantryRepository pantryRepository, PantryTenants pantryTenants) {
+        this.pantryRepository = pantryRepository;
+        this.pantryTenants = pantryTenants;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        int loaded = 0;
+        for (String pantryId : pantryTenants.all()) {
+            // read under the write lock so a change that lands meanwhile goes on top of the snapshot, like the ExpiryIndex
+            List<PantryRepository.NameEntry> entries;
+            lock.writeLock().lock();
+            try {
+                entries = TenantContext.callAs(pantryId, pantryRepository::findNameEntries);
+                TrigramIndex index = indexes.computeIfAbsent(pantryId, id -> new TrigramIndex());
+                for (PantryRepository.NameEntry entry : entries) {
+                    index.put(entry.getId(), entry.getName());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            loaded += entries.size();
+        }
+        ready = true;
+        log.info("Name search index loaded with {} items in {} pantries", loaded, indexes.size());
+    }
+
+    @EventListener
+    public void onChange(PantryChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            TrigramIndex index = indexes.computeIfAbsent(event.pantryId(), id -> new TrigramIndex());
+            for (PantryChange change : event.changes()) {
+                switch (change.type()) {
+                    case ADDED, UPDATED -> index.put(change.itemId(), change.after().name());
+                    case DELETED -> index.remove(change.itemId());
+                    case ADJUSTED -> { } // the name didn't change
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // all pantries together
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return indexes.values().stream().mapToInt(TrigramIndex::size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids of the current pantry's items whose name contains the keyword (ignoring case)
+    public Set<Long> containing(String keyword) {
+        lock.readLock().lock();
+        try {
+            TrigramIndex index = indexes.get(TenantContext.current());
+            return index != null ? index.containing(keyword) : Set.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // best matches first, tolerates typos
+    public List<TrigramIndex.Hit> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            TrigramIndex index = indexes.get(TenantContext.current());
+            return index != null ? index.search(query, limit) : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.byrnald.smart_pantry.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryItemView;
+
+// where a page stops: the sort key + id of its last item.
+// on the wire it's just "<sortKey>\n<id>" in url safe base64, so it can go straight into ?cursor=
+record PageCursor(String sortKey, long id) implements Comparable<PageCursor> {
+
+    static PageCursor of(PantryItem item) { 
+        return new PageCursor(item.getSortKey(), item.getId());
+    }
+
+    static PageCursor of(PantryItemView view) { 
+        return new PageCursor(view.sortKey(), view.id());
+    }
+
+    // null/empty means "first page". anything we didn't hand out ourselves (truncated, edited) is the client's fault,
+    // IllegalArgumentException here and a 400 from the controller
+    static PageCursor decode(String cursor) { 
+        if (cursor == null || cursor.isEmpty()) { 
+            return null;
+        }
+        try { 
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int split = raw.lastIndexOf('\n');
+            return new PageCursor(raw.substring(0, split), Long.parseLong(raw.substring(split + 1)));
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) { 
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    String encode() { 
+        String raw = sortKey + "\n" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static KeysetScrollPosition toScrollPosition(PageCursor cursor) { 
+        if (cursor == null) { 
+            return ScrollPosition.keyset(); // first page
+        }
+        return ScrollPosition.forward(Map.of("sortKey", cursor.sortKey(), "id", cursor.id()));
+    }
+
+    // same order as ORDER BY sort_key, id
+    @Override
+    public int compareTo(PageCursor other) { 
+        int bySortKey = sortKey.compareTo(other.sortKey);
+        return bySortKey != 0 ? bySortKey : Long.compare(id, other.id);
+    }
+}
@@ -0,0 +1,164 @@
+package com.byrnald.smart_pantry.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.Category;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+
+// many small writes in one go, for the cleanup jobs that throw out or adjust thousands of items at a time.
+// the operations are grouped (BatchPlan) so every id that gets the same change shares one set based UPDATE/DELETE,
+// all of it in one transaction: the batch goes in completely or not at all, and it's one PantryChangeEvent after commit.
+// the caller gets a result per operation (OK, NOT_FOUND, INVALID), a bad operation doesn't stop the others
+@Service
+public class PantryBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(PantryBatchService.class);
+
+    // ids per IN (...) list, a cleanup of 50k items is still only a few dozen statements
+    private static final int MAX_IN_LIST = 1000;
+
+    public enum Op { DELETE, ADJUST, SET_CATEGORY, SET_EXPIRY, PURGE_EXPIRED }
+
+    public enum Status { OK, NOT_FOUND, INVALID }
+
+    // one entry of the batch, which fields matter depends on the op:
+    // DELETE id / ADJUST id, delta / SET_CATEGORY id, category / SET_EXPIRY id, expirationDate (null clears it) / PURGE_EXPIRED before
+    public record Operation(Op op, Long id, Integer delta, String category, LocalDate expirationDate, LocalDate before) { }
+
+    // index = position of the operation in the request
+    public record OperationResult(int index, Long id, Status status, String message) { }
+
+    public record BatchResult(int applied, int failed, long purged, List<OperationResult> results) { }
+
+    private final PantryRepository pantryRepository;
+    private final CategoryService categoryService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public PantryBatchService(PantryRepository pantryRepository, CategoryService categoryService, PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher) {
+        this.pantryRepository = pantryRepository;
+        this.categoryService = categoryService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    public BatchResult apply(List<Operation> operations) {
+        // new categories get created outside the batch's transaction, same as the bulk import
+        Map<String, Category> categories = new HashMap<>();
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Operation operation : operations) {
+            if (operation == null || operation.op() == null) {
+                continue;
+            }
+            if (operation.id() != null) {
+                ids.add(operation.id());
+            }
+            if (operation.op() == Op.SET_CATEGORY && operation.category() != null && !operation.category().isBlank()) {
+                categories.computeIfAbsent(operation.category(), categoryService::resolve);
+            }
+        }
+
+        List<PantryChange> purged = new ArrayList<>();
+        Map<Long, Integer> quantities = new HashMap<>();
+        BatchPlan plan = transactionTemplate.execute(status -> {
+            BatchPlan batch = new BatchPlan(operations, load(ids));
+            List<Long> adjusted = new ArrayList<>();
+            batch.adjustments().forEach((delta, group) -> {
+                inChunks(group, chunk -> pantryRepository.adjustQuantities(chunk, delta, PantryItem.LOW_STOCK_THRESHOLD));
+                adjusted.addAll(group);
+            });
+            // what the adjusts left, read while the updates still hold the row locks (PantryChange.quantity)
+            inChunks(adjusted, chunk -> {
+                pantryRepository.findQuantityEntriesByIdIn(chunk).forEach(entry -> quantities.put(entry.getId(), entry.getQuantity()));
+                return 0;
+            });
+            batch.categoryChanges().forEach((category, group) ->
+                    inChunks(group, chunk -> pantryRepository.updateCategory(chunk, categories.get(category))));
+            batch.expiryChanges().forEach((date, group) ->
+                    inChunks(group, chunk -> pantryRepository.updateExpirationDate(chunk, date, PantryItem.expiryKeyOf(date))));
+            inChunks(batch.deletes(), pantryRepository::deleteByIds);
+            if (batch.purgeBefore() != null) {
+                purged.addAll(purge(batch.purgeBefore()));
+            }
+            return batch;
+        });
+
+        // one event for the whole batch, only once it's committed
+        List<PantryChange> changes = plan.changes(quantities);
+        changes.addAll(purged);
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(PantryChangeEvent.of(changes));
+        }
+
+        List<OperationResult> results = plan.results();
+        if (plan.purgeBefore() != null) {
+            String message = purged.size() + " items purged";
+            results.replaceAll(result -> result.status() == Status.OK && result.id() == null
+                    ? new OperationResult(result.index(), null, Status.OK, message)
+                    : result);
+        }
+        int applied = (int) results.stream().filter(result -> result.status() == Status.OK).count();
+        return new BatchResult(applied, results.size() - applied, purged.size(), results);
+    }
+
+    // "throw out everything that expired before X" on its own, same as a batch with just a PURGE_EXPIRED in it
+    public BatchResult purgeExpired(LocalDate before) {
+        return apply(List.of(new Operation(Op.PURGE_EXPIRED, null, null, null, null, before)));
+    }
+
+    // one DELETE for every expired row. the rows are read first (a few columns, not entities) so the indexes and
+    // caches get a DELETED change for each of them. it's the same transaction, but an item added with an already past
+    // date right in between would still be deleted without one, the counts tell us when that happened
+    private List<PantryChange> purge(LocalDate before) {
+        List<PantryRepository.ItemEntry> expired = pantryRepository.findExpiredBefore(before);
+        int deleted = pantryRepository.deleteExpiredBefore(before);
+        if (deleted != expired.size()) {
+            log.warn("Purging items expired before {} deleted {} rows but read {}, the in-memory indexes may be off until the next restart",
+                    before, deleted, expired.size());
+        }
+        List<PantryChange> changes = new ArrayList<>(expired.size());
+        for (PantryRepository.ItemEntry entry : expired) {
+            changes.add(PantryChange.deleted(new PantryChange.ItemState(entry.getId(), entry.getName(), entry.getQuantity(),
+                    entry.getExpirationDate(), entry.getCategory(), entry.getSortKey())));
+        }
+        return changes;
+    }
+
+    // the current state of every id the batch mentions, ids that aren't in this pantry just don't show up
+    private Map<Long, PantryChange.ItemState> load(Collection<Long> ids) {
+        Map<Long, PantryChange.ItemState> states = new HashMap<>();
+        inChunks(ids, chunk -> {
+            for (PantryItem item : pantryRepository.findAllById(chunk)) {
+                states.put(item.getId(), PantryChange.ItemState.of(item));
+            }
+            return 0;
+        });
+        return states;
+    }
+
+    private static void inChunks(Collection<Long> ids, ToIntFunction<List<Long>> statement) {
+        List<Long> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += MAX_IN_LIST) {
+            statement.applyAsInt(all.subList(from, Math.min(from + MAX_IN_LIST, all.size())));
+        }
+    }
+}
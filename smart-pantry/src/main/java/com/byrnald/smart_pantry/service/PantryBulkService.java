@@ -0,0 +1,203 @@
+package com.byrnald.smart_pantry.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.repository.PantryRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+// bulk import/export so we don't have to add a million items one POST at a time.
+// both directions stream: the import reads the request body line by line and the export
+// writes rows as they come off a database cursor, so memory stays flat no matter the size.
+@Service
+public class PantryBulkService {
+
+    public enum Format { CSV, NDJSON }
+
+    public static final int BATCH_SIZE = 500; // keep in sync with spring.jpa.properties.hibernate.jdbc.batch_size
+    private static final int MAX_REPORTED_ERRORS = 100; // we still count every bad line, we just don't list them all
+    private static final int MAX_RECORD_CHARS = 64 * 1024;
+
+    // what the caller gets back, errors are "line N: reason"
+    public record ImportResult(long imported, long rejected, List<String> errors) { }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final PantryRepository pantryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CategoryService categoryService;
+
+    public PantryBulkService(PantryRepository pantryRepository, PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+            ApplicationEventPublisher eventPublisher, CategoryService categoryService) {
+        this.pantryRepository = pantryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.categoryService = categoryService;
+    }
+
+    // reads the body one line at a time and inserts every BATCH_SIZE items in their own transaction.
+    // with the sequence ids + hibernate.jdbc.batch_size that is one JDBC batch per chunk instead of one round trip per row.
+    // bad lines are skipped and reported, the good ones still go in
+    public ImportResult importItems(InputStream body, Format format) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        List<PantryItem> chunk = new ArrayList<>(BATCH_SIZE);
+        List<String> errors = new ArrayList<>();
+        long imported = 0;
+        long rejected = 0;
+        long lineNumber = 0;
+        int[] columns = null; // csv column positions, from the header line if there is one
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                // a quoted csv field with a line break goes on over the next lines (capped, so a stray quote can't eat the whole body)
+                String next;
+                while (format == Format.CSV && PantryCsv.isOpen(line) && line.length() < MAX_RECORD_CHARS && (next = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line + "\n" + next;
+                }
+                try {
+                    PantryItem item;
+                    if (format == Format.CSV) {
+                        List<String> fields = PantryCsv.parseLine(line);
+                        if (columns == null) {
+                            columns = PantryCsv.headerColumns(fields);
+                            if (columns != null) {
+                                continue; // that was the header
+                            }
+                            columns = PantryCsv.DEFAULT_COLUMNS;
+                        }
+                        item = fromCsv(fields, columns);
+                    } else {
+                        item = objectMapper.readValue(line, PantryItem.class);
+                        item.setId(null); // imports always create new items
+                        item.setVersion(null);
+                    }
+                    validate(item);
+                    categoryService.resolve(item); // cached after the first row, new categories get created here outside the chunk's transaction
+                    chunk.add(item);
+                } catch (IllegalArgumentException | DateTimeParseException | JacksonException e) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add("line " + lineNumber + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+
+                if (chunk.size() == BATCH_SIZE) {
+                    imported += insertChunk(chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading the bulk import body failed after line " + lineNumber, e);
+        }
+        if (!chunk.isEmpty()) {
+            imported += insertChunk(chunk);
+        }
+        return new ImportResult(imported, rejected, errors);
+    }
+
+    private int insertChunk(List<PantryItem> chunk) {
+        List<PantryChange> changes = new ArrayList<>(chunk.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (PantryItem item : chunk) {
+                entityManager.persist(item);
+            }
+            // flush sends the inserts as one batch, clear lets the entities go so a 1M row import doesn't pile up in memory
+            entityManager.flush();
+            for (PantryItem item : chunk) {
+                changes.add(PantryChange.added(item));
+            }
+            entityManager.clear();
+        });
+        // one event per chunk, only after the chunk is committed
+        eventPublisher.publishEvent(PantryChangeEvent.of(changes));
+        return chunk.size();
+    }
+
+    // writes every item in id order as it comes off the cursor, detaching each one after it's written
+    // so the persistence context never holds more than the current row
+    public void exportItems(OutputStream out, Format format) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<PantryItem> items = pantryRepository.streamAllByOrderById()) {
+                if (format == Format.CSV) {
+                    writer.write(PantryCsv.HEADER);
+                    writer.write('\n');
+                }
+                items.forEach(item -> {
+                    try {
+                        writer.write(format == Format.CSV ? PantryCsv.formatRow(item) : objectMapper.writeValueAsString(item));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    entityManager.detach(item);
+                });
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static PantryItem fromCsv(List<String> fields, int[] columns) {
+        PantryItem item = new PantryItem();
+        item.setName(PantryCsv.field(fields, columns[PantryCsv.NAME]));
+        String quantity = PantryCsv.field(fields, columns[PantryCsv.QUANTITY]);
+        if (quantity == null) {
+            throw new IllegalArgumentException("quantity is missing");
+        }
+        item.setQuantity(Integer.valueOf(quantity.trim()));
+        String expirationDate = PantryCsv.field(fields, columns[PantryCsv.EXPIRATION_DATE]);
+        item.setExpirationDate(expirationDate != null ? LocalDate.parse(expirationDate.trim()) : null);
+        item.setCategory(PantryCsv.field(fields, columns[PantryCsv.CATEGORY]));
+        return item;
+    }
+
+    private static void validate(PantryItem item) {
+        if (item.getName() == null || item.getName().isBlank()) {
+            throw new IllegalArgumentException("name is required");
+        }
+        if (item.getQuantity() == null) {
+            throw new IllegalArgumentException("quantity is required");
+        }
+    }
+}
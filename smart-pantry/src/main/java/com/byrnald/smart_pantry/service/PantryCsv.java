@@ -0,0 +1,109 @@
+package com.byrnald.smart_pantry.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+
+// tiny CSV reader/writer for the bulk import/export, one record at a time (RFC 4180 quoting). a record is one line
+// unless a quoted field has a line break in it, the importer keeps reading lines while isOpen says a quote is still open.
+// columns are name, quantity, expirationDate, category, an optional header line can reorder them
+// and an "id" column (like the one the export writes) is just ignored on import
+final class PantryCsv {
+
+    static final String HEADER = "id,name,quantity,expirationDate,category";
+
+    // indexes into the column map
+    static final int NAME = 0;
+    static final int QUANTITY = 1;
+    static final int EXPIRATION_DATE = 2;
+    static final int CATEGORY = 3;
+    static final int[] DEFAULT_COLUMNS = { 0, 1, 2, 3 };
+
+    private PantryCsv() {
+    }
+
+    static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"'); // "" inside quotes is a literal quote
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    // true while the record has an odd number of quotes, i.e. a quoted field is still going on the next line
+    static boolean isOpen(String record) {
+        int quotes = 0;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes % 2 != 0;
+    }
+
+    // if the first line is a header, returns where each column is, otherwise null
+    static int[] headerColumns(List<String> fields) {
+        int[] columns = { -1, -1, -1, -1 };
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "name" -> columns[NAME] = i;
+                case "quantity" -> columns[QUANTITY] = i;
+                case "expirationdate", "expiration_date" -> columns[EXPIRATION_DATE] = i;
+                case "category" -> columns[CATEGORY] = i;
+                default -> { } // id or anything else we don't import
+            }
+        }
+        return columns[NAME] >= 0 ? columns : null;
+    }
+
+    // empty cells and missing columns both come back as null
+    static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size() || fields.get(index).isEmpty()) {
+            return null;
+        }
+        return fields.get(index);
+    }
+
+    static String formatRow(PantryItem item) {
+        return item.getId() + ","
+                + escape(item.getName()) + ","
+                + (item.getQuantity() != null ? item.getQuantity() : "") + ","
+                + (item.getExpirationDate() != null ? item.getExpirationDate() : "") + ","
+                + escape(item.getCategory());
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -1,45 +1,134 @@
 package com.byrnald.smart_pantry.service;
 
 import java.time.LocalDate;
-import java.util.Comparator; // Added for sorting
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors; // Added for sorting
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.CategoryStatsView;
+import com.byrnald.smart_pantry.model.DashboardView;
+import com.byrnald.smart_pantry.model.ItemForecast;
 import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryItemView;
+import com.byrnald.smart_pantry.model.PantryPage;
+import com.byrnald.smart_pantry.model.PantryViewPage;
 import com.byrnald.smart_pantry.repository.PantryRepository;
 
 @Service // this just contains the logic for our application, it acts as the middle man for our controller.
 // The controller will call the service, and the service will call the repository to interact with the database
 // when we setup service we create an instance of this class.
 public class PantryService {
+    private static final Logger log = LoggerFactory.getLogger(PantryService.class);
+
     /// we need to inject the PantryRepository into this service so that we
     //  can use it to interact with the database. We do this through constructor injection, 
     // which is a common pattern in spring boot applications. This allows us to easily 
     // test our service by mocking the repository if needed.
     private final PantryRepository pantryRepository;
+    private final QuantityCounterBuffer quantityBuffer;
+    private final ExpiryIndex expiryIndex;
+    private final DashboardCache dashboardCache;
+    private final NameSearchIndex nameSearchIndex;
+    private final CategoryService categoryService;
+    private final CategoryStatsService categoryStatsService;
+    private final QueryFanOut queryFanOut;
+    private final ConsumptionForecast consumptionForecast;
+    // every write below publishes a PantryChangeEvent so the in-memory indexes (like ExpiryIndex) stay in sync
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
 
-    public static final int DEFAULT_THRESHOLD = 5; // we can adjust this threshold as needed, but for now we will just set it to 5
+    public static final int DEFAULT_THRESHOLD = PantryItem.LOW_STOCK_THRESHOLD; // we can adjust this threshold as needed, but for now we will just set it to 5
     //this is synchronizing the low stock threshold across the service, so that we can easily change it in one place if we need to
+    //(it lives on PantryItem now because the sort key stored in the database depends on it too)
+
+    public static final int EXPIRING_SOON_DAYS = 3; // "expiring soon" means today up to 3 days from now
+
+    // if a keyword (or the urgent list) matches more items than this, the IN (...) list gets silly and the plain query is fine again
+    private static final int MAX_INDEXED_MATCHES = 1000;
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
 
-    public PantryService(PantryRepository pantryRepository) {
+    // the "smart sort" order, the database does it now using the sort key + id (id breaks ties so the cursor is unique)
+    private static final Sort SMART_SORT = Sort.by("sortKey", "id");
+
+    public PantryService(PantryRepository pantryRepository, QuantityCounterBuffer quantityBuffer, ExpiryIndex expiryIndex,
+            DashboardCache dashboardCache, NameSearchIndex nameSearchIndex, CategoryService categoryService,
+            CategoryStatsService categoryStatsService, QueryFanOut queryFanOut, ConsumptionForecast consumptionForecast,
+            ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
         this.pantryRepository = pantryRepository;
+        this.quantityBuffer = quantityBuffer;
+        this.expiryIndex = expiryIndex;
+        this.dashboardCache = dashboardCache;
+        this.nameSearchIndex = nameSearchIndex;
+        this.categoryService = categoryService;
+        this.categoryStatsService = categoryStatsService;
+        this.queryFanOut = queryFanOut;
+        this.consumptionForecast = consumptionForecast;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public PantryPage getAllItems(String cursor, int size) {
+        // UPDATED: the database hands back one sorted page at a time, we never load the whole table anymore
+        return toPage(pantryRepository.findAllBy(PageCursor.toScrollPosition(PageCursor.decode(cursor)), SMART_SORT, pageLimit(size)));
     }
 
-    public List<PantryItem> getAllItems() {
-        // UPDATED: Now we sort the items before returning them
-        List<PantryItem> allItems = pantryRepository.findAll();
-        return sortItems(allItems);
+    // what /api/pantry returns: the same page as getAllItems, read as PantryItemViews instead of entities
+    public PantryViewPage getItemViews(String cursor, int size) { 
+        PageCursor after = PageCursor.decode(cursor);
+        int pageSize = pageLimit(size).max();
+        Limit limit = Limit.of(pageSize + 1); // one extra row tells us whether there is a next page
+        List<PantryItemView> views = after == null
+                ? pantryRepository.findViews(limit)
+                : pantryRepository.findViewsAfter(after.sortKey(), after.id(), limit);
+        if (views.size() <= pageSize) { 
+            return new PantryViewPage(views, null);
+        }
+        List<PantryItemView> page = views.subList(0, pageSize);
+        return new PantryViewPage(page, PageCursor.of(page.get(pageSize - 1)).encode());
+    }
+
+    public Optional<PantryItem> getItem(Long id) { 
+        return pantryRepository.findById(id);
     }
 
     public PantryItem addItem(PantryItem item) {
-        return pantryRepository.save(item);
+        item.setVersion(null); // always a new item, a version from the request body would make save() try to merge it
+        categoryService.resolve(item); // "Pantry" -> the Pantry row in the category table
+        PantryItem saved = pantryRepository.save(item);
+        eventPublisher.publishEvent(PantryChangeEvent.of(PantryChange.added(saved)));
+        return saved;
     }
 
     public List<PantryItem> getExpiringSoon() {
+        if (expiryIndex.isReady()) { 
+            // the index already knows the ids, so this is one lookup by primary key instead of a date range scan
+            return pantryRepository.findAllById(expiryIndex.expiringWithin(EXPIRING_SOON_DAYS));
+        }
         LocalDate today = LocalDate.now();
-        LocalDate threeDaysFromNow = today.plusDays(3);
+        LocalDate threeDaysFromNow = today.plusDays(EXPIRING_SOON_DAYS);
         //this method calls the findByExpirationDateBetween method in the PantryRepository 
         /// which retrieves all pantry items that have an expiration date between today and three days from now.
         return pantryRepository.findByExpirationDateBetween(today, threeDaysFromNow);
@@ -64,117 +153,259 @@ public class PantryService {
     //until it finds the item with the ID.
 
     public void deleteItem(Long id) { 
-        if (pantryRepository.existsById(id)) { 
-            pantryRepository.deleteById(id);
+        //findById instead of existsById so we know what got deleted (the indexes need the old expiration date etc.)
+        Optional<PantryItem> existing = pantryRepository.findById(id);
+        if (existing.isPresent()) { 
+            PantryChange.ItemState before = PantryChange.ItemState.of(existing.get());
+            pantryRepository.delete(existing.get());
+            eventPublisher.publishEvent(PantryChangeEvent.of(PantryChange.deleted(before)));
         } else { 
-            //we could throw an exception here but for now we will just print out a message
-            System.out.println("Item with id " + id + " not found.");
+            //we could throw an exception here but for now we will just log it
+            log.warn("Item with id {} not found, nothing deleted", id);
         }
     }
 
     public PantryItem updateItem(Long id, PantryItem newItemData) { 
+        return editItem(id, newItemData).orElseThrow(() -> new RuntimeException("Item with id: " + id));
+    }
+
+    // same as updateItem but an unknown id just gives back an empty Optional (the dashboard edit form uses this)
+    // if newItemData has a version (from If-Match, the edit form or the json body) the edit only goes through
+    // while the item is still at that version, otherwise it throws ObjectOptimisticLockingFailureException.
+    // without a version it's the old "last write wins" update
+    public Optional<PantryItem> editItem(Long id, PantryItem newItemData) { 
         return pantryRepository.findById(id).map(item -> {
+            if (newItemData.getVersion() != null && !newItemData.getVersion().equals(item.getVersion())) { 
+                throw new ObjectOptimisticLockingFailureException(PantryItem.class, id);
+            }
+            // save() checks the version again in the UPDATE itself, that catches an edit sneaking in between the read and the write
+            PantryChange.ItemState before = PantryChange.ItemState.of(item);
             item.setName(newItemData.getName());
             item.setQuantity(newItemData.getQuantity());
             item.setExpirationDate(newItemData.getExpirationDate());
-            return pantryRepository.save(item);
-        }).orElseThrow(() -> new RuntimeException("Item with id: " + id));
+            if (newItemData.getCategory() != null) { //the api lets you leave the category out and keep the old one
+                item.setCategory(newItemData.getCategory());
+                categoryService.resolve(item);
+            }
+            PantryItem saved = pantryRepository.save(item);
+            eventPublisher.publishEvent(PantryChangeEvent.of(PantryChange.updated(before, saved)));
+            return saved;
+        });
     }
     
     public List<PantryItem> getLowStockItems(int threshold) { 
         return pantryRepository.findByQuantityLessThanEqual(threshold);
     }
 
+    // same thing but every item gets its own threshold from the consumption forecast
+    // (things we go through fast are "low" a lot sooner than things that sit on the shelf)
+    public List<PantryItem> getLowStockItems() { 
+        if (!consumptionForecast.isReady()) { 
+            return getLowStockItems(DEFAULT_THRESHOLD);
+        }
+        Set<Long> ids = consumptionForecast.lowStockIds();
+        return ids.isEmpty() ? List.of() : pantryRepository.findAllById(ids);
+    }
+
+    // null while the forecast isn't loaded yet, the dashboard then falls back to the static threshold
+    public Set<Long> getLowStockIds() { 
+        return consumptionForecast.isReady() ? consumptionForecast.lowStockIds() : null;
+    }
+
+    public List<ItemForecast> getForecasts() { 
+        return consumptionForecast.forecasts();
+    }
+
+    public Optional<ItemForecast> getForecast(Long id) { 
+        return consumptionForecast.forecast(id);
+    }
+
     public List<PantryItem> getUrgentItems()  {
-        LocalDate start = LocalDate.of(2000, 1, 1); //old date to make sure we get all items that are expired
-        LocalDate end = LocalDate.now().plusDays(3); // we want to get all items that are expiring in the next 3 days
+        if (expiryIndex.isReady()) { 
+            // the index hands us the expired + expiring ids, those are read by primary key. the low stock ones come
+            // from the forecast's ids or from idx_pantry_item_pantry_quantity, two index lookups instead of one
+            // "id in (...) or quantity <= ?" that scans the table
+            Set<Long> ids = new LinkedHashSet<>(expiryIndex.expired());
+            ids.addAll(expiryIndex.expiringWithin(EXPIRING_SOON_DAYS));
+            boolean forecastReady = consumptionForecast.isReady();
+            if (forecastReady) { 
+                // the forecast already knows who is low by their own threshold, so it's all ids and no quantity filter
+                ids.addAll(consumptionForecast.lowStockIds());
+            }
+            // expired items pile up in a pantry nobody cleans out, past this many ids it's the date range query below again
+            if (ids.size() <= MAX_INDEXED_MATCHES) { 
+                Map<Long, PantryItem> urgent = new LinkedHashMap<>();
+                if (!ids.isEmpty()) { 
+                    pantryRepository.findAllById(ids).forEach(item -> urgent.put(item.getId(), item));
+                }
+                if (!forecastReady) { 
+                    pantryRepository.findByQuantityLessThanEqual(DEFAULT_THRESHOLD).forEach(item -> urgent.putIfAbsent(item.getId(), item));
+                }
+                return new ArrayList<>(urgent.values());
+            }
+        }
+
+        LocalDate end = LocalDate.now().plusDays(EXPIRING_SOON_DAYS); // we want to get all items that are expiring in the next 3 days
 
-        // we start with an old date to make sure we get all items
-        //then we set the end date to 3 days from now to get all items that are expiring soon 
+        // no start date, everything that already expired counts however long ago that was
+        // (it used to start at 2000-01-01 and anything older slipped through).
+        // the end date is 3 days from now to get all items that are expiring soon 
         // so anything that expires in 3 days or less will be considered urgent
 
         // so for example our eggs expire the 16th of jan
         // so eggs would show up as urgent on the 13th, 14th and 15th of jan
 
-        List<PantryItem> expiringUrgent = pantryRepository.findByExpirationDateBetween(start, end);
-        List<PantryItem> lowStock = pantryRepository.findByQuantityLessThanEqual(DEFAULT_THRESHOLD);
+        // the two queries don't depend on each other, with fan-out on they run at the same time
+        try (QueryFanOut.Scope scope = queryFanOut.open()) {
+            Supplier<List<PantryItem>> expiringUrgent = scope.fork(() -> pantryRepository.findByExpirationDateLessThanEqual(end));
+            Supplier<List<PantryItem>> lowStock = scope.fork(() -> pantryRepository.findByQuantityLessThanEqual(DEFAULT_THRESHOLD));
+            scope.join();
 
-        java.util.Set<PantryItem> urgentSet = new java.util.HashSet<>(expiringUrgent);
-        urgentSet.addAll(lowStock);
+            java.util.Set<PantryItem> urgentSet = new java.util.HashSet<>(expiringUrgent.get());
+            urgentSet.addAll(lowStock.get());
 
-        return new java.util.ArrayList<>(urgentSet);
+            return new java.util.ArrayList<>(urgentSet);
+        }
     }
 
     //now we are going to add a method for restocking items so that we can easily update the quantity of an item 
     //when we restock it, instead of having to update the entire item with the updateItem method, we can just 
     //update the quantity with this method
     public void restockItem(Long id) { 
-        pantryRepository.findById(id).ifPresent(item -> {
-            item.setQuantity(item.getQuantity() + 1); //we can adjust the restock amount we want, for now 1
-            pantryRepository.save(item);
-        });
+        adjustQuantity(id, 1); //we can adjust the restock amount we want, for now 1
     }
-    //find by id looks for the item in the database
-    //ifpresent is just a safety check if it item exists it runs the code inside.
-    //item.setQuantity takes the current number and adds 1
-    //pantryRepository.save sends the updated itme back to the database to commit the change
 
     //now that the featur to add (restock) is added, now we make a method to subtract
     public void substractItem(Long id) { 
-        pantryRepository.findById(id).ifPresent(item -> {
-            item.setQuantity(item.getQuantity() - 1); //just by 1
-            pantryRepository.save(item);
-        });
+        adjustQuantity(id, -1); //just by 1
+    }
+
+    // this used to be findById -> setQuantity -> save, two round trips per click and two scanners
+    // could overwrite each other. now the database does "quantity = quantity + delta" in one statement.
+    // with write-behind turned on the change is only buffered and written on the next flush (the item is checked
+    // first, an item deleted before the flush just gets nothing written).
+    // returns false when the item doesn't exist, IllegalArgumentException when the buffered total would overflow
+    public boolean adjustQuantity(Long id, int delta) { 
+        if (delta == 0) { 
+            return pantryRepository.existsById(id);
+        }
+        if (quantityBuffer.isEnabled()) { 
+            if (!pantryRepository.existsById(id)) { 
+                return false;
+            }
+            quantityBuffer.add(id, delta); // the buffer publishes the change when it flushes
+            return true;
+        }
+        // the quantity is read back before the commit, while the update still has the row locked
+        List<PantryRepository.QuantityEntry> after = transactionTemplate.execute(status -> 
+                pantryRepository.adjustQuantity(id, delta, DEFAULT_THRESHOLD) == 0 ? null : pantryRepository.findQuantityEntriesByIdIn(List.of(id)));
+        if (after == null) { 
+            return false;
+        }
+        Integer quantity = after.isEmpty() ? null : after.get(0).getQuantity();
+        eventPublisher.publishEvent(PantryChangeEvent.of(PantryChange.adjusted(id, delta, quantity)));
+        return true;
+    }
+
+    public boolean isWriteBehind() { 
+        return quantityBuffer.isEnabled();
     }
 
     public void saveItem(PantryItem item) { 
-        pantryRepository.save(item);
+        addItem(item);
     }
 
     //we need a method that decides which repository method to call based on what the user types
-    public List<PantryItem> searchItems(String keyword, String category) { 
-        List<PantryItem> results;
+    //the cursor is whatever nextCursor the previous page gave back (null for the first page)
+    public PantryPage searchItems(String keyword, String category, String cursor, int size) { 
+        ScrollPosition position = PageCursor.toScrollPosition(PageCursor.decode(cursor));
+        Limit limit = pageLimit(size);
+        Window<PantryItem> results;
+
+        boolean hasKeyword = keyword != null && !keyword.isEmpty();
+        boolean hasCategory = category != null && !category.equals("All");
+        Long categoryId = hasCategory ? categoryService.idOf(category) : null;
+        if (hasCategory && categoryId == null) { 
+            return new PantryPage(List.of(), null); // nobody ever used that category
+        }
+        if (hasKeyword && nameSearchIndex.isReady()) { 
+            // the name index finds the matching ids in memory, the database only pages through those ids
+            Set<Long> ids = nameSearchIndex.containing(keyword);
+            if (ids.isEmpty()) { 
+                return new PantryPage(List.of(), null);
+            }
+            if (ids.size() <= MAX_INDEXED_MATCHES) { 
+                results = hasCategory
+                        ? pantryRepository.findByCategoryIdAndIdIn(categoryId, ids, position, SMART_SORT, limit)
+                        : pantryRepository.findByIdIn(ids, position, SMART_SORT, limit);
+                return toPage(results);
+            }
+        }
         
-        if (keyword != null && !keyword.isEmpty() && category != null && !category.equals("All")) {
-            results = pantryRepository.findByCategoryAndNameContainingIgnoreCase(category, keyword);
-        } else if (category != null && !category.equals("All")) { //only category filter/search
-            results = pantryRepository.findByCategory(category);
-        } else if (keyword != null && !keyword.isEmpty()) { //only search
-            results = pantryRepository.findByNameContainingIgnoreCase(keyword);
+        if (hasKeyword && hasCategory) {
+            results = pantryRepository.findByCategoryIdAndNameContainingIgnoreCase(categoryId, keyword, position, SMART_SORT, limit);
+        } else if (hasCategory) { //only category filter/search
+            results = pantryRepository.findByCategoryId(categoryId, position, SMART_SORT, limit);
+        } else if (hasKeyword) { //only search
+            results = pantryRepository.findByNameContainingIgnoreCase(keyword, position, SMART_SORT, limit);
         } else { // this just shows everything, no filters
-            results = pantryRepository.findAll();
+            results = pantryRepository.findAllBy(position, SMART_SORT, limit);
         }
         
-        // sort whatever results we found before sending them back
-        return sortItems(results);
+        // results already come back sorted from the database
+        return toPage(results);
+    }
+
+    // ranked search for /api/pantry/search, best match first and typos are ok ("egs" finds "Eggs")
+    public List<PantryItem> rankedSearch(String query, int limit) { 
+        if (query == null || query.isBlank()) { 
+            return List.of();
+        }
+        List<TrigramIndex.Hit> hits = nameSearchIndex.search(query, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        Map<Long, Integer> rank = new HashMap<>();
+        for (int i = 0; i < hits.size(); i++) { 
+            rank.put(hits.get(i).id(), i);
+        }
+        // one lookup by primary key, then put them back in rank order
+        List<PantryItem> items = new ArrayList<>(pantryRepository.findAllById(rank.keySet()));
+        items.sort(Comparator.comparingInt(item -> rank.get(item.getId())));
+        return items;
+    }
+
+    // what the dashboard shows: one page of (filtered) items plus the urgent list.
+    // both come from the DashboardCache, the database is only hit when a write evicted the entry
+    // (PantryChangeEvents from the methods above take care of that).
+    // the page, the urgent list and the category stats don't depend on each other, so with fan-out on
+    // a cache miss waits for the slowest query instead of all of them one after another
+    public DashboardView getDashboard(String keyword, String category, String cursor) { 
+        try (QueryFanOut.Scope scope = queryFanOut.open()) {
+            Supplier<PantryPage> page = scope.fork(() -> dashboardCache.page(keyword, category, cursor, () -> searchItems(keyword, category, cursor, DEFAULT_PAGE_SIZE)));
+            Supplier<List<PantryItem>> urgentItems = scope.fork(() -> dashboardCache.urgentItems(this::getUrgentItems));
+            Supplier<List<CategoryStatsView>> categoryStats = scope.fork(categoryStatsService::getStats);
+            scope.join();
+            Set<Long> urgentIds = dashboardCache.urgentIds(this::getUrgentItems); // cached by the urgentItems call above
+            return new DashboardView(page.get(), urgentItems.get(), urgentIds, categoryStats.get());
+        }
     }
 
-    // the smart sorting logic/algo
-    // this private helper method handles the sorting logic so we dont overdo the main methods
-    private List<PantryItem> sortItems(List<PantryItem> items) {
-        Comparator<PantryItem> smartSort = (item1, item2) -> {
-            boolean item1Low = item1.getQuantity() <= DEFAULT_THRESHOLD;
-            boolean item2Low = item2.getQuantity() <= DEFAULT_THRESHOLD;
+    public DashboardCache.Stats getDashboardCacheStats() { 
+        return dashboardCache.stats();
+    }
 
-            // if low stock always floats to the top
-            if (item1Low && !item2Low) return -1; // item1 comes first
-            if (!item1Low && item2Low) return 1;  // item2 comes first
+    // the smart sorting logic/algo used to be a java Comparator here (sortItems), it is now PantryItem.sortKeyOf
+    // and the database sorts by it, so page 50 costs the same as page 1.
 
-            // if neither (or both) are low stock, sort by Expiration Date
-            if (item1.getExpirationDate() != null && item2.getExpirationDate() != null) {
-                return item1.getExpirationDate().compareTo(item2.getExpirationDate());
-            }
-            
-            // null dates (like cables) go to the bottom
-            if (item1.getExpirationDate() == null && item2.getExpirationDate() != null) return 1;
-            if (item1.getExpirationDate() != null && item2.getExpirationDate() == null) return -1;
-
-            // else if no rules go over then just sort alphabetically
-            return item1.getName().compareToIgnoreCase(item2.getName());
-        };
-        return items.stream()
-                    .sorted(smartSort)
-                    .collect(Collectors.toList());
+    private static Limit pageLimit(int size) { 
+        return Limit.of(Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+    }
+
+    private static PantryPage toPage(Window<PantryItem> window) { 
+        List<PantryItem> items = window.getContent();
+        String nextCursor = null;
+        if (window.hasNext() && !items.isEmpty()) { 
+            nextCursor = PageCursor.of(items.get(items.size() - 1)).encode();
+        }
+        return new PantryPage(items, nextCursor);
     }
 
 }
\ No newline at end of file
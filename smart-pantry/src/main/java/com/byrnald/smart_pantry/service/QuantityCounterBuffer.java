@@ -0,0 +1,204 @@
+package com.byrnald.smart_pantry.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.tenant.PantryTenants;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+
+// write-behind mode for quantity changes (pantry.write-behind.enabled=true).
+// barcode scanners send lots of +1/-1 clicks for the same few items, so instead of one UPDATE per click
+// we add them up per item in memory and write the totals every flush interval in one JDBC batch.
+// so 40 scans of the same item in 250ms turn into a single "quantity = quantity + 40".
+// the trade off is that reads can be behind by up to one flush interval.
+// totals are kept per pantry, every pantry's flush is its own batch and its own PantryChangeEvent
+@Component
+public class QuantityCounterBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuantityCounterBuffer.class);
+
+    // same statement as PantryRepository.adjustQuantity, just in plain SQL so it can be batched.
+    // plain JDBC doesn't get hibernate's tenant filter, so the pantry is in the where clause by hand (%s is PantryTenants.itemTable)
+    private static final String ADJUST_SQL = "UPDATE %s SET quantity = quantity + ?, "
+            + "sort_key = CASE WHEN quantity + ? <= ? THEN '0' ELSE '1' END || SUBSTRING(sort_key, 2), "
+            + "version = version + 1 "
+            + "WHERE id = ? AND pantry_id = ?";
+
+    // what the flushed totals left, read in the flush's transaction (PantryChange.quantity). the second %s is the ?s
+    private static final String QUANTITY_SQL = "SELECT id, quantity FROM %s WHERE pantry_id = ? AND id IN (%s)";
+    private static final int MAX_IN_LIST = 1000;
+
+    // ConcurrentHashMap locks per hash bin, so counters for different items are striped and don't block each other
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Long, Integer>> pending = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PantryTenants pantryTenants;
+    private final boolean enabled;
+
+    public QuantityCounterBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory,
+            ApplicationEventPublisher eventPublisher, PantryTenants pantryTenants, @Value("${pantry.write-behind.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManagerFactory = entityManagerFactory;
+        this.eventPublisher = eventPublisher;
+        this.pantryTenants = pantryTenants;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() { 
+        return enabled;
+    }
+
+    // buffers the change for the current pantry. a change that would take the buffered total past what an int holds
+    // is turned away (IllegalArgumentException) and the total stays as it was
+    public void add(Long id, int delta) { 
+        // +1 then -1 cancel out, and a zero total just drops the entry
+        pending.computeIfAbsent(TenantContext.current(), p -> new ConcurrentHashMap<>()).merge(id, delta, (a, b) -> { 
+            try { 
+                int total = Math.addExact(a, b);
+                return total == 0 ? null : total;
+            } catch (ArithmeticException e) { 
+                throw new IllegalArgumentException("Adjusting item " + id + " by " + b + " overflows its quantity");
+            }
+        });
+    }
+
+    public int pendingItems() { 
+        return pending.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Scheduled(fixedDelayString = "${pantry.write-behind.flush-interval-ms:250}")
+    public void flush() { 
+        // the event listeners open hibernate sessions, those have to be for the pantry being flushed
+        pending.forEach((pantryId, totals) -> TenantContext.runAs(pantryId, () -> flush(pantryId, totals)));
+    }
+
+    private void flush(String pantryId, ConcurrentHashMap<Long, Integer> totals) { 
+        if (totals.isEmpty()) { 
+            return;
+        }
+        // remove() hands us the total and clears it in one step, so a click that lands mid flush just starts a new total
+        List<Map.Entry<Long, Integer>> drained = new ArrayList<>();
+        for (Long id : totals.keySet()) { 
+            Integer delta = totals.remove(id);
+            if (delta != null) { 
+                drained.add(Map.entry(id, delta));
+            }
+        }
+        if (drained.isEmpty()) { 
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(drained.size());
+        for (Map.Entry<Long, Integer> entry : drained) { 
+            args.add(new Object[] { entry.getValue(), entry.getValue(), PantryItem.LOW_STOCK_THRESHOLD, entry.getKey(), pantryId });
+        }
+        String table = pantryTenants.itemTable(pantryId);
+        String sql = ADJUST_SQL.formatted(table);
+        Map<Long, Integer> quantities = new HashMap<>();
+        int[] updated;
+        try { 
+            // one transaction for the whole batch: if a statement fails none of them stay applied
+            updated = transactionTemplate.execute(status -> { 
+                int[] counts = jdbcTemplate.batchUpdate(sql, args);
+                readQuantities(table, pantryId, drained, quantities);
+                return counts;
+            });
+        } catch (RuntimeException e) { 
+            // one total that can never be written (quantity + total overflows the column, say) fails the whole batch.
+            // so the rest still gets saved every row is tried on its own, one that fails again is dropped:
+            // putting it back would just fail every flush from now on and hold up the whole pantry
+            log.warn("Flushing {} buffered quantity changes of pantry {} as one batch failed, writing them one by one", drained.size(), pantryId, e);
+            quantities.clear();
+            updated = new int[args.size()];
+            for (int i = 0; i < args.size(); i++) { 
+                int row = i;
+                try { 
+                    updated[i] = transactionTemplate.execute(status -> { 
+                        int count = jdbcTemplate.update(sql, args.get(row));
+                        readQuantities(table, pantryId, List.of(drained.get(row)), quantities);
+                        return count;
+                    });
+                } catch (RuntimeException rowFailure) { 
+                    log.error("Dropped buffered quantity change {} for item {} of pantry {}", drained.get(i).getValue(), drained.get(i).getKey(),
+                            pantryId, rowFailure);
+                }
+            }
+        }
+        // the batch went around hibernate, so its caches don't know these rows changed
+        evictCached(pantryId, drained);
+
+        // one event for the whole flush, ids that were deleted in the meantime (0 rows updated) are left out
+        List<PantryChange> changes = new ArrayList<>(drained.size());
+        for (int i = 0; i < drained.size(); i++) { 
+            if (i >= updated.length || updated[i] != 0) { 
+                Long id = drained.get(i).getKey();
+                changes.add(PantryChange.adjusted(id, drained.get(i).getValue(), quantities.get(id)));
+            }
+        }
+        if (!changes.isEmpty()) { 
+            eventPublisher.publishEvent(new PantryChangeEvent(pantryId, changes));
+        }
+    }
+
+    // the rows are still locked by the updates, so this is exactly what each total left
+    private void readQuantities(String table, String pantryId, List<Map.Entry<Long, Integer>> entries, Map<Long, Integer> quantities) { 
+        for (int from = 0; from < entries.size(); from += MAX_IN_LIST) { 
+            List<Map.Entry<Long, Integer>> chunk = entries.subList(from, Math.min(from + MAX_IN_LIST, entries.size()));
+            Object[] params = new Object[chunk.size() + 1];
+            params[0] = pantryId;
+            for (int i = 0; i < chunk.size(); i++) { 
+                params[i + 1] = chunk.get(i).getKey();
+            }
+            jdbcTemplate.query(QUANTITY_SQL.formatted(table, String.join(", ", Collections.nCopies(chunk.size(), "?"))),
+                    (RowCallbackHandler) rs -> quantities.put(rs.getLong(1), rs.getObject(2, Integer.class)), params);
+        }
+    }
+
+    // just the flushed items from the entity cache, the cached query results all go (they might contain any of them).
+    // the cache keys include the pantry, which Cache.evict(class, id) doesn't know, so the keys are built by hand
+    private void evictCached(String pantryId, List<Map.Entry<Long, Integer>> drained) { 
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(PantryItem.class);
+        EntityDataAccess access = persister.getCacheAccessStrategy();
+        if (access != null) { 
+            for (Map.Entry<Long, Integer> entry : drained) { 
+                access.evict(access.generateCacheKey(entry.getKey(), persister, sessionFactory, pantryId));
+            }
+        }
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictDefaultQueryRegion();
+    }
+
+    // don't lose whatever is still buffered when the app shuts down
+    @PreDestroy
+    public void flushOnShutdown() { 
+        flush();
+    }
+}
@@ -0,0 +1,119 @@
+package com.byrnald.smart_pantry.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.byrnald.smart_pantry.config.StatementCounter;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+import jakarta.annotation.PreDestroy;
+
+// runs independent queries at the same time, each on its own virtual thread, so a page that needs three
+// queries waits for the slowest one instead of all three in a row.
+// used like a structured task scope: fork the tasks, join, read the results, close. if one task fails the
+// others are cancelled and join throws. (java 21's StructuredTaskScope is still a preview api, this is the same
+// idea on a plain virtual thread executor.)
+// with pantry.fan-out.enabled=false (the default) fork just runs the task right away on the caller's thread
+@Component
+public class QueryFanOut {
+
+    private final ExecutorService executor; // null when fan-out is off
+
+    public QueryFanOut(@Value("${pantry.fan-out.enabled:false}") boolean enabled) {
+        this.executor = enabled ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    public Scope open() {
+        return new Scope();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.close(); // waits for whatever is still running
+        }
+    }
+
+    public final class Scope implements AutoCloseable {
+
+        private final List<Future<?>> futures = new ArrayList<>();
+        // statements the forked tasks ran, handed back to the request thread so pantry.http.statements stays right.
+        // the forked tasks also run for the request's pantry, their hibernate sessions would be for the default one otherwise
+        private final AtomicInteger statements = new AtomicInteger();
+        private boolean joined;
+
+        private Scope() { }
+
+        public <T> Supplier<T> fork(Supplier<T> task) {
+            if (executor == null) {
+                T result = task.get();
+                return () -> result;
+            }
+            String pantryId = TenantContext.current();
+            Future<T> future = executor.submit(() -> {
+                StatementCounter.reset();
+                try {
+                    return TenantContext.callAs(pantryId, task);
+                } finally {
+                    statements.addAndGet(StatementCounter.current());
+                }
+            });
+            futures.add(future);
+            return () -> {
+                if (!joined) {
+                    throw new IllegalStateException("join() the scope before reading its results");
+                }
+                return future.resultNow();
+            };
+        }
+
+        // waits for every task, the first failure cancels the rest and is rethrown here
+        public void join() {
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                cancelAll();
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                cancelAll();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for queries", e);
+            } finally {
+                StatementCounter.add(statements.getAndSet(0));
+            }
+            joined = true;
+        }
+
+        @Override
+        public void close() {
+            cancelAll(); // no-op after a successful join, stops stragglers if we left early
+        }
+
+        private void cancelAll() {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
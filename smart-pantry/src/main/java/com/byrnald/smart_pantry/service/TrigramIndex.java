@@ -0,0 +1,153 @@
+package com.byrnald.smart_pantry.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// inverted index from 3 letter chunks ("trigrams") of item names to item ids.
+// "eggs" is indexed as "  e", " eg", "egg", "ggs", "gs " (two spaces in front, one after), so
+// - a substring search only has to look at the ids that have every trigram of the keyword
+// - a typo like "egs" still shares most trigrams with "eggs" and ranks close to the top
+// keywords of 1 or 2 letters have no trigram of their own, so every 1 and 2 letter chunk of a name is indexed
+// too ("e", "g", "s", "eg", "gg", "gs"). they share the postings map (their keys are shorter, they never collide
+// with a trigram) but only containing() looks them up, the ranking stays on trigrams
+// not thread safe on its own, NameSearchIndex does the locking
+public class TrigramIndex {
+
+    public record Hit(Long id, String name, double score) { }
+
+    private static final double MIN_SIMILARITY = 0.3; // below this a fuzzy match is more noise than typo
+
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    private final Map<Long, String> names = new HashMap<>(); // id -> lowercase name
+
+    public int size() {
+        return names.size();
+    }
+
+    public void put(Long id, String name) {
+        remove(id);
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        String normalized = name.toLowerCase();
+        names.put(id, normalized);
+        for (String gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+        }
+    }
+
+    public void remove(Long id) {
+        String old = names.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(old)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    // exact "name contains keyword" (ignoring case), same answer as LOWER(name) LIKE '%keyword%'
+    public Set<Long> containing(String keyword) {
+        String needle = keyword.toLowerCase();
+        Set<Long> result = new LinkedHashSet<>();
+        if (needle.isEmpty()) {
+            result.addAll(names.keySet());
+            return result;
+        }
+        if (needle.length() < 3) {
+            // the short chunk's own posting list is exactly the names containing it
+            Set<Long> ids = postings.get(needle);
+            if (ids != null) {
+                result.addAll(ids);
+            }
+            return result;
+        }
+        // start from the rarest trigram so the candidate list is as short as possible
+        List<Set<Long>> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            Set<Long> ids = postings.get(needle.substring(i, i + 3));
+            if (ids == null) {
+                return result; // some trigram never appears, nothing can match
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        for (Long id : lists.get(0)) {
+            if (names.get(id).contains(needle)) { // trigrams can all be there out of order, so double check
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    // ranked, typo tolerant search: items are scored by how many trigrams they share with the query
+    // (jaccard similarity), and exact substring / prefix matches get a boost so they always come first
+    public List<Hit> search(String query, int limit) {
+        String needle = query.toLowerCase().trim();
+        if (needle.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Set<String> queryGrams = trigrams(needle);
+        Map<Long, Integer> shared = new HashMap<>();
+        for (String gram : queryGrams) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                for (Long id : ids) {
+                    shared.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        shared.forEach((id, common) -> {
+            String name = names.get(id);
+            int nameGrams = name.length() + 1; // "  " + name + " " has exactly length + 1 trigrams (or fewer if some repeat)
+            double similarity = (double) common / (queryGrams.size() + nameGrams - common);
+            double score = similarity;
+            if (name.startsWith(needle)) {
+                score += 2;
+            } else if (name.contains(needle)) {
+                score += 1;
+            } else if (similarity < MIN_SIMILARITY) {
+                return;
+            }
+            hits.add(new Hit(id, name, score));
+        });
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparing(Hit::name));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    // what a name is indexed under: its trigrams plus every 1 and 2 letter chunk (not padded, those are for containing())
+    static Set<String> grams(String normalized) {
+        Set<String> grams = trigrams(normalized);
+        for (int i = 0; i < normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + 1));
+            if (i + 2 <= normalized.length()) {
+                grams.add(normalized.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    static Set<String> trigrams(String normalized) {
+        String padded = "  " + normalized + " ";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+}
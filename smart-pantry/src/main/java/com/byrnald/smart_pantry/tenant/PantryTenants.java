@@ -0,0 +1,117 @@
+package com.byrnald.smart_pantry.tenant;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.hibernate.context.spi.TenantSchemaMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// which pantries exist and where their rows live.
+// every pantry_item row carries its pantry_id and hibernate adds "pantry_id = <current pantry>" to every query (@TenantId),
+// so most pantries share the one pantry_item table. the big ones listed in pantry.tenants.dedicated get a schema of their
+// own (PANTRY_<ID>) with their own pantry_item table and indexes, so they don't bloat the shared table or its indexes.
+// hibernate switches the connection to that schema when a session for the pantry opens (the TenantSchemaMapper part),
+// categories and the id sequences always stay in PUBLIC so ids are unique across every pantry
+@Component
+public class PantryTenants implements CurrentTenantIdentifierResolver<String>, TenantSchemaMapper<String> {
+
+    private static final Logger log = LoggerFactory.getLogger(PantryTenants.class);
+
+    public static final String SHARED_SCHEMA = "PUBLIC";
+    private static final String ITEM_TABLE = "pantry_item";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Set<String> dedicated = new LinkedHashSet<>();
+
+    public PantryTenants(JdbcTemplate jdbcTemplate, @Value("${pantry.tenants.dedicated:}") List<String> dedicated) {
+        this.jdbcTemplate = jdbcTemplate;
+        for (String pantryId : dedicated) {
+            String trimmed = pantryId.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!TenantContext.isValid(trimmed)) {
+                throw new IllegalArgumentException("pantry.tenants.dedicated has an invalid pantry id: " + trimmed);
+            }
+            this.dedicated.add(trimmed);
+        }
+    }
+
+    @Override
+    public String resolveCurrentTenantIdentifier() {
+        return TenantContext.current();
+    }
+
+    // a session stays on the pantry it was opened for, switching pantries means a new session
+    @Override
+    public boolean validateExistingCurrentSessions() {
+        return true;
+    }
+
+    @Override
+    public String schemaName(String pantryId) {
+        if (!dedicated.contains(pantryId)) {
+            return SHARED_SCHEMA;
+        }
+        return "PANTRY_" + pantryId.toUpperCase(Locale.ROOT).replace('-', '_');
+    }
+
+    public boolean hasDedicated() {
+        return !dedicated.isEmpty();
+    }
+
+    public boolean isDedicated(String pantryId) {
+        return dedicated.contains(pantryId);
+    }
+
+    // schema qualified pantry_item for plain JDBC, which doesn't go through hibernate's schema switch
+    public String itemTable(String pantryId) {
+        return schemaName(pantryId) + "." + ITEM_TABLE;
+    }
+
+    // every pantry that has items (plus the default and the dedicated ones), for loading the in-memory indexes at startup
+    public List<String> all() {
+        Set<String> pantries = new LinkedHashSet<>();
+        pantries.add(TenantContext.DEFAULT);
+        pantries.addAll(jdbcTemplate.queryForList("SELECT DISTINCT pantry_id FROM " + itemTable(TenantContext.DEFAULT)
+                + " WHERE pantry_id IS NOT NULL", String.class));
+        pantries.addAll(dedicated);
+        return new ArrayList<>(pantries);
+    }
+
+    // the migrations only look after PUBLIC, so the dedicated schemas are made here: same columns as the shared table,
+    // same tenant-leading indexes. a pantry that already had rows in the shared table gets them moved over once
+    public void createDedicatedSchemas() {
+        String shared = itemTable(TenantContext.DEFAULT);
+        for (String pantryId : dedicated) {
+            String schema = schemaName(pantryId);
+            String table = itemTable(pantryId);
+            Integer exists = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES "
+                    + "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = 'PANTRY_ITEM'", Integer.class, schema);
+            if (exists != null && exists > 0) {
+                // schemas made before the low stock index existed get it here (V5 adds it to the shared table)
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + schema + ".idx_pantry_item_pantry_quantity ON " + table + " (pantry_id, quantity)");
+                continue;
+            }
+            jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + schema);
+            jdbcTemplate.execute("CREATE TABLE " + table + " AS SELECT * FROM " + shared + " WHERE 1 = 0");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD PRIMARY KEY (id)");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD FOREIGN KEY (category_id) REFERENCES " + SHARED_SCHEMA + ".category (id)");
+            jdbcTemplate.execute("CREATE INDEX " + schema + ".idx_pantry_item_pantry_sort ON " + table + " (pantry_id, sort_key, id)");
+            jdbcTemplate.execute("CREATE INDEX " + schema + ".idx_pantry_item_pantry_category_sort ON " + table + " (pantry_id, category_id, sort_key, id)");
+            jdbcTemplate.execute("CREATE INDEX " + schema + ".idx_pantry_item_pantry_expiry ON " + table + " (pantry_id, expiration_date)");
+            jdbcTemplate.execute("CREATE INDEX " + schema + ".idx_pantry_item_pantry_quantity ON " + table + " (pantry_id, quantity)");
+            int moved = jdbcTemplate.update("INSERT INTO " + table + " SELECT * FROM " + shared + " WHERE pantry_id = ?", pantryId);
+            jdbcTemplate.update("DELETE FROM " + shared + " WHERE pantry_id = ?", pantryId);
+            log.info("Created schema {} for pantry {}, moved {} items into it", schema, pantryId, moved);
+        }
+    }
+}
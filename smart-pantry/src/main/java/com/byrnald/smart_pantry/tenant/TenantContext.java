@@ -0,0 +1,50 @@
+package com.byrnald.smart_pantry.tenant;
+
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// which pantry (tenant) the current thread is working on: "main", "garage-rack", "warehouse-2", ...
+// TenantFilter sets it for every request, hibernate reads it through PantryTenants whenever a session opens,
+// so every query only sees that pantry's rows. threads that aren't serving a request (startup, schedulers)
+// are on DEFAULT unless they switch with runAs/callAs
+public final class TenantContext {
+
+    public static final String DEFAULT = "main";
+
+    // lower case letters, digits and dashes. it ends up in a schema name for dedicated pantries, so nothing else
+    private static final Pattern VALID = Pattern.compile("[a-z0-9][a-z0-9-]{0,62}");
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() { }
+
+    public static String current() {
+        String pantryId = CURRENT.get();
+        return pantryId != null ? pantryId : DEFAULT;
+    }
+
+    public static boolean isValid(String pantryId) {
+        return pantryId != null && VALID.matcher(pantryId).matches();
+    }
+
+    public static <T> T callAs(String pantryId, Supplier<T> task) {
+        String previous = CURRENT.get();
+        CURRENT.set(pantryId);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public static void runAs(String pantryId, Runnable task) {
+        callAs(pantryId, () -> {
+            task.run();
+            return null;
+        });
+    }
+}
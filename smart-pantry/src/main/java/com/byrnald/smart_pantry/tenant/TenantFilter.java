@@ -0,0 +1,86 @@
+package com.byrnald.smart_pantry.tenant;
+
+import java.io.IOException;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// picks the pantry for each request: the X-Pantry-Id header (api clients, scanners), then ?pantry=,
+// then the pantry cookie, otherwise the default one. ?pantry= also sets the cookie, so /dashboard?pantry=garage
+// keeps you in the garage pantry for every click after it without the templates having to pass it along.
+// it's a filter and not a HandlerInterceptor because it has to run before open-in-view opens the hibernate
+// session, the session's tenant is fixed once it's open
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class TenantFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Pantry-Id";
+    public static final String PARAMETER = "pantry";
+    private static final String COOKIE = "pantry";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String parameter = request.getParameter(PARAMETER);
+        String pantryId = request.getHeader(HEADER);
+        if (pantryId == null) {
+            pantryId = parameter != null ? parameter : cookie(request);
+        }
+        if (pantryId == null || pantryId.isEmpty()) {
+            pantryId = TenantContext.DEFAULT;
+        }
+        if (!TenantContext.isValid(pantryId)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Pantry ids are lower case letters, digits and dashes");
+            return;
+        }
+        if (parameter != null && request.getHeader(HEADER) == null) {
+            Cookie cookie = new Cookie(COOKIE, pantryId);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+        String selected = pantryId;
+        try {
+            TenantContext.runAs(selected, () -> {
+                try {
+                    chain.doFilter(request, response);
+                } catch (IOException | ServletException e) {
+                    throw new FilterFailure(e);
+                }
+            });
+        } catch (FilterFailure e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw (ServletException) e.getCause();
+        }
+    }
+
+    private static String cookie(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    // carries the checked exceptions of the chain through runAs
+    private static final class FilterFailure extends RuntimeException {
+        FilterFailure(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+-- the schema as it was when hibernate's ddl-auto=update stopped managing it, for a new database.
+-- a database ddl-auto already made gets recorded as this version instead (spring.flyway.baseline-on-migrate)
+-- and only runs what comes after. categories, the id sequences and the stats are shared by every pantry,
+-- PantryTenants copies pantry_item into the dedicated pantry schemas
+CREATE SEQUENCE category_seq START WITH 1 INCREMENT BY 1;
+CREATE SEQUENCE pantry_item_seq START WITH 1 INCREMENT BY 50; -- PantryItem.ID_ALLOCATION_SIZE
+
+CREATE TABLE category (
+    id BIGINT NOT NULL,
+    name VARCHAR(100) NOT NULL,
+    PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX idx_category_name ON category (name);
+
+CREATE TABLE pantry_item (
+    id BIGINT NOT NULL,
+    pantry_id VARCHAR(64),
+    name VARCHAR(255),
+    quantity INTEGER,
+    expiration_date DATE,
+    sort_key VARCHAR(220),
+    version BIGINT,
+    category_id BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_pantry_item_category FOREIGN KEY (category_id) REFERENCES category (id)
+);
+CREATE INDEX idx_pantry_item_pantry_sort ON pantry_item (pantry_id, sort_key, id);
+CREATE INDEX idx_pantry_item_pantry_category_sort ON pantry_item (pantry_id, category_id, sort_key, id);
+CREATE INDEX idx_pantry_item_pantry_expiry ON pantry_item (pantry_id, expiration_date);
+
+CREATE TABLE pantry_category_stats (
+    pantry_id VARCHAR(64) NOT NULL,
+    category_id BIGINT NOT NULL,
+    item_count BIGINT NOT NULL,
+    total_quantity BIGINT NOT NULL,
+    low_stock_count BIGINT NOT NULL,
+    expiring_count BIGINT NOT NULL,
+    PRIMARY KEY (pantry_id, category_id)
+);
@@ -0,0 +1,53 @@
+-- the fix ups the startup runner used to look for on every boot, done once now.
+-- on a new database none of them finds anything to do
+
+-- a baselined database is whatever ddl-auto had made by then, which can be as little as the first pantry_item
+-- (id, name, quantity, expiration_date and a text category). everything V1 creates that it may not have yet is made here,
+-- IF NOT EXISTS so a database that already has it (or a new one V1 just made) is left alone
+CREATE SEQUENCE IF NOT EXISTS category_seq START WITH 1 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS pantry_item_seq START WITH 1 INCREMENT BY 50; -- V3 moves it past the existing ids
+
+CREATE TABLE IF NOT EXISTS category (
+    id BIGINT NOT NULL,
+    name VARCHAR(100) NOT NULL,
+    PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_category_name ON category (name);
+
+ALTER TABLE pantry_item ADD COLUMN IF NOT EXISTS pantry_id VARCHAR(64);
+ALTER TABLE pantry_item ADD COLUMN IF NOT EXISTS sort_key VARCHAR(220);
+ALTER TABLE pantry_item ADD COLUMN IF NOT EXISTS version BIGINT;
+ALTER TABLE pantry_item ADD COLUMN IF NOT EXISTS category_id BIGINT;
+ALTER TABLE pantry_item ADD CONSTRAINT IF NOT EXISTS fk_pantry_item_category FOREIGN KEY (category_id) REFERENCES category (id);
+CREATE INDEX IF NOT EXISTS idx_pantry_item_pantry_sort ON pantry_item (pantry_id, sort_key, id);
+CREATE INDEX IF NOT EXISTS idx_pantry_item_pantry_category_sort ON pantry_item (pantry_id, category_id, sort_key, id);
+CREATE INDEX IF NOT EXISTS idx_pantry_item_pantry_expiry ON pantry_item (pantry_id, expiration_date);
+
+CREATE TABLE IF NOT EXISTS pantry_category_stats (
+    pantry_id VARCHAR(64) NOT NULL,
+    category_id BIGINT NOT NULL,
+    item_count BIGINT NOT NULL,
+    total_quantity BIGINT NOT NULL,
+    low_stock_count BIGINT NOT NULL,
+    expiring_count BIGINT NOT NULL,
+    PRIMARY KEY (pantry_id, category_id)
+);
+
+-- items from before there were several pantries all belong to the default one ('main' = TenantContext.DEFAULT)
+UPDATE pantry_item SET pantry_id = 'main' WHERE pantry_id IS NULL;
+
+-- rows from before optimistic locking have no version yet, hibernate can't version check (or bump) a null
+UPDATE pantry_item SET version = 0 WHERE version IS NULL;
+
+-- rows saved before the sort key column existed, they would sort to the top otherwise.
+-- same thing PantryItem.sortKeyOf builds: "<0 low | 1 ok>|<yyyy-MM-dd, 9999-12-31 for none>|<lowercase name, max 200>",
+-- 5 is PantryItem.LOW_STOCK_THRESHOLD
+UPDATE pantry_item SET sort_key = CASE WHEN quantity <= 5 THEN '0' ELSE '1' END
+        || '|' || COALESCE(CAST(expiration_date AS VARCHAR), '9999-12-31')
+        || '|' || LEFT(LOWER(COALESCE(name, '')), 200)
+    WHERE sort_key IS NULL;
+
+-- the old indexes didn't start with pantry_id and the stats table wasn't per pantry, ddl-auto left both behind
+DROP INDEX IF EXISTS idx_pantry_item_sort;
+DROP INDEX IF EXISTS idx_pantry_item_category_sort;
+DROP TABLE IF EXISTS category_stats;
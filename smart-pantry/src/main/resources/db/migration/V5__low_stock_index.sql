@@ -0,0 +1,2 @@
+-- the urgent list and /api/pantry/low-stock look for quantity <= threshold, without this that was a full scan
+CREATE INDEX idx_pantry_item_pantry_quantity ON pantry_item (pantry_id, quantity);
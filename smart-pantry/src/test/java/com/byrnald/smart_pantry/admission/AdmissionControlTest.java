@@ -0,0 +1,71 @@
+package com.byrnald.smart_pantry.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+	private static final long MS = 1_000_000;
+
+	@Test
+	void tokenBucketRefillsUpToTheBurst() {
+		TokenBucket bucket = new TokenBucket(10, 3, 0);
+		assertThat(bucket.tryTake(0)).isZero();
+		assertThat(bucket.tryTake(0)).isZero();
+		assertThat(bucket.tryTake(0)).isZero();
+		assertThat(bucket.tryTake(0)).isEqualTo(100 * MS); // one token every 100ms
+
+		assertThat(bucket.tryTake(150 * MS)).isZero();
+		assertThat(bucket.tryTake(150 * MS)).isEqualTo(50 * MS);
+		assertThat(bucket.isFull(10_000 * MS)).isTrue(); // never more than the burst
+		assertThat(bucket.tryTake(10_000 * MS)).isZero();
+		assertThat(bucket.isFull(10_000 * MS)).isFalse();
+	}
+
+	@Test
+	void limitGrowsWhileFastAndShrinksWhenRequestsQueue() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 4, 100, 2000 * MS);
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(10 * MS, limit.limit());
+		}
+		assertThat(limit.limit()).isEqualTo(100); // up to the max
+
+		int grown = limit.limit();
+		limit.onSample(10 * MS, 1); // hardly used, no reason to go up
+		assertThat(limit.limit()).isEqualTo(grown);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(40 * MS, grown); // three quarters of the time is waiting
+		}
+		assertThat(limit.limit()).isLessThan(grown).isGreaterThanOrEqualTo(4);
+
+		int queued = limit.limit();
+		limit.onSample(3000 * MS, queued);
+		assertThat(limit.limit()).isLessThan(queued);
+	}
+
+	@Test
+	void bulkWorkIsShedBeforeReads() {
+		AdmissionControl control = new AdmissionControl(true, 50, 100, 10, 30, 10, 4, 100, Duration.ofSeconds(2));
+		for (int i = 0; i < 5; i++) {
+			assertThat(control.tryAcquire(AdmissionControl.Priority.BULK)).isEqualTo(i);
+		}
+		assertThat(control.tryAcquire(AdmissionControl.Priority.BULK)).isEqualTo(-1); // half of 10
+		assertThat(control.tryAcquire(AdmissionControl.Priority.WRITE)).isEqualTo(5);
+		assertThat(control.tryAcquire(AdmissionControl.Priority.WRITE)).isEqualTo(6);
+		assertThat(control.tryAcquire(AdmissionControl.Priority.WRITE)).isEqualTo(-1);
+		assertThat(control.tryAcquire(AdmissionControl.Priority.READ)).isEqualTo(7);
+		assertThat(control.shed(AdmissionControl.Priority.BULK)).isEqualTo(1);
+
+		control.release(10 * MS, 0, false);
+		assertThat(control.inflight()).isEqualTo(7);
+		assertThat(control.limit()).isEqualTo(10);
+
+		assertThat(AdmissionFilter.priority("POST", "/dashboard/subtract/7")).isEqualTo(AdmissionControl.Priority.WRITE);
+		assertThat(AdmissionFilter.priority("GET", "/api/pantry/export")).isEqualTo(AdmissionControl.Priority.BULK);
+		assertThat(AdmissionFilter.priority("GET", "/dashboard")).isEqualTo(AdmissionControl.Priority.READ);
+	}
+}
@@ -0,0 +1,68 @@
+package com.byrnald.smart_pantry.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+
+class AdmissionFilterTest {
+
+	private final AdmissionControl admissionControl = new AdmissionControl(true, 50, 100, 10, 30, 20, 4, 200, Duration.ofSeconds(2));
+	private final AdmissionFilter filter = new AdmissionFilter(admissionControl);
+
+	@Test
+	void plainRequestReleasesWhenItReturns() throws Exception {
+		filter.doFilter(new MockHttpServletRequest("GET", "/api/pantry/items"), new MockHttpServletResponse(),
+				(request, response) -> assertThat(admissionControl.inflight()).isEqualTo(1));
+
+		assertThat(admissionControl.inflight()).isZero();
+	}
+
+	@Test
+	void exportKeepsItsSlotUntilTheStreamIsDone() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/pantry/export");
+		request.setAsyncSupported(true);
+		filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync()); // like a StreamingResponseBody
+
+		assertThat(admissionControl.inflight()).isEqualTo(1); // still streaming
+
+		request.getAsyncContext().complete();
+		assertThat(admissionControl.inflight()).isZero();
+	}
+
+	@Test
+	void failedExportReleasesOnlyOnce() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/pantry/export");
+		request.setAsyncSupported(true);
+		filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+
+		MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+		for (AsyncListener listener : asyncContext.getListeners()) {
+			listener.onError(new AsyncEvent(asyncContext, new IllegalStateException("client went away")));
+		}
+		asyncContext.complete(); // the container completes it after the error
+
+		assertThat(admissionControl.inflight()).isZero();
+	}
+
+	@Test
+	void onlyQuickWorkMovesTheLimit() throws Exception {
+		AdmissionControl control = new AdmissionControl(true, 50, 100, 10, 30, 20, 4, 200, Duration.ofMillis(5));
+		AdmissionFilter slowFilter = new AdmissionFilter(control);
+
+		// slower than max-latency, but it's a batch: big, not stuck
+		slowFilter.doFilter(new MockHttpServletRequest("POST", "/api/pantry/batch"), new MockHttpServletResponse(), (request, response) -> LockSupport.parkNanos(20_000_000));
+		assertThat(control.limit()).isEqualTo(20);
+
+		slowFilter.doFilter(new MockHttpServletRequest("GET", "/api/pantry/items"), new MockHttpServletResponse(), (request, response) -> LockSupport.parkNanos(20_000_000));
+		assertThat(control.limit()).isLessThan(20);
+	}
+}
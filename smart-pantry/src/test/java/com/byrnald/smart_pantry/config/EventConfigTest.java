@@ -0,0 +1,43 @@
+package com.byrnald.smart_pantry.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+
+class EventConfigTest {
+
+	private final EventConfig.IsolatingEventMulticaster multicaster = new EventConfig.IsolatingEventMulticaster(new DefaultListableBeanFactory());
+	private final List<Object> heard = new ArrayList<>();
+
+	@Test
+	void failingListenerDoesNotStopTheOthersOrTheWrite() {
+		multicaster.addApplicationListener(ApplicationListener.<Object>forPayload(payload -> { 
+			throw new IllegalStateException("stats table is gone");
+		}));
+		multicaster.addApplicationListener(ApplicationListener.<Object>forPayload(heard::add));
+
+		PantryChangeEvent change = new PantryChangeEvent("main", List.of());
+		multicaster.multicastEvent(new PayloadApplicationEvent<>(this, change)); // doesn't throw
+
+		assertThat(heard).containsExactly(change);
+	}
+
+	@Test
+	void otherEventsStillFail() {
+		multicaster.addApplicationListener(ApplicationListener.<Object>forPayload(payload -> { 
+			throw new IllegalStateException("startup failed");
+		}));
+
+		assertThatThrownBy(() -> multicaster.multicastEvent(new PayloadApplicationEvent<>(this, "ready")))
+				.isInstanceOf(IllegalStateException.class);
+	}
+}
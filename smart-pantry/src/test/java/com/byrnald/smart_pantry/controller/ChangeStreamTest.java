@@ -0,0 +1,38 @@
+package com.byrnald.smart_pantry.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.service.ChangeFeed;
+
+class ChangeStreamTest {
+
+	private static final String PANTRY = "main";
+
+	@Test
+	void reconnectAfterEvictionStartsFromTheReset() {
+		ChangeFeed feed = new ChangeFeed(100);
+		ChangeStream stream = new ChangeStream(feed, 4, 10);
+		ChangeFeed.Subscription subscription = feed.subscribe(PANTRY, null, 4);
+		for (long id = 1; id <= 10; id++) {
+			feed.onChange(new PantryChangeEvent(PANTRY, List.of(PantryChange.adjusted(id, 1))));
+		}
+		assertThat(subscription.isEvicted()).isTrue();
+
+		String reset = stream.resetEvent(PANTRY).build().stream()
+				.map(data -> data.getData().toString())
+				.collect(Collectors.joining());
+		assertThat(reset).startsWith("id:" + feed.cursor(10) + "\n").contains("event:reset\n");
+
+		// the browser reconnects with the reset's id as Last-Event-ID and keeps up from there
+		assertThat(feed.subscribe(PANTRY, feed.cursor(10), 4).isEvicted()).isFalse();
+		// with the id of the last change it saw it would be too far behind again, every single time
+		assertThat(feed.subscribe(PANTRY, feed.cursor(4), 4).isEvicted()).isTrue();
+	}
+}
@@ -0,0 +1,92 @@
+package com.byrnald.smart_pantry.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+class IdempotencyStoreTest {
+
+	private final IdempotencyStore store = new IdempotencyStore(100, Duration.ofHours(1));
+	private final AtomicInteger writes = new AtomicInteger();
+
+	private ResponseEntity<Integer> write() {
+		return ResponseEntity.ok(writes.incrementAndGet());
+	}
+
+	private static int status(Throwable e) {
+		return ((ResponseStatusException) e).getStatusCode().value();
+	}
+
+	@Test
+	void replaysTheFirstResponse() {
+		ResponseEntity<Integer> first = store.execute("k1", "POST /api/pantry", "Eggs|12", this::write);
+		ResponseEntity<Integer> retry = store.execute("k1", "POST /api/pantry", "Eggs|12", this::write);
+
+		assertThat(writes.get()).isEqualTo(1);
+		assertThat(retry.getBody()).isEqualTo(first.getBody());
+		assertThat(retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER)).isEqualTo("true");
+		assertThat(first.getHeaders().containsHeader(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+
+		// no key, another endpoint or another pantry: nothing to replay
+		store.execute(null, "POST /api/pantry", "Eggs|12", this::write);
+		store.execute("k1", "POST /api/pantry/batch", "Eggs|12", this::write);
+		TenantContext.runAs("cabin", () -> store.execute("k1", "POST /api/pantry", "Eggs|12", this::write));
+		assertThat(writes.get()).isEqualTo(4);
+	}
+
+	@Test
+	void sameKeyForAnotherRequestIs422() {
+		store.execute("k1", "POST /api/pantry", "Eggs|12", this::write);
+		assertThatThrownBy(() -> store.execute("k1", "POST /api/pantry", "Milk|1", this::write))
+				.isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(status(e)).isEqualTo(422));
+	}
+
+	@Test
+	void sameKeyWhileTheFirstIsRunningIs409() {
+		store.execute("k1", "POST /api/pantry", "Eggs|12", () -> {
+			assertThatThrownBy(() -> store.execute("k1", "POST /api/pantry", "Eggs|12", this::write))
+					.isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(status(e)).isEqualTo(HttpStatus.CONFLICT.value()));
+			return write();
+		});
+		assertThat(writes.get()).isEqualTo(1);
+	}
+
+	@Test
+	void failedRequestIsForgotten() {
+		assertThatThrownBy(() -> store.execute("k1", "POST /api/pantry", "Eggs|12", () -> {
+			throw new IllegalStateException("database down");
+		})).isInstanceOf(IllegalStateException.class);
+
+		ResponseEntity<Integer> retry = store.execute("k1", "POST /api/pantry", "Eggs|12", this::write);
+		assertThat(retry.getBody()).isEqualTo(1);
+		assertThat(retry.getHeaders().containsHeader(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+	}
+
+	@Test
+	void retryGetsTheStoredVersion() {
+		ResponseEntity<Integer> first = store.execute("k1", "POST /api/pantry/batch", "big", this::write, response -> ResponseEntity.ok(-1));
+		ResponseEntity<Integer> retry = store.execute("k1", "POST /api/pantry/batch", "big", this::write, response -> ResponseEntity.ok(-1));
+
+		assertThat(first.getBody()).isEqualTo(1);
+		assertThat(retry.getBody()).isEqualTo(-1);
+		assertThat(writes.get()).isEqualTo(1);
+	}
+
+	@Test
+	void fingerprintIsAHashOfTheParts() {
+		String eggs = IdempotencyStore.fingerprint(List.of("Eggs", 12));
+
+		assertThat(eggs).hasSize(64).isEqualTo(IdempotencyStore.fingerprint(List.of("Eggs", 12)));
+		assertThat(IdempotencyStore.fingerprint(List.of("Eggs1", 2))).isNotEqualTo(eggs);
+	}
+}
@@ -0,0 +1,55 @@
+package com.byrnald.smart_pantry.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+
+// the controller methods are called directly, the ETag/If-Match logic is all in there
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:item-version;DB_CLOSE_DELAY=-1", "pantry.ledger.dir=target/test-ledger-item-version" })
+class ItemVersionTest {
+
+	@Autowired
+	private PantryController controller;
+
+	private static PantryItem edit(String name, Long version) {
+		PantryItem item = new PantryItem(name, 4, LocalDate.now().plusDays(10));
+		item.setVersion(version);
+		return item;
+	}
+
+	@Test
+	void ifMatchAndBodyVersionGuardTheUpdate() {
+		PantryItem added = controller.addItem(new PantryItem("Rice", 2, LocalDate.now().plusDays(90)), null).getBody();
+		String etag = controller.getItem(added.getId()).getHeaders().getETag();
+		assertThat(etag).isEqualTo("\"" + added.getVersion() + "\"");
+
+		ResponseEntity<PantryItem> updated = controller.updateItem(added.getId(), edit("Brown rice", null), etag);
+		assertThat(updated.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(updated.getHeaders().getETag()).isNotEqualTo(etag);
+
+		// the old ETag is stale now, a weak one never matches, and a stale body version is a conflict
+		assertThat(controller.updateItem(added.getId(), edit("Rice", null), etag).getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(controller.updateItem(added.getId(), edit("Rice", null), "W/" + updated.getHeaders().getETag()).getStatusCode())
+				.isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(controller.updateItem(added.getId(), edit("Rice", added.getVersion()), null).getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+		assertThat(controller.updateItem(added.getId(), edit("Rice", null), "*").getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		assertThat(controller.updateItem(Long.MAX_VALUE, edit("Rice", null), null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void parsesIfMatch() {
+		assertThat(PantryController.versionOf("\"3\"")).isEqualTo(3L);
+		assertThat(PantryController.versionOf(" * ")).isNull();
+		assertThat(PantryController.versionOf("W/\"3\"")).isEqualTo(-1L);
+		assertThat(PantryController.versionOf("\"abc\"")).isEqualTo(-1L);
+	}
+}
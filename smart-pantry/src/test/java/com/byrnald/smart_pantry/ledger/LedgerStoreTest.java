@@ -0,0 +1,121 @@
+package com.byrnald.smart_pantry.ledger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerStoreTest {
+
+	@TempDir
+	Path dir;
+
+	private static LedgerRecord record(long sequence, long timestamp, long itemId, LedgerRecord.Type type, int delta) {
+		return new LedgerRecord(sequence, timestamp, itemId, type, delta);
+	}
+
+	@Test
+	void recoversFromSnapshotPlusTail() throws IOException {
+		try (LedgerStore store = new LedgerStore(dir, 1024)) {
+			store.append(List.of(
+					record(1, 100, 1L, LedgerRecord.Type.ADDED, 10),
+					record(2, 110, 2L, LedgerRecord.Type.ADDED, 3)));
+			store.writeSnapshot(2, 110, Map.of(1L, 10, 2L, 3));
+			store.append(List.of(
+					record(3, 120, 1L, LedgerRecord.Type.ADJUSTED, -4),
+					record(4, 130, 2L, LedgerRecord.Type.DELETED, -3)));
+		}
+
+		try (LedgerStore store = new LedgerStore(dir, 1024)) {
+			LedgerStore.State state = store.recover();
+			assertThat(state.quantities()).containsExactlyEntriesOf(Map.of(1L, 6));
+			assertThat(state.lastSequence()).isEqualTo(4);
+			assertThat(state.empty()).isFalse();
+		}
+	}
+
+	@Test
+	void rebuildsStateAtPointInTime() throws IOException {
+		try (LedgerStore store = new LedgerStore(dir, LedgerRecord.SIZE * 2)) { // tiny segments, so the scan crosses files
+			store.append(List.of(record(1, 100, 1L, LedgerRecord.Type.ADDED, 10)));
+			store.append(List.of(record(2, 200, 1L, LedgerRecord.Type.ADJUSTED, -1)));
+			store.append(List.of(record(3, 300, 1L, LedgerRecord.Type.ADJUSTED, -1)));
+			store.writeSnapshot(3, 300, Map.of(1L, 8));
+			store.append(List.of(record(4, 400, 1L, LedgerRecord.Type.ADJUSTED, 5)));
+
+			assertThat(store.stateAt(50)).isEmpty();
+			assertThat(store.stateAt(250)).containsExactlyEntriesOf(Map.of(1L, 9));
+			assertThat(store.stateAt(350)).containsExactlyEntriesOf(Map.of(1L, 8));
+			assertThat(store.stateAt(400)).containsExactlyEntriesOf(Map.of(1L, 13));
+		}
+	}
+
+	@Test
+	void cutsOffTornRecordAtEnd() throws IOException {
+		try (LedgerStore store = new LedgerStore(dir, 1024)) {
+			store.append(List.of(record(1, 100, 1L, LedgerRecord.Type.ADDED, 2)));
+		}
+		try (var segments = Files.list(dir)) {
+			Path segment = segments.findFirst().orElseThrow();
+			Files.write(segment, new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND); // crash halfway through the next record
+		}
+
+		try (LedgerStore store = new LedgerStore(dir, 1024)) {
+			assertThat(store.recover().quantities()).containsExactlyEntriesOf(Map.of(1L, 2));
+			store.append(List.of(record(2, 200, 1L, LedgerRecord.Type.ADJUSTED, 1)));
+			assertThat(store.recover().quantities()).containsExactlyEntriesOf(Map.of(1L, 3));
+		}
+	}
+
+	@Test
+	void failedGroupGoesToANewSegmentAndItsLeftoversAreIgnored() throws IOException {
+		try (LedgerStore store = new LedgerStore(dir, 1024)) {
+			store.append(List.of(record(1, 100, 1L, LedgerRecord.Type.ADDED, 5)));
+			// a group with 2 and 3 made it to disk but its fsync failed: the ledger gave up on it and reuses the sequences
+			store.append(List.of(record(2, 110, 1L, LedgerRecord.Type.ADJUSTED, 100), record(3, 110, 1L, LedgerRecord.Type.ADJUSTED, 100)));
+			store.startNewSegment();
+			store.append(List.of(record(2, 120, 1L, LedgerRecord.Type.ADJUSTED, -1)));
+		}
+		try (var segments = Files.list(dir)) {
+			assertThat(segments.count()).isEqualTo(2);
+		}
+
+		try (LedgerStore store = new LedgerStore(dir, 1024)) {
+			LedgerStore.State state = store.recover();
+			assertThat(state.quantities()).containsExactlyEntriesOf(Map.of(1L, 4));
+			assertThat(state.lastSequence()).isEqualTo(2);
+			assertThat(store.stateAt(200)).containsExactlyEntriesOf(Map.of(1L, 4));
+		}
+	}
+
+	@Test
+	void scanFromTimestampSkipsOlderSegments() throws IOException {
+		try (LedgerStore store = new LedgerStore(dir, LedgerRecord.SIZE)) { // one record per segment
+			for (int i = 1; i <= 5; i++) {
+				store.append(List.of(record(i, i * 100L, i % 2, LedgerRecord.Type.ADJUSTED, i)));
+			}
+			// the first segment gets a record that would be in range, it only shows up if the segment is read at all
+			ByteBuffer planted = ByteBuffer.allocate(LedgerRecord.SIZE);
+			record(1, 350, 9L, LedgerRecord.Type.ADDED, 1).writeTo(planted);
+			try (var segments = Files.list(dir)) {
+				Files.write(segments.sorted().findFirst().orElseThrow(), planted.array());
+			}
+
+			List<Long> sequences = new ArrayList<>();
+			store.scan(1, 300, Long.MAX_VALUE, record -> sequences.add(record.sequence()));
+			assertThat(sequences).containsExactly(3L, 4L, 5L);
+			sequences.clear();
+			store.scan(1, Long.MIN_VALUE, Long.MAX_VALUE, record -> sequences.add(record.sequence()));
+			assertThat(sequences).containsExactly(1L, 2L, 3L, 4L, 5L);
+		}
+	}
+}
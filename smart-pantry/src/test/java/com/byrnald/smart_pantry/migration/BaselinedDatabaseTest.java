@@ -0,0 +1,68 @@
+package com.byrnald.smart_pantry.migration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.service.PantryService;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// a database the very first version made with ddl-auto=update (the pantry_db.mv.db in the baseline commit has this
+// exact table), from before flyway. it gets baselined as V1 and the migrations after it have to bring it up to date
+@SpringBootTest(properties = { "spring.datasource.url=" + BaselinedDatabaseTest.URL, "pantry.ledger.dir=target/test-ledger-baselined" })
+class BaselinedDatabaseTest {
+
+	static final String URL = "jdbc:h2:mem:baselined;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	private Flyway flyway;
+
+	@Autowired
+	private PantryService pantryService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	// before the application context, so flyway finds the old table instead of an empty database
+	@BeforeAll
+	static void createOldDatabase() throws SQLException {
+		try (Connection connection = DriverManager.getConnection(URL, "sa", ""); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE pantry_item (id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, category VARCHAR(255), "
+					+ "expiration_date DATE, name VARCHAR(255), quantity INTEGER, PRIMARY KEY (id))");
+			statement.execute("INSERT INTO pantry_item (id, category, expiration_date, name, quantity) VALUES "
+					+ "(31, 'Dairy', DATE '2030-01-01', 'Milk', 2), (32, 'Electronics', NULL, 'HDMI Cable', 9)");
+		}
+	}
+
+	@Test
+	void migrationsBringTheOldTableUpToDate() {
+		assertThat(flyway.info().applied()).extracting(migration -> migration.getVersion().getVersion())
+				.containsExactly("1", "2", "3", "4", "5"); // 1 is the baseline
+
+		Integer stats = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pantry_category_stats WHERE pantry_id = 'main'", Integer.class);
+		assertThat(stats).isEqualTo(2); // the startup rebuild could read the migrated rows
+
+		TenantContext.runAs(TenantContext.DEFAULT, () -> {
+			PantryItem milk = pantryService.getItem(31L).orElseThrow();
+			assertThat(milk.getCategory()).isEqualTo("Dairy");
+			assertThat(milk.getVersion()).isZero();
+			assertThat(milk.getSortKey()).isEqualTo("0|2030-01-01|milk");
+			assertThat(pantryService.getItem(32L).orElseThrow().getCategory()).isEqualTo("Electronics");
+
+			PantryItem added = pantryService.addItem(new PantryItem("Eggs", 12, LocalDate.now().plusDays(10)));
+			assertThat(added.getId()).isGreaterThan(32L); // the sequence was moved past the old ids
+		});
+	}
+}
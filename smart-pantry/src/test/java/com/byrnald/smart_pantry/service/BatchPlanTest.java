@@ -0,0 +1,106 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.service.PantryBatchService.Op;
+import com.byrnald.smart_pantry.service.PantryBatchService.Operation;
+import com.byrnald.smart_pantry.service.PantryBatchService.OperationResult;
+import com.byrnald.smart_pantry.service.PantryBatchService.Status;
+
+class BatchPlanTest {
+
+	private static final LocalDate DAY = LocalDate.of(2026, 3, 1);
+
+	private static PantryChange.ItemState item(long id, int quantity) {
+		return new PantryChange.ItemState(id, "item " + id, quantity, null, "Pantry", null);
+	}
+
+	private static Operation op(Op op, Long id) {
+		return new Operation(op, id, null, null, null, null);
+	}
+
+	private static Operation adjust(long id, int delta) {
+		return new Operation(Op.ADJUST, id, delta, null, null, null);
+	}
+
+	@Test
+	void groupsSameChangesIntoOneStatement() {
+		Map<Long, PantryChange.ItemState> existing = Map.of(1L, item(1, 10), 2L, item(2, 10), 3L, item(3, 10));
+		BatchPlan plan = new BatchPlan(List.of(
+				adjust(1, -3), adjust(2, -2), adjust(2, -1), adjust(3, 1), adjust(3, -1),
+				new Operation(Op.SET_EXPIRY, 1L, null, null, DAY, null),
+				new Operation(Op.SET_EXPIRY, 2L, null, null, DAY, null)), existing);
+
+		assertThat(plan.adjustments()).isEqualTo(Map.of(-3, List.of(1L, 2L))); // item 3 nets out to zero
+		assertThat(plan.expiryChanges()).isEqualTo(Map.of(DAY, List.of(1L, 2L)));
+		assertThat(plan.results()).extracting(OperationResult::status).containsOnly(Status.OK);
+	}
+
+	@Test
+	void deleteWinsAndLaterOperationsAreNotFound() {
+		Map<Long, PantryChange.ItemState> existing = Map.of(1L, item(1, 10));
+		BatchPlan plan = new BatchPlan(List.of(adjust(1, -3), op(Op.DELETE, 1L), adjust(1, -1), op(Op.DELETE, 9L)), existing);
+
+		assertThat(plan.results()).extracting(OperationResult::status)
+				.containsExactly(Status.OK, Status.OK, Status.NOT_FOUND, Status.NOT_FOUND);
+		assertThat(plan.adjustments()).isEmpty();
+		assertThat(plan.deletes()).containsExactly(1L);
+		assertThat(plan.changes(Map.of())).extracting(PantryChange::type).containsExactly(PantryChange.Type.DELETED);
+	}
+
+	@Test
+	void reportsInvalidOperationsAndKeepsGoing() {
+		BatchPlan plan = new BatchPlan(List.of(op(Op.ADJUST, 1L), op(Op.DELETE, null), op(Op.PURGE_EXPIRED, null),
+				new Operation(Op.PURGE_EXPIRED, null, null, null, null, DAY)), Map.of(1L, item(1, 10)));
+
+		assertThat(plan.results()).extracting(OperationResult::status)
+				.containsExactly(Status.INVALID, Status.INVALID, Status.INVALID, Status.OK);
+		assertThat(plan.results().get(0).message()).isEqualTo("delta is required");
+		assertThat(plan.purgeBefore()).isEqualTo(DAY);
+	}
+
+	@Test
+	void adjustPlusCategoryIsOneUpdateFromTheOriginalRow() {
+		BatchPlan plan = new BatchPlan(List.of(adjust(1, -8), new Operation(Op.SET_CATEGORY, 1L, null, "Freezer", null, null)),
+				Map.of(1L, item(1, 10)));
+
+		List<PantryChange> changes = plan.changes(Map.of());
+		assertThat(changes).extracting(PantryChange::type).containsExactly(PantryChange.Type.UPDATED); // no ADJUSTED next to it
+		PantryChange updated = changes.get(0);
+		assertThat(updated.before().quantity()).isEqualTo(10);
+		assertThat(updated.before().category()).isEqualTo("Pantry");
+		assertThat(updated.after().quantity()).isEqualTo(2);
+		assertThat(updated.after().category()).isEqualTo("Freezer");
+		assertThat(updated.after().sortKey()).startsWith("0|"); // 2 left, low stock now
+		assertThat(plan.adjustments()).isEqualTo(Map.of(-8, List.of(1L))); // the database still gets the adjust
+	}
+
+	@Test
+	void changesStartFromTheQuantityReadBack() {
+		// someone else took 3 between loading the row (10) and the batch's own -2, the read back says 5
+		BatchPlan plan = new BatchPlan(List.of(adjust(1, -2), adjust(2, -2), new Operation(Op.SET_EXPIRY, 2L, null, null, DAY, null)),
+				Map.of(1L, item(1, 10), 2L, item(2, 10)));
+
+		List<PantryChange> changes = plan.changes(Map.of(1L, 5, 2L, 5));
+		assertThat(changes.get(0).quantity()).isEqualTo(5);
+		assertThat(changes.get(1).before().quantity()).isEqualTo(7);
+		assertThat(changes.get(1).after().quantity()).isEqualTo(5);
+	}
+
+	@Test
+	void adjustOnItsOwnStaysAdjusted() {
+		BatchPlan plan = new BatchPlan(List.of(adjust(1, -3)), Map.of(1L, item(1, 10)));
+
+		assertThat(plan.changes(Map.of())).singleElement().satisfies(change -> {
+			assertThat(change.type()).isEqualTo(PantryChange.Type.ADJUSTED);
+			assertThat(change.delta()).isEqualTo(-3);
+		});
+	}
+}
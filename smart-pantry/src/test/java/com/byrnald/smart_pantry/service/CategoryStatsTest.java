@@ -0,0 +1,74 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+import com.byrnald.smart_pantry.model.CategoryStatsView;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.service.PantryBatchService.Op;
+import com.byrnald.smart_pantry.service.PantryBatchService.Operation;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:category-stats;DB_CLOSE_DELAY=-1", "pantry.ledger.dir=target/test-ledger-category-stats" })
+class CategoryStatsTest {
+
+	@Autowired
+	private PantryService pantryService;
+
+	@Autowired
+	private PantryBatchService pantryBatchService;
+
+	@Autowired
+	private CategoryStatsService categoryStatsService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void batchAdjustAndMoveCountsOnce() {
+		TenantContext.runAs(TenantContext.DEFAULT, () -> {
+			PantryItem cheese = new PantryItem("Cheese", 10, LocalDate.now().plusDays(30));
+			cheese.setCategory("Dairy");
+			cheese = pantryService.addItem(cheese);
+
+			pantryBatchService.apply(List.of(new Operation(Op.ADJUST, cheese.getId(), -8, null, null, null),
+					new Operation(Op.SET_CATEGORY, cheese.getId(), null, "Fridge", null, null)));
+
+			List<CategoryStatsView> kept = categoryStatsService.getStats();
+			assertThat(stats(kept, "Dairy")).isEqualTo(new CategoryStatsView("Dairy", 0, 0, 0, 0));
+			assertThat(stats(kept, "Fridge")).isEqualTo(new CategoryStatsView("Fridge", 1, 2, 1, 0));
+
+			categoryStatsService.rebuild(); // what a recount from pantry_item says
+			assertThat(categoryStatsService.getStats()).containsExactlyInAnyOrderElementsOf(kept);
+		});
+	}
+
+	@Test
+	void concurrentAdjustsCountFromTheQuantityTheyLeft() {
+		TenantContext.runAs(TenantContext.DEFAULT, () -> {
+			PantryItem salt = new PantryItem("Salt", 6, null);
+			salt.setCategory("Spices");
+			salt = pantryService.addItem(salt);
+
+			// two scanners took one each and both committed before the stats heard about either: the row says 4 already
+			jdbcTemplate.update("UPDATE pantry_item SET quantity = 4 WHERE id = ?", salt.getId());
+			categoryStatsService.onChange(new PantryChangeEvent(TenantContext.DEFAULT,
+					List.of(PantryChange.adjusted(salt.getId(), -1, 5), PantryChange.adjusted(salt.getId(), -1, 4))));
+
+			assertThat(stats(categoryStatsService.getStats(), "Spices")).isEqualTo(new CategoryStatsView("Spices", 1, 4, 1, 0));
+		});
+	}
+
+	private static CategoryStatsView stats(List<CategoryStatsView> stats, String category) {
+		return stats.stream().filter(view -> view.category().equals(category)).findFirst().orElseThrow();
+	}
+}
@@ -0,0 +1,129 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.event.PantryChangeEvent;
+
+class ChangeFeedTest {
+
+	private static final String PANTRY = "main";
+
+	private static void adjust(ChangeFeed feed, long id) {
+		adjust(feed, PANTRY, id);
+	}
+
+	private static void adjust(ChangeFeed feed, String pantryId, long id) {
+		feed.onChange(new PantryChangeEvent(pantryId, List.of(PantryChange.adjusted(id, 1))));
+	}
+
+	@Test
+	void returnsChangesAfterSequence() {
+		ChangeFeed feed = new ChangeFeed(8);
+		for (long id = 1; id <= 5; id++) {
+			adjust(feed, id);
+		}
+
+		ChangeFeed.Batch batch = feed.since(PANTRY, feed.cursor(2), 100);
+		assertThat(batch.reset()).isFalse();
+		assertThat(batch.changes()).extracting(ChangeFeed.Entry::sequence).containsExactly(3L, 4L, 5L);
+		assertThat(batch.lastSequence()).isEqualTo(5);
+
+		assertThat(feed.since(PANTRY, feed.cursor(5), 100).changes()).isEmpty();
+		ChangeFeed.Batch first = feed.since(PANTRY, null, 2);
+		assertThat(first.lastSequence()).isEqualTo(2);
+		assertThat(feed.since(PANTRY, first.cursor(), 100).changes()).extracting(ChangeFeed.Entry::sequence).containsExactly(3L, 4L, 5L);
+	}
+
+	@Test
+	void resetsWhenChangesFellOutOfRing() {
+		ChangeFeed feed = new ChangeFeed(4);
+		for (long id = 1; id <= 10; id++) {
+			adjust(feed, id);
+		}
+
+		assertThat(feed.since(PANTRY, feed.cursor(2), 100).reset()).isTrue();
+		assertThat(feed.since(PANTRY, feed.cursor(6), 100).changes()).extracting(ChangeFeed.Entry::sequence).containsExactly(7L, 8L, 9L, 10L);
+		// a sequence past the end
+		assertThat(feed.since(PANTRY, feed.cursor(50), 100).reset()).isTrue();
+	}
+
+	@Test
+	void resetsCursorFromEarlierRun() {
+		ChangeFeed before = new ChangeFeed(16);
+		adjust(before, 1L);
+		String cursor = before.since(PANTRY, null, 100).cursor();
+
+		// after a restart the new run's sequences catch up with the old cursor's, it still must not pick up from there
+		ChangeFeed after = new ChangeFeed(16);
+		for (long id = 1; id <= 3; id++) {
+			adjust(after, id);
+		}
+		ChangeFeed.Batch batch = after.since(PANTRY, cursor, 100);
+		assertThat(batch.reset()).isTrue();
+		assertThat(batch.cursor()).isEqualTo(after.cursor(3));
+		assertThat(after.since(PANTRY, "1", 100).reset()).isTrue(); // a bare sequence, from before cursors had an epoch
+		assertThat(after.subscribe(PANTRY, cursor, 4).isEvicted()).isTrue();
+	}
+
+	@Test
+	void rejectsMalformedCursor() {
+		ChangeFeed feed = new ChangeFeed(16);
+
+		assertThatIllegalArgumentException().isThrownBy(() -> feed.since(PANTRY, "abc", 100));
+		assertThatIllegalArgumentException().isThrownBy(() -> feed.since(PANTRY, feed.cursor(-2), 100));
+	}
+
+	@Test
+	void evictsSlowSubscriber() {
+		ChangeFeed feed = new ChangeFeed(16);
+		adjust(feed, 1L);
+		ChangeFeed.Subscription subscription = feed.subscribe(PANTRY, null, 2);
+		assertThat(subscription.queue()).hasSize(1);
+
+		adjust(feed, 2L);
+		assertThat(subscription.isEvicted()).isFalse();
+		adjust(feed, 3L);
+		assertThat(subscription.isEvicted()).isTrue();
+		assertThat(feed.subscriberCount()).isZero();
+		assertThat(feed.evictions()).isEqualTo(1);
+	}
+
+	@Test
+	void keepsPantriesApart() {
+		ChangeFeed feed = new ChangeFeed(8);
+		adjust(feed, "main", 1L);
+		adjust(feed, "garage", 2L);
+		adjust(feed, "garage", 3L);
+
+		assertThat(feed.since("main", feed.cursor(0), 100).changes()).extracting(entry -> entry.change().itemId()).containsExactly(1L);
+		assertThat(feed.since("garage", feed.cursor(0), 100).changes()).extracting(ChangeFeed.Entry::sequence).containsExactly(1L, 2L);
+		assertThat(feed.lastSequence("garage")).isEqualTo(2);
+		assertThat(feed.totalChanges()).isEqualTo(3);
+	}
+
+	@Test
+	void unknownPantryLeavesNothingBehind() {
+		ChangeFeed feed = new ChangeFeed(10_000);
+
+		ChangeFeed.Batch batch = feed.since("made-up", null, 100);
+		assertThat(batch.changes()).isEmpty();
+		assertThat(batch.reset()).isFalse();
+		assertThat(feed.since("made-up", feed.cursor(5), 100).reset()).isTrue();
+		assertThat(feed.ringCount()).isZero();
+
+		ChangeFeed.Subscription subscription = feed.subscribe("made-up", null, 4);
+		assertThat(feed.ringCount()).isEqualTo(1);
+		subscription.close();
+		assertThat(feed.ringCount()).isZero();
+
+		// a change after that still lands in a live ring
+		adjust(feed, "made-up", 1L);
+		assertThat(feed.since("made-up", null, 100).changes()).hasSize(1);
+	}
+}
@@ -0,0 +1,112 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.byrnald.smart_pantry.event.PantryChange;
+import com.byrnald.smart_pantry.model.ItemForecast;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+class ConsumptionForecastTest {
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	private static final String PANTRY = TenantContext.DEFAULT; // the pantry the reads answer for outside a request
+
+	// 14 day window, 3 day lead time, own threshold after 2 uses over 3 days. no repository/ledger, we feed it changes by hand
+	private static ConsumptionForecast forecast() {
+		return new ConsumptionForecast(null, null, null, true, 14, 3, 3, 2, 90);
+	}
+
+	@Test
+	void fastMovingItemGetsHigherThreshold() {
+		ConsumptionForecast forecast = forecast();
+		forecast.apply(PANTRY, 1L, PantryChange.Type.ADDED, 30, 0);
+		for (int day = 1; day <= 10; day++) {
+			forecast.apply(PANTRY, 1L, PantryChange.Type.ADJUSTED, -2, day * DAY);
+		}
+
+		ItemForecast eggs = forecast.forecast(1L).orElseThrow();
+		assertThat(eggs.predicted()).isTrue();
+		assertThat(eggs.quantity()).isEqualTo(10);
+		assertThat(eggs.dailyUsage()).isCloseTo(2.0, within(0.2));
+		assertThat(eggs.daysToEmpty()).isCloseTo(5.0, within(0.5));
+		assertThat(eggs.lowStockThreshold()).isGreaterThan(PantryService.DEFAULT_THRESHOLD);
+		assertThat(eggs.lowStock()).isTrue();
+		assertThat(forecast.lowStockIds()).containsExactly(1L);
+	}
+
+	@Test
+	void slowMovingItemIsNotLowAtDefaultThreshold() {
+		ConsumptionForecast forecast = forecast();
+		forecast.apply(PANTRY, 2L, PantryChange.Type.ADDED, 6, 0);
+		forecast.apply(PANTRY, 2L, PantryChange.Type.ADJUSTED, -1, 7 * DAY);
+		forecast.apply(PANTRY, 2L, PantryChange.Type.ADJUSTED, -1, 14 * DAY);
+		forecast.apply(PANTRY, 2L, PantryChange.Type.ADJUSTED, -1, 21 * DAY);
+
+		ItemForecast batteries = forecast.forecast(2L).orElseThrow();
+		assertThat(batteries.quantity()).isEqualTo(3);
+		assertThat(batteries.lowStockThreshold()).isEqualTo(2);
+		assertThat(batteries.lowStock()).isFalse();
+		assertThat(forecast.lowStockIds()).isEmpty();
+	}
+
+	@Test
+	void newItemKeepsDefaultThresholdUntilItHasHistory() {
+		ConsumptionForecast forecast = forecast();
+		forecast.apply(PANTRY, 3L, PantryChange.Type.ADDED, 4, 0);
+		forecast.apply(PANTRY, 3L, PantryChange.Type.ADJUSTED, 10, DAY); // restocks aren't usage
+
+		ItemForecast flour = forecast.forecast(3L).orElseThrow();
+		assertThat(flour.predicted()).isFalse();
+		assertThat(flour.lowStockThreshold()).isEqualTo(PantryService.DEFAULT_THRESHOLD);
+		assertThat(flour.daysToEmpty()).isNull();
+		assertThat(flour.quantity()).isEqualTo(14);
+
+		forecast.apply(PANTRY, 3L, PantryChange.Type.ADJUSTED, -12, 2 * DAY);
+		assertThat(forecast.lowStockIds()).containsExactly(3L);
+		forecast.apply(PANTRY, 3L, PantryChange.Type.DELETED, 0, 3 * DAY);
+		assertThat(forecast.forecast(3L)).isEmpty();
+		assertThat(forecast.lowStockIds()).isEmpty();
+	}
+
+	@Test
+	void idleItemDropsItsOldUsageOnRefresh() {
+		ConsumptionForecast forecast = forecast();
+		forecast.apply(PANTRY, 6L, PantryChange.Type.ADDED, 30, 0);
+		for (int day = 1; day <= 10; day++) {
+			forecast.apply(PANTRY, 6L, PantryChange.Type.ADJUSTED, -2, day * DAY);
+		}
+		int busyThreshold = forecast.forecast(6L).orElseThrow().lowStockThreshold();
+		assertThat(forecast.lowStockIds()).containsExactly(6L);
+
+		// nobody touches it for two months, nothing but the refresh redoes the forecast
+		forecast.refresh(70 * DAY);
+
+		ItemForecast eggs = forecast.forecast(6L).orElseThrow();
+		assertThat(eggs.quantity()).isEqualTo(10);
+		assertThat(eggs.dailyUsage()).isLessThan(0.1);
+		assertThat(eggs.lowStockThreshold()).isLessThan(busyThreshold).isLessThan(10);
+		assertThat(eggs.lowStock()).isFalse();
+		assertThat(forecast.lowStockIds()).isEmpty();
+
+		// using it again picks up from the decayed usage
+		forecast.apply(PANTRY, 6L, PantryChange.Type.ADJUSTED, -1, 71 * DAY);
+		assertThat(forecast.forecast(6L).orElseThrow().dailyUsage()).isLessThan(0.2);
+	}
+
+	@Test
+	void pantriesKeepTheirOwnStats() {
+		ConsumptionForecast forecast = forecast();
+		forecast.apply(PANTRY, 4L, PantryChange.Type.ADDED, 2, 0);
+		forecast.apply("garage", 5L, PantryChange.Type.ADDED, 1, 0);
+
+		assertThat(forecast.lowStockIds()).containsExactly(4L);
+		assertThat(forecast.forecast(5L)).isEmpty();
+		assertThat(TenantContext.callAs("garage", forecast::lowStockIds)).containsExactly(5L);
+		assertThat(forecast.lowStockCount()).isEqualTo(2);
+	}
+}
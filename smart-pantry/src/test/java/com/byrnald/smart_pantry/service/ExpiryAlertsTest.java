@@ -0,0 +1,52 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.byrnald.smart_pantry.event.ItemsExpiredEvent;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:expiry-alerts;DB_CLOSE_DELAY=-1", "pantry.ledger.dir=target/test-ledger-expiry-alerts" })
+class ExpiryAlertsTest {
+
+	@Autowired
+	private PantryService pantryService;
+
+	@Autowired
+	private ExpiryAlerts expiryAlerts;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Test
+	void nightlySweepBecomesAnAlertOfItsPantry() {
+		LocalDate today = LocalDate.now();
+		PantryItem yogurt = TenantContext.callAs("fridge", () -> pantryService.addItem(new PantryItem("Yogurt", 2, today)));
+		PantryItem cream = TenantContext.callAs("fridge", () -> pantryService.addItem(new PantryItem("Cream", 1, today)));
+
+		// what ExpiryIndex publishes when the wheel turns past the day
+		eventPublisher.publishEvent(new ItemsExpiredEvent("fridge", today, List.of(yogurt.getId(), cream.getId())));
+
+		List<ExpiryAlerts.Alert> alerts = TenantContext.callAs("fridge", expiryAlerts::recent);
+		assertThat(alerts).hasSize(1);
+		assertThat(alerts.get(0).day()).isEqualTo(today);
+		assertThat(alerts.get(0).items()).isEqualTo(2);
+		assertThat(alerts.get(0).names()).containsExactlyInAnyOrder("Yogurt", "Cream");
+		assertThat(TenantContext.callAs("cabin", expiryAlerts::recent)).isEmpty();
+	}
+
+	@Test
+	void urgentListHasItemsThatExpiredLongAgo() {
+		PantryItem tin = TenantContext.callAs("attic", () -> pantryService.addItem(new PantryItem("Tinned Peaches", 20, LocalDate.of(1995, 6, 1))));
+
+		TenantContext.runAs("attic", () -> assertThat(pantryService.getUrgentItems()).extracting(PantryItem::getId).contains(tin.getId()));
+	}
+}
@@ -0,0 +1,57 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class ExpiryTimeWheelTest {
+
+	private static final LocalDate TODAY = LocalDate.of(2026, 1, 13);
+
+	@Test
+	void findsItemsExpiringWithinWindow() {
+		ExpiryTimeWheel wheel = new ExpiryTimeWheel(8, TODAY);
+		wheel.put(1L, TODAY);
+		wheel.put(2L, TODAY.plusDays(3));
+		wheel.put(3L, TODAY.plusDays(4));
+		wheel.put(4L, TODAY.minusDays(1));
+		wheel.put(5L, null);
+
+		assertThat(wheel.expiringWithin(3)).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(wheel.expired()).containsExactly(4L);
+		assertThat(wheel.size()).isEqualTo(4);
+	}
+
+	@Test
+	void movesItemWhenDateChanges() {
+		ExpiryTimeWheel wheel = new ExpiryTimeWheel(8, TODAY);
+		wheel.put(1L, TODAY.plusDays(1));
+		wheel.put(1L, TODAY.plusDays(30));
+
+		assertThat(wheel.expiringWithin(3)).isEmpty();
+		assertThat(wheel.expiringWithin(30)).containsExactly(1L);
+
+		wheel.remove(1L);
+		assertThat(wheel.expiringWithin(30)).isEmpty();
+		assertThat(wheel.size()).isZero();
+	}
+
+	@Test
+	void advancingExpiresPassedDaysAndPullsInOverflow() {
+		ExpiryTimeWheel wheel = new ExpiryTimeWheel(8, TODAY);
+		wheel.put(1L, TODAY);
+		wheel.put(2L, TODAY.plusDays(1));
+		wheel.put(3L, TODAY.plusDays(10)); // past the wheel, sits in the overflow
+
+		assertThat(wheel.advanceTo(TODAY.plusDays(2))).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(wheel.expired()).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(wheel.expiringWithin(7)).isEmpty();
+		assertThat(wheel.expiringWithin(8)).containsExactly(3L);
+
+		// skipping more than a full turn still expires everything on the way
+		assertThat(wheel.advanceTo(TODAY.plusDays(40))).containsExactly(3L);
+		assertThat(wheel.expired()).containsExactlyInAnyOrder(1L, 2L, 3L);
+	}
+}
@@ -0,0 +1,99 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.byrnald.smart_pantry.model.PantryAnalytics;
+import com.byrnald.smart_pantry.service.InventoryColumns.Filter;
+import com.byrnald.smart_pantry.service.InventoryColumns.GroupBy;
+
+class InventoryColumnsTest {
+
+	private static final LocalDate TODAY = LocalDate.of(2026, 3, 1);
+
+	@Test
+	void groupsByCategoryWithFilters() {
+		InventoryColumns columns = new InventoryColumns();
+		columns.put(1, 6, TODAY.plusDays(2), "Pantry");
+		columns.put(2, 4, TODAY.plusDays(6), "Pantry");
+		columns.put(3, 10, TODAY.plusDays(8), "Pantry"); // next week
+		columns.put(4, 3, TODAY, "Fridge");
+		columns.put(5, 20, null, "Electronics"); // no date, left out by any date filter
+		columns.put(6, 1, TODAY.plusDays(1), null);
+
+		PantryAnalytics thisWeek = columns.query(GroupBy.CATEGORY, new Filter(null, TODAY, TODAY.plusDays(7), null, null), TODAY);
+
+		assertThat(thisWeek.groups()).containsExactly(
+				new PantryAnalytics.Group("Fridge", 1, 3),
+				new PantryAnalytics.Group("Pantry", 2, 10),
+				new PantryAnalytics.Group("none", 1, 1));
+		assertThat(thisWeek.items()).isEqualTo(4);
+		assertThat(thisWeek.totalQuantity()).isEqualTo(14);
+
+		PantryAnalytics lowPantry = columns.query(GroupBy.NONE, new Filter(Set.of("Pantry", "Nope"), null, null, null, 5), TODAY);
+		assertThat(lowPantry.groups()).containsExactly(new PantryAnalytics.Group("all", 1, 4));
+	}
+
+	@Test
+	void daysToExpiryHistogram() {
+		InventoryColumns columns = new InventoryColumns();
+		columns.put(1, 1, TODAY.minusDays(2), "Pantry");
+		columns.put(2, 2, TODAY, "Pantry");
+		columns.put(3, 3, TODAY, "Pantry");
+		columns.put(4, 4, TODAY.plusDays(400), "Pantry"); // past the default year ahead
+		columns.put(5, 5, null, "Pantry");
+
+		PantryAnalytics days = columns.query(GroupBy.DAYS_TO_EXPIRY, Filter.NONE, TODAY);
+		assertThat(days.groupBy()).isEqualTo("days-to-expiry");
+		assertThat(days.groups()).containsExactly(
+				new PantryAnalytics.Group("-2", 1, 1),
+				new PantryAnalytics.Group("0", 2, 5),
+				new PantryAnalytics.Group("later", 1, 4),
+				new PantryAnalytics.Group("none", 1, 5));
+
+		PantryAnalytics weeks = columns.query(GroupBy.WEEKS_TO_EXPIRY, Filter.NONE, TODAY);
+		assertThat(weeks.groups()).extracting(PantryAnalytics.Group::key).containsExactly("-1", "0", "later", "none");
+
+		Filter decades = new Filter(null, TODAY, TODAY.plusYears(30), null, null);
+		assertThatThrownBy(() -> columns.query(GroupBy.DAYS_TO_EXPIRY, decades, TODAY)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(columns.query(GroupBy.WEEKS_TO_EXPIRY, decades, TODAY).items()).isEqualTo(3);
+	}
+
+	@Test
+	void keepsUpWithChangesAndParallelMatchesSequential() {
+		InventoryColumns columns = new InventoryColumns();
+		Map<Long, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		String[] categories = { "Pantry", "Fridge", "Household" };
+		for (long id = 1; id <= 300_000; id++) {
+			int quantity = random.nextInt(50);
+			columns.put(id, quantity, TODAY.plusDays(random.nextInt(60)), categories[random.nextInt(categories.length)]);
+			expected.put(id, quantity);
+		}
+		for (long id = 1; id <= 300_000; id += 3) {
+			columns.remove(id);
+			expected.remove(id);
+		}
+		for (long id = 2; id <= 300_000; id += 3) {
+			columns.adjust(id, 5);
+			expected.merge(id, 5, Integer::sum);
+		}
+		assertThat(columns.adjust(1, 5)).isFalse(); // removed
+
+		PantryAnalytics parallel = columns.query(GroupBy.CATEGORY, Filter.NONE, TODAY, true);
+		PantryAnalytics sequential = columns.query(GroupBy.CATEGORY, Filter.NONE, TODAY, false);
+
+		assertThat(columns.size()).isEqualTo(expected.size());
+		assertThat(parallel.items()).isEqualTo(expected.size());
+		assertThat(parallel.totalQuantity()).isEqualTo(expected.values().stream().mapToLong(Integer::longValue).sum());
+		assertThat(parallel).isEqualTo(sequential);
+	}
+}
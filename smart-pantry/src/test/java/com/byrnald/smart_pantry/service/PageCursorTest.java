@@ -0,0 +1,31 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.junit.jupiter.api.Test;
+
+class PageCursorTest {
+
+	@Test
+	void roundTrips() {
+		PageCursor cursor = new PageCursor("0|2026-03-01|eggs\nand ham", 42); // the id is after the last newline
+		assertThat(PageCursor.decode(cursor.encode())).isEqualTo(cursor);
+		assertThat(cursor.encode()).doesNotContain("=", "+", "/");
+		assertThat(PageCursor.decode(null)).isNull();
+		assertThat(PageCursor.decode("")).isNull();
+	}
+
+	@Test
+	void ordersLikeTheQuery() {
+		assertThat(new PageCursor("0|a", 9)).isLessThan(new PageCursor("1|a", 1));
+		assertThat(new PageCursor("1|a", 1)).isLessThan(new PageCursor("1|a", 2));
+	}
+
+	@Test
+	void rejectsCursorsWeDidNotHandOut() {
+		for (String bad : new String[] { "not base64!", "bm8gbmV3bGluZQ", "a2V5CnNldmVu" }) { // no newline, "key\nseven"
+			assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode(bad)); // the controller makes it a 400
+		}
+	}
+}
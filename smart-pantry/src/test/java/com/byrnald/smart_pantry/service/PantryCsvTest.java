@@ -0,0 +1,47 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+
+class PantryCsvTest {
+
+	@Test
+	void parsesQuotedFields() {
+		assertThat(PantryCsv.parseLine("Eggs,12,2026-03-01,Fridge")).containsExactly("Eggs", "12", "2026-03-01", "Fridge");
+		assertThat(PantryCsv.parseLine("\"Salt, coarse\",1,,")).containsExactly("Salt, coarse", "1", "", "");
+		assertThat(PantryCsv.parseLine("\"12\"\" pizza\",2")).containsExactly("12\" pizza", "2");
+		assertThat(PantryCsv.parseLine("\"two\nlines\",3")).containsExactly("two\nlines", "3");
+	}
+
+	@Test
+	void rejectsUnterminatedQuote() {
+		assertThat(PantryCsv.isOpen("\"Salt, coarse,1")).isTrue();
+		assertThat(PantryCsv.isOpen("\"12\"\" pizza\",2")).isFalse();
+		assertThatThrownBy(() -> PantryCsv.parseLine("\"Salt, coarse,1")).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("unterminated quote");
+	}
+
+	@Test
+	void exportedRowsReadBackTheSame() {
+		PantryItem item = new PantryItem("Mum's \"best\", jam\nbatch 2", 4, LocalDate.of(2026, 3, 1));
+		item.setId(7L);
+		item.setCategory("Pantry");
+
+		String row = PantryCsv.formatRow(item);
+		List<String> fields = PantryCsv.parseLine(row);
+		int[] columns = PantryCsv.headerColumns(PantryCsv.parseLine(PantryCsv.HEADER));
+
+		assertThat(PantryCsv.field(fields, columns[PantryCsv.NAME])).isEqualTo(item.getName());
+		assertThat(PantryCsv.field(fields, columns[PantryCsv.QUANTITY])).isEqualTo("4");
+		assertThat(PantryCsv.field(fields, columns[PantryCsv.EXPIRATION_DATE])).isEqualTo("2026-03-01");
+		assertThat(PantryCsv.field(fields, columns[PantryCsv.CATEGORY])).isEqualTo("Pantry");
+		assertThat(PantryCsv.headerColumns(fields)).isNull(); // a data row isn't a header
+	}
+}
@@ -0,0 +1,62 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.model.PantryItemView;
+import com.byrnald.smart_pantry.model.PantryPage;
+import com.byrnald.smart_pantry.model.PantryViewPage;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:paging;DB_CLOSE_DELAY=-1", "pantry.ledger.dir=target/test-ledger-paging" })
+class PantryPagingTest {
+
+	private static final String PANTRY = "paging-test";
+
+	@Autowired
+	private PantryService pantryService;
+
+	@Test
+	void pagesThroughEveryItemOnceInSortOrder() {
+		TenantContext.runAs(PANTRY, () -> {
+			LocalDate today = LocalDate.now();
+			for (int i = 0; i < 25; i++) {
+				// same quantity and date for several items, so the id has to break the ties between pages
+				pantryService.addItem(new PantryItem("Item " + (i % 5), 3 + i % 4, today.plusDays(i % 3)));
+			}
+
+			List<PantryItemView> seen = new ArrayList<>();
+			String cursor = null;
+			int pages = 0;
+			do {
+				PantryViewPage page = pantryService.getItemViews(cursor, 10);
+				seen.addAll(page.items());
+				cursor = page.nextCursor();
+				pages++;
+			} while (cursor != null);
+
+			assertThat(pages).isEqualTo(3);
+			assertThat(seen).extracting(PantryItemView::id).doesNotHaveDuplicates().hasSize(25);
+			assertThat(seen).isSortedAccordingTo(Comparator.comparing(PantryItemView::sortKey).thenComparing(PantryItemView::id));
+
+			// the dashboard pages the entities through a keyset window, it has to come out the same
+			List<Long> dashboard = new ArrayList<>();
+			cursor = null;
+			do {
+				PantryPage page = pantryService.searchItems(null, null, cursor, 10);
+				page.items().forEach(item -> dashboard.add(item.getId()));
+				cursor = page.nextCursor();
+			} while (cursor != null);
+			assertThat(dashboard).isEqualTo(seen.stream().map(PantryItemView::id).toList());
+		});
+	}
+}
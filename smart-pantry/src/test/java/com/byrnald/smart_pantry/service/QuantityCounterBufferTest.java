@@ -0,0 +1,73 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.tenant.TenantContext;
+
+// the scheduled flush is pushed out to an hour, the test flushes by hand
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1", "pantry.ledger.dir=target/test-ledger-write-behind",
+		"pantry.write-behind.enabled=true", "pantry.write-behind.flush-interval-ms=3600000" })
+class QuantityCounterBufferTest {
+
+	@Autowired
+	private QuantityCounterBuffer buffer;
+
+	@Autowired
+	private PantryService pantryService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void totalThatCantBeWrittenIsDroppedAndTheRestSaved() {
+		TenantContext.runAs(TenantContext.DEFAULT, () -> {
+			PantryItem first = pantryService.addItem(new PantryItem("Flour", 10, LocalDate.now().plusDays(30)));
+			PantryItem second = pantryService.addItem(new PantryItem("Sugar", 10, LocalDate.now().plusDays(30)));
+
+			buffer.add(first.getId(), 5);
+			buffer.add(second.getId(), Integer.MAX_VALUE); // overflows the column, the batch fails
+			buffer.flush();
+
+			assertThat(quantity(first.getId())).isEqualTo(15); // written on its own after the batch failed
+			assertThat(quantity(second.getId())).isEqualTo(10);
+			assertThat(buffer.pendingItems()).isZero(); // the bad total isn't put back to fail every flush
+
+			buffer.add(first.getId(), 1);
+			buffer.flush();
+			assertThat(quantity(first.getId())).isEqualTo(16);
+		});
+	}
+
+	@Test
+	void adjustThatOverflowsTheBufferedTotalIsRejected() {
+		TenantContext.runAs(TenantContext.DEFAULT, () -> {
+			PantryItem item = pantryService.addItem(new PantryItem("Rice", 10, LocalDate.now().plusDays(30)));
+
+			buffer.add(item.getId(), Integer.MAX_VALUE - 1);
+			assertThatThrownBy(() -> buffer.add(item.getId(), 2)).isInstanceOf(IllegalArgumentException.class);
+			buffer.add(item.getId(), -(Integer.MAX_VALUE - 1)); // the total wasn't touched by the rejected one
+			assertThat(buffer.pendingItems()).isZero();
+		});
+	}
+
+	@Test
+	void unknownItemIsNotBuffered() {
+		TenantContext.runAs(TenantContext.DEFAULT, () -> {
+			assertThat(pantryService.adjustQuantity(987_654L, 1)).isFalse();
+			assertThat(buffer.pendingItems()).isZero();
+		});
+	}
+
+	private int quantity(Long id) {
+		return jdbcTemplate.queryForObject("SELECT quantity FROM pantry_item WHERE id = ?", Integer.class, id);
+	}
+}
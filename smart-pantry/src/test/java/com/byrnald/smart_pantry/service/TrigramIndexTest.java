@@ -0,0 +1,64 @@
+package com.byrnald.smart_pantry.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class TrigramIndexTest {
+
+	@Test
+	void containingMatchesLikeSemantics() {
+		TrigramIndex index = new TrigramIndex();
+		index.put(1L, "Patch Cables");
+		index.put(2L, "HDMI Cables");
+		index.put(3L, "Eggs");
+
+		assertThat(index.containing("CABLE")).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(index.containing("ch ca")).containsExactly(1L);
+		assertThat(index.containing("gg")).containsExactly(3L);
+		assertThat(index.containing("milk")).isEmpty();
+	}
+
+	@Test
+	void shortKeywordsAreLookedUpNotScanned() {
+		TrigramIndex index = new TrigramIndex();
+		index.put(1L, "Patch Cables");
+		index.put(2L, "HDMI Cables");
+		index.put(3L, "Eggs");
+
+		assertThat(index.containing("E")).containsExactlyInAnyOrder(1L, 2L, 3L);
+		assertThat(index.containing("h")).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(index.containing("i ")).containsExactly(2L);
+		assertThat(index.containing("x")).isEmpty();
+
+		// a rename drops the old short chunks too
+		index.put(3L, "Milk");
+		assertThat(index.containing("gg")).isEmpty();
+		assertThat(index.containing("mi")).containsExactlyInAnyOrder(2L, 3L);
+	}
+
+	@Test
+	void searchRanksPrefixFirstAndToleratesTypos() {
+		TrigramIndex index = new TrigramIndex();
+		index.put(1L, "Egg Noodles");
+		index.put(2L, "Eggs");
+		index.put(3L, "Patch Cables");
+
+		assertThat(index.search("egs", 10)).extracting(TrigramIndex.Hit::id).first().isEqualTo(2L);
+		assertThat(index.search("egg", 10)).extracting(TrigramIndex.Hit::id).containsExactly(2L, 1L); // both start with "egg", the shorter name is the closer match
+	}
+
+	@Test
+	void renameAndRemoveUpdatePostings() {
+		TrigramIndex index = new TrigramIndex();
+		index.put(1L, "Eggs");
+		index.put(1L, "Milk");
+
+		assertThat(index.containing("egg")).isEmpty();
+		assertThat(index.containing("milk")).containsExactly(1L);
+
+		index.remove(1L);
+		assertThat(index.containing("milk")).isEmpty();
+		assertThat(index.size()).isZero();
+	}
+}
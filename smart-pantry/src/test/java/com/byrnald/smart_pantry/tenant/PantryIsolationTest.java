@@ -0,0 +1,78 @@
+package com.byrnald.smart_pantry.tenant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.byrnald.smart_pantry.model.DashboardView;
+import com.byrnald.smart_pantry.model.PantryItem;
+import com.byrnald.smart_pantry.service.PantryService;
+
+// two pantries writing through the same application never see each other's items, cached pages or urgent lists.
+// garage and shed have a schema of their own, kitchen and cellar share pantry_item with the default pantry
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:pantry-isolation;DB_CLOSE_DELAY=-1",
+		"pantry.ledger.dir=target/test-ledger-pantry-isolation", "pantry.tenants.dedicated=garage,shed" })
+class PantryIsolationTest {
+
+	@Autowired
+	private PantryService pantryService;
+
+	@Autowired
+	private PantryTenants pantryTenants;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void pantriesOnlySeeTheirOwnItems() {
+		PantryItem milk = TenantContext.callAs("kitchen", () -> pantryService.addItem(new PantryItem("Milk", 1, LocalDate.now().plusDays(1))));
+		PantryItem oil = TenantContext.callAs("garage", () -> pantryService.addItem(new PantryItem("Motor Oil", 2, LocalDate.now().minusDays(1))));
+
+		TenantContext.runAs("kitchen", () -> {
+			assertThat(pantryService.getAllItems(null, 50).items()).extracting(PantryItem::getName).containsExactly("Milk");
+			assertThat(pantryService.getItem(oil.getId())).isEmpty();
+			assertThat(pantryService.getUrgentItems()).extracting(PantryItem::getId).containsExactly(milk.getId());
+			assertThat(pantryService.adjustQuantity(oil.getId(), 1)).isFalse();
+		});
+		TenantContext.runAs("garage", () -> {
+			assertThat(pantryService.getAllItems(null, 50).items()).extracting(PantryItem::getName).containsExactly("Motor Oil");
+			assertThat(pantryService.getItem(milk.getId())).isEmpty();
+			assertThat(pantryService.getUrgentItems()).extracting(PantryItem::getId).containsExactly(oil.getId());
+			assertThat(pantryService.adjustQuantity(milk.getId(), 1)).isFalse();
+		});
+
+		// the garage's row lives in its own schema, not in the shared table
+		assertThat(countById(pantryTenants.itemTable("garage"), oil.getId())).isEqualTo(1);
+		assertThat(countById(pantryTenants.itemTable(TenantContext.DEFAULT), oil.getId())).isZero();
+		assertThat(countById(pantryTenants.itemTable(TenantContext.DEFAULT), milk.getId())).isEqualTo(1);
+	}
+
+	@Test
+	void writeInOnePantryLeavesTheOthersCachedDashboardAlone() {
+		TenantContext.runAs("cellar", () -> pantryService.addItem(new PantryItem("Wine", 1, null)));
+		PantryItem saw = TenantContext.callAs("shed", () -> pantryService.addItem(new PantryItem("Saw", 1, null)));
+		TenantContext.callAs("cellar", () -> pantryService.getDashboard(null, null, null));
+		TenantContext.callAs("shed", () -> pantryService.getDashboard(null, null, null));
+		long misses = pantryService.getDashboardCacheStats().misses();
+
+		TenantContext.runAs("cellar", () -> pantryService.addItem(new PantryItem("Cider", 2, null)));
+
+		DashboardView shed = TenantContext.callAs("shed", () -> pantryService.getDashboard(null, null, null));
+		assertThat(pantryService.getDashboardCacheStats().misses()).isEqualTo(misses); // page and urgent list still cached
+		assertThat(shed.page().items()).extracting(PantryItem::getName).containsExactly("Saw");
+		assertThat(shed.urgentIds()).containsExactly(saw.getId());
+
+		DashboardView cellar = TenantContext.callAs("cellar", () -> pantryService.getDashboard(null, null, null));
+		assertThat(cellar.page().items()).extracting(PantryItem::getName).containsExactlyInAnyOrder("Wine", "Cider");
+		assertThat(cellar.urgentItems()).extracting(PantryItem::getName).containsExactlyInAnyOrder("Wine", "Cider");
+	}
+
+	private int countById(String table, Long id) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE id = ?", Integer.class, id);
+	}
+}